@@ -0,0 +1,197 @@
+/**
+ * Copyright 2018 Peter Kinson
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ */
+
+
+package com.pkin.stocksearch.model;
+
+import yahoofinance.Stock;
+import yahoofinance.histquotes.HistoricalQuote;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.List;
+
+/**
+ * Compact columnar series of historical bars.
+ * <p>
+ * Dates are epoch millis, prices are scaled longs with PRICE_SCALE decimal places and
+ * volume is a plain long, each held in its own primitive array. A series is built once
+ * from the provider result so the renderers never touch BigDecimal or Calendar per bar.
+ * Missing values, which Yahoo returns for very old dates, are stored as MISSING.
+ */
+public class BarSeries {
+
+    //Number of decimal places kept for prices.
+    public static final int PRICE_SCALE = 4;
+    //Marker for a value upstream did not provide.
+    public static final long MISSING = Long.MIN_VALUE;
+
+    private final long[] dates;
+    private final long[] open;
+    private final long[] high;
+    private final long[] low;
+    private final long[] close;
+    private final long[] adjClose;
+    private final long[] volume;
+
+    /**
+     * Build a series from columns of equal length. The arrays are used as is, not copied.
+     *
+     * @param dates    Bar dates in epoch millis
+     * @param open     Scaled opening prices
+     * @param high     Scaled day highs
+     * @param low      Scaled day lows
+     * @param close    Scaled closing prices
+     * @param adjClose Scaled adjusted closing prices
+     * @param volume   Volumes
+     */
+    public BarSeries(long[] dates, long[] open, long[] high, long[] low, long[] close, long[] adjClose, long[] volume) {
+        this.dates = dates;
+        this.open = open;
+        this.high = high;
+        this.low = low;
+        this.close = close;
+        this.adjClose = adjClose;
+        this.volume = volume;
+    }
+
+    /**
+     * Convert the history of a Stock into a series.
+     *
+     * @param stock Stock returned from the QuoteProvider
+     * @return Series holding every bar of the history
+     * @throws IOException Thrown when the Stock has no history available
+     */
+    public static BarSeries from(Stock stock) throws IOException {
+        return from(stock.getHistory());
+    }
+
+    /**
+     * Convert a list of HistoricalQuotes into a series.
+     * <p>
+     * Prices are rounded up to PRICE_SCALE places, so rounding them up again to
+     * fewer places for display gives the same result as rounding the original.
+     *
+     * @param history Bars in date order
+     * @return Series holding every bar
+     */
+    public static BarSeries from(List<HistoricalQuote> history) {
+        int size = history.size();
+        long[] dates = new long[size];
+        long[] open = new long[size];
+        long[] high = new long[size];
+        long[] low = new long[size];
+        long[] close = new long[size];
+        long[] adjClose = new long[size];
+        long[] volume = new long[size];
+
+        int i = 0;
+        for (HistoricalQuote quote : history) {
+            boolean present = quote != null;
+
+            dates[i] = present && quote.getDate() != null ? quote.getDate().getTimeInMillis() : MISSING;
+            open[i] = present ? scale(quote.getOpen()) : MISSING;
+            high[i] = present ? scale(quote.getHigh()) : MISSING;
+            low[i] = present ? scale(quote.getLow()) : MISSING;
+            close[i] = present ? scale(quote.getClose()) : MISSING;
+            adjClose[i] = present ? scale(quote.getAdjClose()) : MISSING;
+            volume[i] = present && quote.getVolume() != null ? quote.getVolume() : MISSING;
+            i++;
+        }
+
+        return new BarSeries(dates, open, high, low, close, adjClose, volume);
+    }
+
+    /**
+     * Scale a price to a long with PRICE_SCALE decimal places.
+     *
+     * @param price Price, may be null
+     * @return Scaled price, or MISSING
+     */
+    public static long scale(BigDecimal price) {
+        return price == null ? MISSING : price.setScale(PRICE_SCALE, RoundingMode.CEILING).unscaledValue().longValue();
+    }
+
+    /**
+     * Build a series holding only the bars at the given indices.
+     *
+     * @param indices Indices of the bars to keep, in order
+     * @return New series with one bar per index
+     */
+    public BarSeries select(int[] indices) {
+        int size = indices.length;
+        long[] selectedDates = new long[size];
+        long[] selectedOpen = new long[size];
+        long[] selectedHigh = new long[size];
+        long[] selectedLow = new long[size];
+        long[] selectedClose = new long[size];
+        long[] selectedAdjClose = new long[size];
+        long[] selectedVolume = new long[size];
+
+        for (int i = 0; i < size; i++) {
+            int index = indices[i];
+            selectedDates[i] = dates[index];
+            selectedOpen[i] = open[index];
+            selectedHigh[i] = high[index];
+            selectedLow[i] = low[index];
+            selectedClose[i] = close[index];
+            selectedAdjClose[i] = adjClose[index];
+            selectedVolume[i] = volume[index];
+        }
+
+        return new BarSeries(selectedDates, selectedOpen, selectedHigh, selectedLow, selectedClose,
+                selectedAdjClose, selectedVolume);
+    }
+
+    /**
+     * Return the number of bars.
+     *
+     * @return Bar count
+     */
+    public int size() {
+        return dates.length;
+    }
+
+    public long getDate(int index) {
+        return dates[index];
+    }
+
+    public long getOpen(int index) {
+        return open[index];
+    }
+
+    public long getHigh(int index) {
+        return high[index];
+    }
+
+    public long getLow(int index) {
+        return low[index];
+    }
+
+    public long getClose(int index) {
+        return close[index];
+    }
+
+    public long getAdjClose(int index) {
+        return adjClose[index];
+    }
+
+    public long getVolume(int index) {
+        return volume[index];
+    }
+}
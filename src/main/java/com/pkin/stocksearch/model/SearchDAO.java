@@ -21,9 +21,14 @@ import java.sql.Timestamp;
 import java.util.Objects;
 
 //schema = "public", catalog = "d9kni5dbb0lvdg"
+//The user agent strings are not columns, searches store their ua_dimensions ids.
 @Entity
 @Table(name = "searches")
 public class SearchDAO implements DAOObject {
+
+    //Width of the stock_symbol column.
+    public static final int MAX_STOCK_SYMBOL_LENGTH = 6;
+
     private int id;
     private Integer typeOfSearch;
     private Integer userId;
@@ -33,6 +38,11 @@ public class SearchDAO implements DAOObject {
     private String os;
     private String osVersion;
     private String device;
+    private Integer familyId;
+    private Integer familyVersionId;
+    private Integer osId;
+    private Integer osVersionId;
+    private Integer deviceId;
     private Timestamp timeStamp;
 
     @Id
@@ -67,7 +77,7 @@ public class SearchDAO implements DAOObject {
     }
 
     @Basic
-    @Column(name = "stock_symbol", nullable = false, length = 6)
+    @Column(name = "stock_symbol", nullable = false, length = MAX_STOCK_SYMBOL_LENGTH)
     public String getStockSymbol() {
         return stockSymbol;
     }
@@ -76,8 +86,7 @@ public class SearchDAO implements DAOObject {
         this.stockSymbol = stockSymbol;
     }
 
-    @Basic
-    @Column(name = "family", nullable = true, length = 20)
+    @Transient
     public String getFamily() {
         return family;
     }
@@ -86,8 +95,7 @@ public class SearchDAO implements DAOObject {
         this.family = family;
     }
 
-    @Basic
-    @Column(name = "family_version", nullable = true, length = 6)
+    @Transient
     public String getFamilyVersion() {
         return familyVersion;
     }
@@ -96,8 +104,7 @@ public class SearchDAO implements DAOObject {
         this.familyVersion = familyVersion;
     }
 
-    @Basic
-    @Column(name = "os", nullable = true, length = 6)
+    @Transient
     public String getOs() {
         return os;
     }
@@ -106,8 +113,7 @@ public class SearchDAO implements DAOObject {
         this.os = os;
     }
 
-    @Basic
-    @Column(name = "os_version", nullable = true, length = 6)
+    @Transient
     public String getOsVersion() {
         return osVersion;
     }
@@ -116,8 +122,7 @@ public class SearchDAO implements DAOObject {
         this.osVersion = osVersion;
     }
 
-    @Basic
-    @Column(name = "device", nullable = true, length = 20)
+    @Transient
     public String getDevice() {
         return device;
     }
@@ -126,6 +131,56 @@ public class SearchDAO implements DAOObject {
         this.device = device;
     }
 
+    @Basic
+    @Column(name = "family_id", nullable = true)
+    public Integer getFamilyId() {
+        return familyId;
+    }
+
+    public void setFamilyId(Integer familyId) {
+        this.familyId = familyId;
+    }
+
+    @Basic
+    @Column(name = "family_version_id", nullable = true)
+    public Integer getFamilyVersionId() {
+        return familyVersionId;
+    }
+
+    public void setFamilyVersionId(Integer familyVersionId) {
+        this.familyVersionId = familyVersionId;
+    }
+
+    @Basic
+    @Column(name = "os_id", nullable = true)
+    public Integer getOsId() {
+        return osId;
+    }
+
+    public void setOsId(Integer osId) {
+        this.osId = osId;
+    }
+
+    @Basic
+    @Column(name = "os_version_id", nullable = true)
+    public Integer getOsVersionId() {
+        return osVersionId;
+    }
+
+    public void setOsVersionId(Integer osVersionId) {
+        this.osVersionId = osVersionId;
+    }
+
+    @Basic
+    @Column(name = "device_id", nullable = true)
+    public Integer getDeviceId() {
+        return deviceId;
+    }
+
+    public void setDeviceId(Integer deviceId) {
+        this.deviceId = deviceId;
+    }
+
     @Basic
     @Column(name = "time_stamp", nullable = true)
     public Timestamp getTimeStamp() {
@@ -150,13 +205,19 @@ public class SearchDAO implements DAOObject {
                 Objects.equals(os, that.os) &&
                 Objects.equals(osVersion, that.osVersion) &&
                 Objects.equals(device, that.device) &&
+                Objects.equals(familyId, that.familyId) &&
+                Objects.equals(familyVersionId, that.familyVersionId) &&
+                Objects.equals(osId, that.osId) &&
+                Objects.equals(osVersionId, that.osVersionId) &&
+                Objects.equals(deviceId, that.deviceId) &&
                 Objects.equals(timeStamp, that.timeStamp);
     }
 
     @Override
     public int hashCode() {
 
-        return Objects.hash(id, typeOfSearch, userId, stockSymbol, family, familyVersion, os, osVersion, device, timeStamp);
+        return Objects.hash(id, typeOfSearch, userId, stockSymbol, family, familyVersion, os, osVersion, device,
+                familyId, familyVersionId, osId, osVersionId, deviceId, timeStamp);
     }
 }
 
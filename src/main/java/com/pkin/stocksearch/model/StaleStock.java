@@ -0,0 +1,66 @@
+/**
+ * Copyright 2018 Peter Kinson
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ */
+
+
+package com.pkin.stocksearch.model;
+
+import yahoofinance.Stock;
+
+/**
+ * Stock served from previously fetched data while upstream is unavailable.
+ */
+public class StaleStock extends Stock {
+
+    private final long fetchedAt;
+
+    /**
+     * @param symbol    Stock symbol
+     * @param fetchedAt When the data was last fetched from upstream, in epoch millis
+     */
+    public StaleStock(String symbol, long fetchedAt) {
+        super(symbol);
+        this.fetchedAt = fetchedAt;
+    }
+
+    /**
+     * Copy the quote details of a Stock into a StaleStock. History is not copied.
+     *
+     * @param stock     Last known good Stock
+     * @param fetchedAt When the stock was fetched from upstream, in epoch millis
+     * @return A StaleStock with the same quote, statistics and dividend
+     */
+    public static StaleStock of(Stock stock, long fetchedAt) {
+        StaleStock stale = new StaleStock(stock.getSymbol(), fetchedAt);
+        stale.setName(stock.getName());
+        stale.setCurrency(stock.getCurrency());
+        stale.setStockExchange(stock.getStockExchange());
+        stale.setQuote(stock.getQuote());
+        stale.setStats(stock.getStats());
+        stale.setDividend(stock.getDividend());
+
+        return stale;
+    }
+
+    /**
+     * Return when the data was last fetched from upstream.
+     *
+     * @return Epoch millis
+     */
+    public long getFetchedAt() {
+        return fetchedAt;
+    }
+}
@@ -0,0 +1,49 @@
+/**
+ * Copyright 2018 Peter Kinson
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ */
+
+package com.pkin.stocksearch.model;
+
+/**
+ * Listed symbol and the name of its company, as read from stocks.csv.
+ */
+public class SymbolListing {
+
+    private final String symbol;
+    private final String name;
+
+    /**
+     * @param symbol Upper case ticker symbol
+     * @param name   Company name
+     */
+    public SymbolListing(String symbol, String name) {
+        this.symbol = symbol;
+        this.name = name;
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String toString() {
+        return symbol + " ( " + name + " )";
+    }
+}
@@ -18,8 +18,10 @@
 package com.pkin.stocksearch.service;
 
 import com.pkin.stocksearch.service.exceptions.DatabaseServiceException;
+import com.pkin.stocksearch.utilities.ConfigUtils;
 import com.pkin.stocksearch.utilities.database.DatabaseUtils;
 import com.pkin.stocksearch.model.DAOObject;
+import com.pkin.stocksearch.model.SearchDAO;
 import com.pkin.stocksearch.utilities.database.exceptions.DatabaseConfigurationException;
 import com.pkin.stocksearch.utilities.database.exceptions.DatabaseConnectionException;
 import com.pkin.stocksearch.utilities.database.exceptions.DatabaseInitializationException;
@@ -33,9 +35,15 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class DatabaseService {
 
+    private static final String INSERT_SEARCH = "INSERT INTO searches (type_of_search, user_id, stock_symbol, " +
+            "family_id, family_version_id, os_id, os_version_id, device_id, time_stamp) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    //User agent dictionaries, one per database.
+    private static final Map<String, UserAgentDimensions> DIMENSIONS = new ConcurrentHashMap<>();
+
     protected DatabaseService() {
 
     }
@@ -162,14 +170,19 @@ public class DatabaseService {
         //Get a session and begin a transaction
         session = DatabaseUtils.getSessionFactory(hibernateConfig, reload).openSession();
 
-        //Retrieve 100 recent queries
-        query = session.createQuery("SELECT searches.stockSymbol FROM SearchDAO searches");
-        query.setMaxResults(querySize);
+        //Runs every prefetch period, so the session and its connection must be given back.
+        try {
+            //Retrieve 100 recent queries
+            query = session.createQuery("SELECT searches.stockSymbol FROM SearchDAO searches");
+            query.setMaxResults(querySize);
 
 
-        List list = query.list();
+            List list = query.list();
 
-        return list;
+            return list;
+        } finally {
+            session.close();
+        }
     }
 
     /**
@@ -235,4 +248,73 @@ public class DatabaseService {
             }
         }
     }
+
+    /**
+     * Method to insert a batch of searches in a single transaction.
+     * <p>
+     * SearchDAO ids are generated by the database, which keeps Hibernate from batching
+     * its inserts, so the rows are sent as one JDBC batch on the session's pooled connection.
+     * User agent values are stored as their ua_dimensions ids, see UserAgentDimensions.
+     *
+     * @param searches            Searches to insert.
+     * @param hibernateConfigFile Name of the hibernate config file.
+     * @throws DatabaseServiceException Thrown when the batch could not be written, no rows are kept.
+     */
+    public void commitSearches(List<SearchDAO> searches, String hibernateConfigFile) throws DatabaseServiceException {
+
+        if (searches.isEmpty()) {
+            return;
+        }
+
+        UserAgentDimensions dimensions = DIMENSIONS.computeIfAbsent(hibernateConfigFile,
+                file -> new UserAgentDimensions(ConfigUtils.getInt("stocksearch.useragents.maxDimensions", 10000)));
+        Map<String, Integer> inserted = new HashMap<>();
+        Session session = null;
+        Transaction transaction = null;
+
+        try {
+            session = DatabaseUtils.getSessionFactory(hibernateConfigFile, false).openSession();
+            transaction = session.beginTransaction();
+
+            session.doWork(connection -> {
+                try (PreparedStatement statement = connection.prepareStatement(INSERT_SEARCH)) {
+                    for (SearchDAO search : searches) {
+                        statement.setObject(1, search.getTypeOfSearch(), Types.INTEGER);
+                        statement.setObject(2, search.getUserId(), Types.INTEGER);
+                        statement.setString(3, search.getStockSymbol());
+                        statement.setObject(4, dimensions.resolve(connection, UserAgentDimensions.Kind.FAMILY,
+                                search.getFamily(), inserted), Types.INTEGER);
+                        statement.setObject(5, dimensions.resolve(connection, UserAgentDimensions.Kind.FAMILY_VERSION,
+                                search.getFamilyVersion(), inserted), Types.INTEGER);
+                        statement.setObject(6, dimensions.resolve(connection, UserAgentDimensions.Kind.OS,
+                                search.getOs(), inserted), Types.INTEGER);
+                        statement.setObject(7, dimensions.resolve(connection, UserAgentDimensions.Kind.OS_VERSION,
+                                search.getOsVersion(), inserted), Types.INTEGER);
+                        statement.setObject(8, dimensions.resolve(connection, UserAgentDimensions.Kind.DEVICE,
+                                search.getDevice(), inserted), Types.INTEGER);
+                        statement.setTimestamp(9, search.getTimeStamp());
+                        statement.addBatch();
+                    }
+                    statement.executeBatch();
+                }
+            });
+
+            transaction.commit();
+            dimensions.publish(inserted);
+
+        } catch (Throwable e) {
+            if (transaction != null && transaction.isActive()) {
+                try {
+                    transaction.rollback();
+                } catch (RuntimeException rollback) {
+                    //The original failure is the one worth reporting.
+                }
+            }
+            throw new DatabaseServiceException("Could not add a batch of " + searches.size() + " searches. " + e.getMessage(), e);
+        } finally {
+            if (session != null) {
+                session.close();
+            }
+        }
+    }
 }
@@ -0,0 +1,195 @@
+/**
+ * Copyright 2018 Peter Kinson
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ */
+
+
+package com.pkin.stocksearch.service;
+
+import com.pkin.stocksearch.service.exceptions.StockServiceException;
+import com.pkin.stocksearch.utilities.ExecutorUtils;
+import com.pkin.stocksearch.utilities.MarketHours;
+import yahoofinance.histquotes.Interval;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Background task that keeps the most searched symbols warm.
+ * <p>
+ * Each run takes the current top symbols, refreshes their quick quotes with a single
+ * batch call and requests the configured historical ranges, so the bar cache only has
+ * to fetch what changed since the last run. Searches for these symbols are then served
+ * from memory instead of a cold upstream fetch. Runs are skipped while the US market
+ * is closed.
+ */
+public class PrefetchScheduler {
+
+    private final Supplier<List<String>> topSymbols;
+    private final StockService stockService;
+    private final List<Range> ranges;
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param topSymbols   Supplier of the symbols to keep warm
+     * @param stockService StockService used to fetch and cache quotes
+     * @param rangeSpec    Historical ranges to warm, as comma separated days:INTERVAL pairs, e.g. 365:DAILY
+     */
+    public PrefetchScheduler(Supplier<List<String>> topSymbols, StockService stockService, String rangeSpec) {
+        this.topSymbols = topSymbols;
+        this.stockService = stockService;
+        this.ranges = parseRanges(rangeSpec);
+    }
+
+    /**
+     * Start prefetching on a background thread. Does nothing if already started.
+     *
+     * @param initialDelayMillis Delay before the first run
+     * @param periodMillis       Time between the start of each run
+     */
+    public synchronized void start(long initialDelayMillis, long periodMillis) {
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(ExecutorUtils.newThreadFactory("prefetch"));
+            scheduler.scheduleAtFixedRate(() -> tick(ZonedDateTime.now()), initialDelayMillis, periodMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stop prefetching and interrupt a run in progress.
+     */
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Scheduled run. Quotes only move during the US session, outside it the cache
+     * already holds the closing prices and nothing is fetched.
+     *
+     * @param now Current time
+     * @return Number of symbols warmed, 0 while the market is closed
+     */
+    int tick(ZonedDateTime now) {
+        return MarketHours.isOpen(now) ? prefetch() : 0;
+    }
+
+    /**
+     * Run one prefetch round. Failures are skipped so one bad symbol or an upstream
+     * outage never stops later runs.
+     *
+     * @return Number of symbols warmed
+     */
+    public int prefetch() {
+        List<String> symbols = new ArrayList<>();
+
+        try {
+            for (String symbol : topSymbols.get()) {
+                //The top searches query reports failures as an "Error" entry.
+                if (symbol != null && !symbol.trim().isEmpty() && !"Error".equals(symbol)) {
+                    symbols.add(symbol.trim().toUpperCase());
+                }
+            }
+        } catch (RuntimeException e) {
+            return 0;
+        }
+
+        if (symbols.isEmpty()) {
+            return 0;
+        }
+
+        try {
+            stockService.refreshQuickQuotes(symbols);
+        } catch (StockServiceException | RuntimeException e) {
+            //Upstream is unavailable, the breaker keeps the history requests below cheap.
+        }
+
+        for (String symbol : symbols) {
+            for (Range range : ranges) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return symbols.size();
+                }
+
+                try {
+                    Calendar until = Calendar.getInstance();
+                    stockService.getQuote(symbol, range.start(until), until, range.interval);
+                } catch (StockServiceException | RuntimeException e) {
+                    //Skip this range, it is fetched on demand if anyone asks for it.
+                }
+            }
+        }
+
+        return symbols.size();
+    }
+
+    /**
+     * Parse the range setting. Malformed pairs are ignored.
+     *
+     * @param rangeSpec Comma separated days:INTERVAL pairs
+     * @return Parsed ranges
+     */
+    private static List<Range> parseRanges(String rangeSpec) {
+        List<Range> parsed = new ArrayList<>();
+
+        if (rangeSpec == null) {
+            return parsed;
+        }
+
+        for (String pair : rangeSpec.split(",")) {
+            String[] parts = pair.trim().split(":");
+
+            try {
+                parsed.add(new Range(Integer.parseInt(parts[0].trim()), Interval.valueOf(parts[1].trim().toUpperCase())));
+            } catch (RuntimeException e) {
+                //Ignore malformed pairs.
+            }
+        }
+
+        return parsed;
+    }
+
+    /**
+     * Historical range ending today.
+     */
+    private static class Range {
+        private final int days;
+        private final Interval interval;
+
+        private Range(int days, Interval interval) {
+            this.days = days;
+            this.interval = interval;
+        }
+
+        /**
+         * Start of the range, at the start of the day.
+         */
+        private Calendar start(Calendar until) {
+            Calendar start = (Calendar) until.clone();
+            start.add(Calendar.DAY_OF_MONTH, -days);
+            start.set(Calendar.HOUR_OF_DAY, 0);
+            start.set(Calendar.MINUTE, 0);
+            start.set(Calendar.SECOND, 0);
+            start.set(Calendar.MILLISECOND, 0);
+            return start;
+        }
+    }
+}
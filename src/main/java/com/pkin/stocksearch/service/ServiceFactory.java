@@ -17,7 +17,35 @@
 
 package com.pkin.stocksearch.service;
 
+import com.pkin.stocksearch.service.provider.QuoteProvider;
+import com.pkin.stocksearch.service.provider.ReplayQuoteProvider;
+import com.pkin.stocksearch.service.provider.YahooQuoteProvider;
+import com.pkin.stocksearch.service.searchlog.SearchJournal;
+import com.pkin.stocksearch.service.searchlog.SearchLog;
+import com.pkin.stocksearch.service.searchlog.SearchLogWriter;
+import com.pkin.stocksearch.service.stream.QuoteStreamHub;
+import com.pkin.stocksearch.service.symbols.SymbolIndex;
+import com.pkin.stocksearch.service.symbols.SymbolIndexReloader;
+import com.pkin.stocksearch.utilities.ConfigUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+
 public class ServiceFactory {
+
+    //Volatile so request threads read the shared instances without taking the class lock.
+    private static volatile QuoteProvider quoteProvider;
+    private static volatile QuoteStreamHub quoteStreamHub;
+    private static volatile SymbolIndexReloader symbolIndexReloader;
+    private static volatile SearchLog searchLog;
+
     /**
      * StockService Factory method.
      *
@@ -35,4 +63,213 @@ public class ServiceFactory {
     public static DatabaseService getDatabaseServiceInstance() {
         return new DatabaseService();
     }
+
+    /**
+     * QuoteProvider Factory method.
+     * <p>
+     * The provider is chosen with the stocksearch.provider setting:
+     * yahoo - Live quotes from the YahooFinance-API (default).
+     * replay - Recorded or synthetic quotes from local files, see ReplayQuoteProvider.
+     *
+     * @return Shared instance of the configured QuoteProvider
+     */
+    public static QuoteProvider getQuoteProviderInstance() {
+        QuoteProvider instance = quoteProvider;
+        return instance != null ? instance : createQuoteProvider();
+    }
+
+    private static synchronized QuoteProvider createQuoteProvider() {
+
+        //Singleton pattern
+        if (quoteProvider == null) {
+            String provider = ConfigUtils.getString("stocksearch.provider", "yahoo");
+
+            switch (provider.toLowerCase()) {
+                case "replay": {
+                    quoteProvider = new ReplayQuoteProvider(
+                            new File(ConfigUtils.getString("stocksearch.provider.replay.dir", "replay")),
+                            ConfigUtils.getBoolean("stocksearch.provider.replay.synthetic", true),
+                            ConfigUtils.getLong("stocksearch.provider.replay.latencyMillis", 0),
+                            ConfigUtils.getLong("stocksearch.provider.replay.jitterMillis", 0));
+                    break;
+                }
+                default: {
+                    quoteProvider = new YahooQuoteProvider();
+                    break;
+                }
+            }
+        }
+
+        return quoteProvider;
+    }
+
+    /**
+     * QuoteStreamHub Factory method.
+     * <p>
+     * Live quotes are polled through StockService, so they share its circuit breaker
+     * and refresh the quick quote cache on every poll.
+     *
+     * @return Shared instance of the QuoteStreamHub
+     */
+    public static QuoteStreamHub getQuoteStreamHubInstance() {
+        QuoteStreamHub instance = quoteStreamHub;
+        return instance != null ? instance : createQuoteStreamHub();
+    }
+
+    private static synchronized QuoteStreamHub createQuoteStreamHub() {
+
+        //Singleton pattern
+        if (quoteStreamHub == null) {
+            StockService stockService = getStockServiceInstance();
+
+            quoteStreamHub = new QuoteStreamHub(
+                    symbol -> stockService.refreshQuickQuotes(Collections.singletonList(symbol)).get(symbol),
+                    ConfigUtils.getLong("stocksearch.stream.openMillis", 5000),
+                    ConfigUtils.getLong("stocksearch.stream.minMillis", 1000),
+                    ConfigUtils.getLong("stocksearch.stream.closedMillis", 60000),
+                    ConfigUtils.getInt("stocksearch.stream.threads", 8));
+        }
+
+        return quoteStreamHub;
+    }
+
+    /**
+     * SymbolIndex Factory method.
+     * <p>
+     * Returns the index currently published by the SymbolIndexReloader. Callers should
+     * fetch it for each use rather than keep it, so they see reloads.
+     *
+     * @return Current instance of the SymbolIndex
+     */
+    public static SymbolIndex getSymbolIndexInstance() {
+        return getSymbolIndexReloaderInstance().get();
+    }
+
+    /**
+     * SymbolIndexReloader Factory method.
+     * <p>
+     * The symbols CSV is stocksearch.symbols.path when set, otherwise stocksearch.symbols.file
+     * on the classpath. Only a file on disk can be watched for changes, a list packed in a jar
+     * is loaded once. If the list cannot be read the index is empty, so autocomplete finds
+     * nothing while searches keep working.
+     *
+     * @return Shared instance of the SymbolIndexReloader
+     */
+    public static SymbolIndexReloader getSymbolIndexReloaderInstance() {
+        SymbolIndexReloader instance = symbolIndexReloader;
+        return instance != null ? instance : createSymbolIndexReloader();
+    }
+
+    private static synchronized SymbolIndexReloader createSymbolIndexReloader() {
+
+        //Singleton pattern
+        if (symbolIndexReloader == null) {
+            String resource = ConfigUtils.getString("stocksearch.symbols.file", "stocks.csv");
+            String path = ConfigUtils.getString("stocksearch.symbols.path", "");
+            Path file = null;
+
+            try {
+                if (!path.trim().isEmpty()) {
+                    file = Paths.get(path.trim());
+                } else {
+                    URL url = ServiceFactory.class.getClassLoader().getResource(resource);
+                    if (url != null && "file".equals(url.getProtocol())) {
+                        file = Paths.get(url.toURI());
+                    }
+                }
+            } catch (URISyntaxException | RuntimeException e) {
+                file = null;
+            }
+
+            SymbolIndex initial;
+            try {
+                initial = file != null
+                        ? SymbolIndex.load(Files.newBufferedReader(file, StandardCharsets.UTF_8))
+                        : SymbolIndex.fromResource(resource);
+            } catch (IOException e) {
+                initial = new SymbolIndex(Collections.emptyList());
+            }
+
+            symbolIndexReloader = new SymbolIndexReloader(file, initial);
+        }
+
+        return symbolIndexReloader;
+    }
+
+    /**
+     * SearchLog Factory method.
+     * <p>
+     * Searches are written to the database through DatabaseService.commitSearches in batches
+     * of at most stocksearch.searchlog.batchSize. With stocksearch.journal.enabled they are first
+     * appended to a SearchJournal in stocksearch.journal.dir, so they survive the database being
+     * down and the application restarting. Otherwise, or if the journal directory cannot be used,
+     * they wait in the memory of a SearchLogWriter. The log is started on first use.
+     *
+     * @return Shared, started instance of the SearchLog
+     */
+    public static SearchLog getSearchLogInstance() {
+        SearchLog instance = searchLog;
+        return instance != null ? instance : createSearchLog();
+    }
+
+    private static synchronized SearchLog createSearchLog() {
+
+        //Singleton pattern
+        if (searchLog == null) {
+            DatabaseService databaseService = getDatabaseServiceInstance();
+            SearchLog.BatchSink sink = batch -> databaseService.commitSearches(batch, "hibernate.cfg.xml");
+            int batchSize = ConfigUtils.getInt("stocksearch.searchlog.batchSize", 100);
+
+            if (ConfigUtils.getBoolean("stocksearch.journal.enabled", true)) {
+                String dir = ConfigUtils.getString("stocksearch.journal.dir", "").trim();
+                Path directory = dir.isEmpty()
+                        ? Paths.get(System.getProperty("java.io.tmpdir"), "stocksearch-journal")
+                        : Paths.get(dir);
+
+                try {
+                    SearchJournal journal = new SearchJournal(directory, sink,
+                            ConfigUtils.getLong("stocksearch.journal.segmentBytes", 8388608),
+                            ConfigUtils.getLong("stocksearch.journal.maxBytes", 1073741824),
+                            batchSize);
+                    journal.start(ConfigUtils.getLong("stocksearch.journal.syncMillis", 200),
+                            ConfigUtils.getLong("stocksearch.searchlog.flushMillis", 1000));
+                    searchLog = journal;
+                } catch (IOException | RuntimeException e) {
+                    //Fall back to the in-memory writer below.
+                }
+            }
+
+            if (searchLog == null) {
+                SearchLogWriter writer = new SearchLogWriter(sink,
+                        ConfigUtils.getInt("stocksearch.searchlog.queueSize", 10000),
+                        batchSize,
+                        ConfigUtils.getLong("stocksearch.searchlog.flushMillis", 1000),
+                        ConfigUtils.getInt("stocksearch.searchlog.threads", 1));
+                writer.start();
+                searchLog = writer;
+            }
+        }
+
+        return searchLog;
+    }
+
+    /**
+     * Stop the background work of the shared services that were created. Services that
+     * were never used are left uncreated, so undeploying does not start anything.
+     *
+     * @param drainMillis Longest to wait for queued searches to be written
+     */
+    public static synchronized void shutdown(long drainMillis) {
+        if (quoteStreamHub != null) {
+            quoteStreamHub.shutdown();
+            quoteStreamHub = null;
+        }
+        if (symbolIndexReloader != null) {
+            symbolIndexReloader.stop();
+        }
+        if (searchLog != null) {
+            searchLog.stop(drainMillis);
+            searchLog = null;
+        }
+    }
 }
@@ -17,21 +17,64 @@
 
 package com.pkin.stocksearch.service;
 
+import com.pkin.stocksearch.model.StaleStock;
+import com.pkin.stocksearch.service.breaker.CircuitBreaker;
+import com.pkin.stocksearch.service.cache.BarStore;
+import com.pkin.stocksearch.service.cache.HistoricalBarCache;
+import com.pkin.stocksearch.service.cache.InFlightRegistry;
+import com.pkin.stocksearch.service.cache.IntervalAggregator;
+import com.pkin.stocksearch.service.cache.QuoteCache;
+import com.pkin.stocksearch.service.cache.NegativeSymbolCache;
+import com.pkin.stocksearch.service.exceptions.InvalidSymbolException;
 import com.pkin.stocksearch.service.exceptions.StockServiceException;
-import com.pkin.stocksearch.service.exceptions.StockServiceException;
+import com.pkin.stocksearch.service.symbols.SymbolIndex;
+import com.pkin.stocksearch.utilities.ConfigUtils;
+import com.pkin.stocksearch.utilities.ExecutorUtils;
+import com.pkin.stocksearch.utilities.WebUtils;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 import yahoofinance.Stock;
-import yahoofinance.YahooFinance;
 import yahoofinance.histquotes.HistoricalQuote;
 import yahoofinance.histquotes.Interval;
 
+import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.text.ParseException;
 import java.util.*;
 
 public class StockService {
 
+    //Shared by every StockService instance handed out by ServiceFactory.
+    private static final HistoricalBarCache BAR_CACHE =
+            new HistoricalBarCache(ConfigUtils.getInt("stocksearch.cache.maxBars", 100000));
+    //Daily bars for closed days kept on disk across restarts, null when disabled.
+    private static final BarStore BAR_STORE = ConfigUtils.getBoolean("stocksearch.barstore.enabled", true) ?
+            new BarStore(new File(ConfigUtils.getString("stocksearch.barstore.dir",
+                    new File(System.getProperty("java.io.tmpdir"), "stocksearch/bars").getPath())),
+                    ConfigUtils.getInt("stocksearch.barstore.maxMappedFiles", 256)) : null;
+    //Identical upstream requests made at the same time share a single call.
+    private static final InFlightRegistry<String, Stock> IN_FLIGHT = new InFlightRegistry<>();
+    private static final InFlightRegistry<String, Map<String, Stock>> BATCH_IN_FLIGHT = new InFlightRegistry<>();
+    //Fails fast while upstream is down and bounds how long any single upstream call may take.
+    private static final CircuitBreaker BREAKER = new CircuitBreaker("QuoteProvider",
+            ConfigUtils.getInt("stocksearch.breaker.failureThreshold", 5),
+            ConfigUtils.getLong("stocksearch.breaker.openMillis", 30000),
+            ConfigUtils.getLong("stocksearch.breaker.timeBudgetMillis", 5000),
+            ExecutorUtils.newBoundedExecutor("quote-provider",
+                    ConfigUtils.getInt("stocksearch.breaker.threads", 32),
+                    ConfigUtils.getInt("stocksearch.breaker.queueSize", 64)));
+    //Recent quick quotes, served from memory while fresh and as stale data while upstream is unavailable.
+    private static final QuoteCache QUOTE_CACHE = new QuoteCache(
+            ConfigUtils.getInt("stocksearch.quote.maxSymbols", 1000),
+            ConfigUtils.getLong("stocksearch.quote.ttlMillis", 90000));
+    //Symbols upstream recently reported as unknown, rejected without another round trip.
+    private static final NegativeSymbolCache NEGATIVE_CACHE = new NegativeSymbolCache(
+            ConfigUtils.getInt("stocksearch.symbols.negativeMaxSymbols", 10000),
+            ConfigUtils.getLong("stocksearch.symbols.negativeTtlMillis", 3600000));
+    //Reject plain tickers that are not in the listed universe. Off by default, stocks.csv has no ETFs such as SPY.
+    private static final boolean REJECT_UNLISTED = ConfigUtils.getBoolean("stocksearch.symbols.rejectUnlisted", false);
+
     protected StockService() {
         //Hiding constructor.
     }
@@ -45,21 +88,302 @@ public class StockService {
      * @param until        End date
      * @param intervalEnum The interval to return quotes by
      * @return ​a list of HistoricalQuotes One for each day in the range specified.
-     * @throws StockServiceException  Thrown when there is a failure to retrieve data from YahooFinance.get() method.
+     * @throws StockServiceException  Thrown when there is a failure to retrieve data from the QuoteProvider.
      */
     public Stock getQuote(String symbol, Calendar from, Calendar until, Interval intervalEnum) throws StockServiceException {
 
-        Stock stock; //Local variable to return to calling method.
+        checkSymbol(symbol, REJECT_UNLISTED);
+
+        //Weekly and monthly bars are built from daily bars already held, without going upstream.
+        if (intervalEnum != Interval.DAILY) {
+            Stock derived = deriveFromDaily(symbol, from, until, intervalEnum);
+
+            if (derived != null) {
+                return derived;
+            }
+        }
+
+        try {
+            //Serve what is cached and only go upstream for the missing date ranges.
+            return BAR_CACHE.get(symbol, from, until, intervalEnum, (rangeFrom, rangeUntil) -> {
+                //Closed daily bars are read from disk, only days not stored yet go upstream.
+                if (BAR_STORE != null && intervalEnum == Interval.DAILY) {
+                    return BAR_STORE.get(symbol, rangeFrom, rangeUntil,
+                            (storeFrom, storeUntil) -> fetchQuote(symbol, storeFrom, storeUntil, intervalEnum));
+                }
+                return fetchQuote(symbol, rangeFrom, rangeUntil, intervalEnum);
+            });
+        } catch (StockServiceException e) {
+            //Upstream is unavailable, fall back to whatever part of the range is cached.
+            StaleStock stale = isUnknownSymbol(e) ? null : BAR_CACHE.getStale(symbol, from, until, intervalEnum);
+
+            if (stale == null) {
+                throw e;
+            }
+            return stale;
+        }
+    }
+
+    /**
+     * Build weekly or monthly bars for the range from locally held daily bars.
+     *
+     * @param symbol       FormData symbol to get a quote for
+     * @param from         Start date
+     * @param until        End date
+     * @param intervalEnum WEEKLY or MONTHLY
+     * @return Stock with the aggregated history, or null if daily bars do not cover the whole range
+     */
+    private Stock deriveFromDaily(String symbol, Calendar from, Calendar until, Interval intervalEnum) {
+        Stock daily = BAR_CACHE.getCovered(symbol, from, until, Interval.DAILY);
+
+        //Closed days only, the store is consulted with an end just past the requested day.
+        if (daily == null && BAR_STORE != null && symbol != null) {
+            Calendar dayAfter = (Calendar) until.clone();
+            dayAfter.add(Calendar.DAY_OF_MONTH, 1);
+            dayAfter.set(Calendar.HOUR_OF_DAY, 0);
+            dayAfter.set(Calendar.MINUTE, 0);
+            dayAfter.set(Calendar.SECOND, 0);
+            dayAfter.set(Calendar.MILLISECOND, 0);
+
+            if (!dayAfter.after(Calendar.getInstance())) {
+                daily = BAR_STORE.getCovered(symbol, from, dayAfter);
+            }
+        }
+
+        if (daily == null) {
+            return null;
+        }
 
-        //Retrieve current quote with historical summaries from YahooFinance-API
         try {
-            stock = YahooFinance.get(symbol, from, until, intervalEnum);
+            daily.setHistory(IntervalAggregator.aggregate(daily.getHistory(), intervalEnum));
         } catch (IOException e) {
-            throw new StockServiceException("An error occured while retrieving a list of quotes" +
-                    " for, " + symbol + ", using WebStockService. ", e.getCause());
+            return null;
+        }
+
+        return daily;
+    }
+
+    /**
+     * Retrieve a historical quote from the QuoteProvider for a single date range.
+     *
+     * @param symbol       FormData symbol to get a quote for
+     * @param from         Start date
+     * @param until        End date
+     * @param intervalEnum The interval to return quotes by
+     * @return Stock with history for the range
+     * @throws StockServiceException Thrown when there is a failure to retrieve data from the QuoteProvider.
+     */
+    private Stock fetchQuote(String symbol, Calendar from, Calendar until, Interval intervalEnum) throws StockServiceException {
+
+        String key = "HISTORY|" + symbol.toUpperCase() + "|" + from.getTimeInMillis() + "|" +
+                until.getTimeInMillis() + "|" + intervalEnum;
+
+        return IN_FLIGHT.execute(key, () -> {
+            Stock stock; //Local variable to return to calling method.
+
+            //Retrieve current quote with historical summaries from the configured QuoteProvider
+            try {
+                stock = BREAKER.execute(() ->
+                        ServiceFactory.getQuoteProviderInstance().getHistory(symbol, from, until, intervalEnum));
+            } catch (FileNotFoundException e) {
+                NEGATIVE_CACHE.reject(symbol);
+                throw new StockServiceException("An error occured while retrieving a list of quotes" +
+                        " for, " + symbol + ", using WebStockService. ", e);
+            } catch (IOException e) {
+                throw new StockServiceException("An error occured while retrieving a list of quotes" +
+                        " for, " + symbol + ", using WebStockService. ", e.getCause() != null ? e.getCause() : e);
+            }
+
+            return stock;
+        });
+    }
+
+    /**
+     * Get a current quote for the provided symbol without history.
+     * Quotes fetched within stocksearch.quote.ttlMillis are served from memory.
+     *
+     * @param symbol FormData symbol to get a quote for
+     * @return Stock with the current quote, or null if the symbol is unknown
+     * @throws StockServiceException Thrown when there is a failure to retrieve data from the QuoteProvider.
+     *                               The cause is kept so callers can tell an unknown symbol (FileNotFoundException)
+     *                               apart from other failures.
+     */
+    public Stock getQuickQuote(String symbol) throws StockServiceException {
+
+        checkSymbol(symbol, REJECT_UNLISTED);
+
+        Stock cached = QUOTE_CACHE.getFresh(symbol);
+        if (cached != null) {
+            return cached;
         }
 
-        return stock;
+        return IN_FLIGHT.execute("QUOTE|" + symbol.toUpperCase(), () -> {
+            try {
+                Stock stock = BREAKER.execute(() -> ServiceFactory.getQuoteProviderInstance().getStock(symbol));
+                if (stock == null || !stock.isValid()) {
+                    NEGATIVE_CACHE.reject(symbol);
+                } else {
+                    QUOTE_CACHE.put(stock);
+                }
+                return stock;
+            } catch (FileNotFoundException e) {
+                NEGATIVE_CACHE.reject(symbol);
+                throw new StockServiceException("An error occured while retrieving a quote" +
+                        " for, " + symbol + ", using WebStockService. ", e);
+            } catch (IOException e) {
+                //Serve the last known good quote while upstream is unavailable.
+                StaleStock stale = QUOTE_CACHE.getStale(symbol);
+                if (stale != null) {
+                    return stale;
+                }
+                throw new StockServiceException("An error occured while retrieving a quote" +
+                        " for, " + symbol + ", using WebStockService. ", e);
+            }
+        });
+    }
+
+    /**
+     * Get current quotes for several symbols with a single upstream call.
+     * When every symbol has a fresh quote in memory upstream is not called at all.
+     *
+     * @param symbols Symbols to get quotes for
+     * @return Stocks keyed by upper case symbol in the order requested. Unknown symbols are left out.
+     * @throws StockServiceException Thrown when there is a failure to retrieve data from the QuoteProvider.
+     */
+    public Map<String, Stock> getQuickQuotes(List<String> symbols) throws StockServiceException {
+
+        Map<String, Stock> stocks = new LinkedHashMap<>();
+        for (String symbol : symbols) {
+            Stock cached = QUOTE_CACHE.getFresh(symbol);
+
+            if (cached == null) {
+                return refreshQuickQuotes(symbols);
+            }
+            stocks.put(symbol.trim().toUpperCase(), cached);
+        }
+
+        return stocks;
+    }
+
+    /**
+     * Fetch current quotes for several symbols from upstream with a single call,
+     * bypassing fresh quotes held in memory. Used to pre-warm the quote cache.
+     *
+     * @param symbols Symbols to get quotes for
+     * @return Stocks keyed by upper case symbol in the order requested. Unknown symbols are left out.
+     * @throws StockServiceException Thrown when there is a failure to retrieve data from the QuoteProvider.
+     */
+    public Map<String, Stock> refreshQuickQuotes(List<String> symbols) throws StockServiceException {
+
+        //Normalize so the same set of symbols always shares one in flight request.
+        //Symbols rejected locally are left out like any other unknown symbol.
+        TreeSet<String> uniqueSymbols = new TreeSet<>();
+        for (String symbol : symbols) {
+            try {
+                checkSymbol(symbol, REJECT_UNLISTED);
+                uniqueSymbols.add(symbol.trim().toUpperCase());
+            } catch (InvalidSymbolException e) {
+                //Skipped.
+            }
+        }
+
+        if (uniqueSymbols.isEmpty()) {
+            return new LinkedHashMap<>();
+        }
+
+        Map<String, Stock> fetched = BATCH_IN_FLIGHT.execute("QUOTES|" + String.join(",", uniqueSymbols), () -> {
+            try {
+                Map<String, Stock> quotes = BREAKER.execute(() ->
+                        ServiceFactory.getQuoteProviderInstance().getStocks(uniqueSymbols.toArray(new String[0])));
+                if (quotes != null) {
+                    for (String symbol : uniqueSymbols) {
+                        Stock stock = quotes.get(symbol);
+
+                        if (stock == null || !stock.isValid()) {
+                            NEGATIVE_CACHE.reject(symbol);
+                        } else {
+                            QUOTE_CACHE.put(stock);
+                        }
+                    }
+                }
+                return quotes;
+            } catch (IOException e) {
+                //Serve the last known good quotes while upstream is unavailable.
+                Map<String, Stock> stale = new HashMap<>();
+                for (String symbol : uniqueSymbols) {
+                    StaleStock stock = QUOTE_CACHE.getStale(symbol);
+                    if (stock != null) {
+                        stale.put(symbol, stock);
+                    }
+                }
+                if (!stale.isEmpty()) {
+                    return stale;
+                }
+                throw new StockServiceException("An error occured while retrieving quotes" +
+                        " for, " + uniqueSymbols + ", using WebStockService. ", e);
+            }
+        });
+
+        Map<String, Stock> stocks = new LinkedHashMap<>();
+        for (String symbol : symbols) {
+            String upperSymbol = symbol.trim().toUpperCase();
+            Stock stock = fetched == null ? null : fetched.get(upperSymbol);
+
+            if (stock != null) {
+                stocks.put(upperSymbol, stock);
+            }
+        }
+
+        return stocks;
+    }
+
+    /**
+     * Reject a symbol locally when it can't be a ticker, is a plain ticker missing from the
+     * listed universe when rejectUnlisted is set, or upstream recently reported it unknown. Symbols with an exchange
+     * suffix or index prefix, such as BMW.DE or ^GSPC, are not in stocks.csv and are only
+     * checked against the recent rejections.
+     *
+     * @param symbol         Symbol about to go upstream
+     * @param rejectUnlisted Reject plain tickers missing from the listed universe
+     * @throws InvalidSymbolException Thrown when the symbol is rejected
+     */
+    static void checkSymbol(String symbol, boolean rejectUnlisted) throws InvalidSymbolException {
+        if (!WebUtils.isSymbolSyntax(symbol)) {
+            throw new InvalidSymbolException(symbol, "not a ticker symbol.");
+        }
+
+        String upperSymbol = symbol.trim().toUpperCase();
+        if (NEGATIVE_CACHE.isRejected(upperSymbol)) {
+            throw new InvalidSymbolException(upperSymbol, "recently reported unknown upstream.");
+        }
+
+        if (rejectUnlisted && isPlainTicker(upperSymbol)) {
+            SymbolIndex universe = ServiceFactory.getSymbolIndexInstance();
+
+            //An empty universe means the list could not be read, let upstream decide.
+            if (universe.size() > 0 && universe.get(upperSymbol) == null) {
+                throw new InvalidSymbolException(upperSymbol, "not a listed symbol.");
+            }
+        }
+    }
+
+    private static boolean isPlainTicker(String symbol) {
+        for (int i = 0; i < symbol.length(); i++) {
+            if (!Character.isLetterOrDigit(symbol.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check whether a failure means upstream answered that the symbol does not exist.
+     *
+     * @param e Failure from upstream
+     * @return True if the symbol is unknown
+     */
+    private static boolean isUnknownSymbol(StockServiceException e) {
+        return e instanceof InvalidSymbolException || e.getCause() instanceof FileNotFoundException;
     }
 
     /**
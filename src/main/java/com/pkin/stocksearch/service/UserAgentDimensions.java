@@ -0,0 +1,207 @@
+/**
+ * Copyright 2018 Peter Kinson
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ */
+
+package com.pkin.stocksearch.service;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dictionary of the user agent values stored with searches.
+ * <p>
+ * Each distinct browser family, version, operating system and device is stored once
+ * in the ua_dimensions table, and searches refer to it by its small integer id. Ids are
+ * kept in memory, so the write path only queries the table for a value it has not seen.
+ * The first lookup loads the whole table, at most maxEntries values are remembered.
+ */
+public class UserAgentDimensions {
+
+    /**
+     * The user agent columns of a search. The code is what ua_dimensions stores in kind.
+     */
+    public enum Kind {
+        FAMILY(1), FAMILY_VERSION(2), OS(3), OS_VERSION(4), DEVICE(5);
+
+        private final int code;
+
+        Kind(int code) {
+            this.code = code;
+        }
+
+        public int getCode() {
+            return code;
+        }
+    }
+
+    //Width of ua_dimensions.name, longer values are cut to fit.
+    private static final int MAX_NAME_LENGTH = 64;
+    private static final String SELECT_ALL = "SELECT id, kind, name FROM ua_dimensions";
+    private static final String SELECT_ONE = "SELECT id FROM ua_dimensions WHERE kind = ? AND name = ?";
+    private static final String INSERT = "INSERT INTO ua_dimensions (kind, name) VALUES (?, ?)";
+
+    private final int maxEntries;
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile boolean loaded;
+
+    /**
+     * @param maxEntries Maximum number of values whose id is remembered
+     */
+    public UserAgentDimensions(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Return the id of a value, adding it to ua_dimensions if it is new.
+     * <p>
+     * Runs on the caller's connection and transaction. Ids this call inserts are put
+     * in pending rather than remembered, pass pending to publish once the transaction
+     * commits so a rolled back id is never reused.
+     *
+     * @param connection Connection to look up or insert the value on
+     * @param kind       Column the value belongs to
+     * @param name       Value to look up, may be null
+     * @param pending    Ids inserted by the current transaction
+     * @return Id of the value, null for a null value
+     * @throws SQLException Thrown when the value could not be looked up or inserted
+     */
+    public Integer resolve(Connection connection, Kind kind, String name, Map<String, Integer> pending) throws SQLException {
+
+        if (name == null) {
+            return null;
+        }
+
+        String value = name.length() > MAX_NAME_LENGTH ? name.substring(0, MAX_NAME_LENGTH) : name;
+        String key = key(kind.getCode(), value);
+
+        Integer id = ids.get(key);
+        if (id == null) {
+            id = pending.get(key);
+        }
+        if (id == null && !loaded) {
+            load(connection);
+            id = ids.get(key);
+        }
+        if (id == null) {
+            id = select(connection, kind, value);
+            if (id != null) {
+                //Already committed by someone else, safe to remember now.
+                remember(key, id);
+            } else {
+                id = insert(connection, kind, value);
+                pending.put(key, id);
+            }
+        }
+
+        return id;
+    }
+
+    /**
+     * Remember ids inserted by a transaction that has committed.
+     *
+     * @param pending Ids collected by resolve
+     */
+    public void publish(Map<String, Integer> pending) {
+        for (Map.Entry<String, Integer> entry : pending.entrySet()) {
+            remember(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Return the number of values whose id is remembered.
+     *
+     * @return Remembered value count
+     */
+    public int size() {
+        return ids.size();
+    }
+
+    private void load(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(SELECT_ALL)) {
+
+            while (resultSet.next() && ids.size() < maxEntries) {
+                ids.put(key(resultSet.getInt("kind"), resultSet.getString("name")), resultSet.getInt("id"));
+            }
+        }
+        loaded = true;
+    }
+
+    private Integer select(Connection connection, Kind kind, String value) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(SELECT_ONE)) {
+            statement.setInt(1, kind.getCode());
+            statement.setString(2, value);
+
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? resultSet.getInt(1) : null;
+            }
+        }
+    }
+
+    private Integer insert(Connection connection, Kind kind, String value) throws SQLException {
+        //A failed insert must not abort the caller's transaction, so it gets its own savepoint.
+        Savepoint savepoint = connection.getAutoCommit() ? null : connection.setSavepoint();
+
+        try (PreparedStatement statement = connection.prepareStatement(INSERT, Statement.RETURN_GENERATED_KEYS)) {
+            statement.setInt(1, kind.getCode());
+            statement.setString(2, value);
+            statement.executeUpdate();
+
+            int id;
+            try (ResultSet keys = statement.getGeneratedKeys()) {
+                if (!keys.next()) {
+                    throw new SQLException("No id was generated for user agent value " + value);
+                }
+                id = keys.getInt(1);
+            }
+
+            if (savepoint != null) {
+                connection.releaseSavepoint(savepoint);
+            }
+            return id;
+        } catch (SQLException e) {
+            //Integrity constraint violation, another writer added the same value first.
+            if (e.getSQLState() == null || !e.getSQLState().startsWith("23")) {
+                throw e;
+            }
+            if (savepoint != null) {
+                connection.rollback(savepoint);
+            }
+
+            Integer id = select(connection, kind, value);
+            if (id == null) {
+                throw e;
+            }
+            return id;
+        }
+    }
+
+    private void remember(String key, Integer id) {
+        if (ids.size() < maxEntries) {
+            ids.put(key, id);
+        }
+    }
+
+    private static String key(int kind, String value) {
+        return kind + ":" + value;
+    }
+}
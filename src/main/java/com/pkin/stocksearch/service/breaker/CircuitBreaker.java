@@ -0,0 +1,210 @@
+/**
+ * Copyright 2018 Peter Kinson
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ */
+
+
+package com.pkin.stocksearch.service.breaker;
+
+import com.pkin.stocksearch.service.exceptions.UpstreamUnavailableException;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Circuit breaker with a time budget for calls to the quote provider.
+ * <p>
+ * Every call runs on the supplied executor and is abandoned once its time budget
+ * runs out. After failureThreshold consecutive failures or timeouts the breaker
+ * opens and calls fail fast for openMillis. A single probe call is then let
+ * through; if it succeeds the breaker closes again, otherwise it stays open for
+ * another openMillis.
+ * <p>
+ * A FileNotFoundException means upstream answered that the symbol does not exist,
+ * so it counts as a success.
+ */
+public class CircuitBreaker {
+
+    /**
+     * State of the breaker.
+     */
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openMillis;
+    private final long timeBudgetMillis;
+    private final ExecutorService executor;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures = 0;
+    private long openedAt = 0;
+    private boolean probeInFlight = false;
+
+    /**
+     * Upstream call guarded by the breaker.
+     *
+     * @param <V> Result type of the call
+     */
+    public interface Call<V> {
+
+        /**
+         * Run the call.
+         *
+         * @return Result of the call
+         * @throws IOException Thrown when upstream fails
+         */
+        V call() throws IOException;
+    }
+
+    /**
+     * @param name             Name used in exception messages
+     * @param failureThreshold Consecutive failures before the breaker opens
+     * @param openMillis       How long the breaker stays open before probing
+     * @param timeBudgetMillis Maximum time a single call may take
+     * @param executor         Executor the calls run on
+     */
+    public CircuitBreaker(String name, int failureThreshold, long openMillis, long timeBudgetMillis,
+                          ExecutorService executor) {
+        this.name = name;
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openMillis = openMillis;
+        this.timeBudgetMillis = timeBudgetMillis;
+        this.executor = executor;
+    }
+
+    /**
+     * Run a call through the breaker.
+     *
+     * @param call Upstream call
+     * @param <V>  Result type of the call
+     * @return Result of the call
+     * @throws UpstreamUnavailableException Thrown when the breaker is open or the call ran out of time
+     * @throws IOException                  Thrown when the call itself fails
+     */
+    public <V> V execute(Call<V> call) throws IOException {
+        boolean probe = acquirePermission();
+        Future<V> future;
+
+        try {
+            future = executor.submit(call::call);
+        } catch (RejectedExecutionException e) {
+            //Too many calls already waiting on upstream, this one would not finish in time either.
+            release(probe);
+            throw new UpstreamUnavailableException("Too many calls in flight to " + name + ".", e);
+        }
+
+        try {
+            V result = future.get(timeBudgetMillis, TimeUnit.MILLISECONDS);
+            onSuccess();
+            return result;
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            onFailure();
+            throw new UpstreamUnavailableException(name + " did not respond within " + timeBudgetMillis + "ms.", e);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            release(probe);
+            Thread.currentThread().interrupt();
+            throw new UpstreamUnavailableException("Interrupted while waiting on " + name + ".", e);
+        } catch (ExecutionException e) {
+            return handleFailure(e.getCause());
+        }
+    }
+
+    /**
+     * Return the current state of the breaker.
+     *
+     * @return Breaker state
+     */
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Decide whether a call may go upstream.
+     *
+     * @return True if the call is the half-open probe
+     */
+    private synchronized boolean acquirePermission() throws UpstreamUnavailableException {
+        if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openMillis) {
+            state = State.HALF_OPEN;
+        }
+
+        if (state == State.CLOSED) {
+            return false;
+        }
+        if (state == State.HALF_OPEN && !probeInFlight) {
+            probeInFlight = true;
+            return true;
+        }
+
+        throw new UpstreamUnavailableException(name + " is unavailable, not calling upstream.");
+    }
+
+    /**
+     * Sort the failure of a call into upstream failures and answers from upstream.
+     */
+    private <V> V handleFailure(Throwable cause) throws IOException {
+        if (cause instanceof FileNotFoundException) {
+            onSuccess();
+            throw (FileNotFoundException) cause;
+        }
+
+        onFailure();
+
+        if (cause instanceof IOException) {
+            throw (IOException) cause;
+        } else if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        } else if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        throw new IOException(name + " failed.", cause);
+    }
+
+    private synchronized void onSuccess() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        probeInFlight = false;
+    }
+
+    private synchronized void onFailure() {
+        consecutiveFailures++;
+
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+        }
+        probeInFlight = false;
+    }
+
+    /**
+     * Give back a probe that never reached upstream.
+     */
+    private synchronized void release(boolean probe) {
+        if (probe) {
+            probeInFlight = false;
+        }
+    }
+}
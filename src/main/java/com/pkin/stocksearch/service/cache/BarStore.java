@@ -0,0 +1,496 @@
+/**
+ * Copyright 2018 Peter Kinson
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ */
+
+
+package com.pkin.stocksearch.service.cache;
+
+import com.pkin.stocksearch.service.exceptions.StockServiceException;
+import com.pkin.stocksearch.utilities.MarketHours;
+import yahoofinance.Stock;
+import yahoofinance.histquotes.HistoricalQuote;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Persistent store of daily bars for closed trading days, one file per symbol.
+ * <p>
+ * Each file holds a fixed size header followed by fixed width records sorted by
+ * date. Files are memory-mapped for reading, so a lookup is a binary search over
+ * the mapping with no per-bar objects kept on the heap. Bars for closed days
+ * never change, so new days are appended and the covered range is extended.
+ * A request starting before the covered range rewrites the file once.
+ * Days are New York dates, and a day counts as closed once its session ended at
+ * 16:00 New York time, wherever the server runs.
+ * <p>
+ * Header (256 bytes): magic, version, first and last covered epoch day, then
+ * name, exchange and currency as length prefixed UTF-8.
+ * Record (56 bytes): date in epoch millis, open, high, low, close and adjusted
+ * close scaled by 10^4, and volume. Missing values are stored as Long.MIN_VALUE.
+ */
+public class BarStore {
+
+    private static final int MAGIC = 0x42415253; //"BARS"
+    //2: days are New York trading days, files from version 1 are fetched again.
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 256;
+    private static final int RECORD_SIZE = 56;
+    private static final int PRICE_SCALE = 4;
+    private static final long NULL_VALUE = Long.MIN_VALUE;
+    private static final String SUFFIX = ".bars";
+
+    private final File directory;
+    private final ConcurrentHashMap<String, Object> locks = new ConcurrentHashMap<>();
+    //Mapped views of recently read files, dropped whenever a file is written.
+    private final Map<String, Segment> segments;
+
+    /**
+     * @param directory   Directory the bar files are kept in, created if missing
+     * @param maxSegments Maximum number of files kept mapped at once
+     */
+    public BarStore(File directory, int maxSegments) {
+        this.directory = directory;
+        this.segments = Collections.synchronizedMap(new LinkedHashMap<String, Segment>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Segment> eldest) {
+                return size() > maxSegments;
+            }
+        });
+    }
+
+    /**
+     * Return a Stock with daily history for the range, reading stored days from disk and
+     * fetching only days the store does not cover yet. Closed days fetched from upstream
+     * are written to the store.
+     * <p>
+     * Like the fetcher, the range includes from and excludes until.
+     *
+     * @param symbol  Stock symbol
+     * @param from    Start of the range
+     * @param until   End of the range, exclusive
+     * @param fetcher Callback used for days the store does not cover
+     * @return Stock with history for the range, or null if upstream has no such symbol
+     * @throws StockServiceException Thrown when a missing range cannot be fetched
+     */
+    public Stock get(String symbol, Calendar from, Calendar until, HistoricalBarCache.RangeFetcher fetcher)
+            throws StockServiceException {
+
+        String key = symbol.trim().toUpperCase();
+        long fromDay = toEpochDay(from.getTimeInMillis());
+        long untilDay = toEpochDay(until.getTimeInMillis() - 1);
+
+        if (untilDay < fromDay) {
+            return fetcher.fetch(from, until);
+        }
+
+        synchronized (locks.computeIfAbsent(key, k -> new Object())) {
+            Segment segment = readSegment(key);
+
+            //Everything requested is on disk, upstream is not needed.
+            if (segment != null && segment.coveredFrom <= fromDay && segment.coveredUntil >= untilDay) {
+                Stock stock = segment.buildStock(key);
+                stock.setHistory(segment.read(key, from.getTimeInMillis(), until.getTimeInMillis() - 1));
+                return stock;
+            }
+
+            return fetchAndStore(key, segment, from, until, fromDay, untilDay, fetcher);
+        }
+    }
+
+    /**
+     * Return the range only if the store fully covers it, without going upstream.
+     *
+     * @param symbol Stock symbol
+     * @param from   Start of the range
+     * @param until  End of the range, exclusive
+     * @return Stock with the stored bars in the range, or null if any day is not stored
+     */
+    public Stock getCovered(String symbol, Calendar from, Calendar until) {
+        String key = symbol.trim().toUpperCase();
+        long fromDay = toEpochDay(from.getTimeInMillis());
+        long untilDay = toEpochDay(until.getTimeInMillis() - 1);
+
+        synchronized (locks.computeIfAbsent(key, k -> new Object())) {
+            Segment segment = readSegment(key);
+
+            if (segment == null || untilDay < fromDay || segment.coveredFrom > fromDay || segment.coveredUntil < untilDay) {
+                return null;
+            }
+
+            Stock stock = segment.buildStock(key);
+            stock.setHistory(segment.read(key, from.getTimeInMillis(), until.getTimeInMillis() - 1));
+            return stock;
+        }
+    }
+
+    /**
+     * Fetch the days missing around the stored range, write the closed ones and return the merged range.
+     */
+    private Stock fetchAndStore(String key, Segment segment, Calendar from, Calendar until, long fromDay,
+                                long untilDay, HistoricalBarCache.RangeFetcher fetcher) throws StockServiceException {
+
+        long lastClosedDay = MarketHours.lastClosedDay(ZonedDateTime.now()).toEpochDay();
+        List<HistoricalQuote> before = Collections.emptyList();
+        List<HistoricalQuote> after = Collections.emptyList();
+        Stock template = null;
+
+        if (segment == null) {
+            template = fetcher.fetch(from, until);
+            if (template == null) {
+                return null;
+            }
+            after = history(template);
+        } else {
+            if (fromDay < segment.coveredFrom) {
+                template = fetcher.fetch(from, toCalendar(segment.coveredFrom));
+                if (template == null) {
+                    return null;
+                }
+                before = history(template);
+            }
+            if (untilDay > segment.coveredUntil) {
+                Stock fetched = fetcher.fetch(toCalendar(segment.coveredUntil + 1), until);
+                if (fetched == null) {
+                    return null;
+                }
+                template = fetched;
+                after = history(fetched);
+            }
+        }
+
+        long newFrom = segment == null ? fromDay : Math.min(fromDay, segment.coveredFrom);
+        long newUntil = Math.min(lastClosedDay, segment == null ? untilDay : Math.max(untilDay, segment.coveredUntil));
+        long closedBefore = toStartOfDay(lastClosedDay + 1);
+
+        try {
+            boolean extended = segment == null || newFrom < segment.coveredFrom || newUntil > segment.coveredUntil;
+
+            if (newUntil >= newFrom && extended) {
+                if (segment == null || newFrom < segment.coveredFrom) {
+                    rewrite(key, segment, before, after, closedBefore, newFrom, newUntil, template);
+                } else {
+                    append(key, segment, after, closedBefore, newFrom, newUntil, template);
+                }
+            }
+        } catch (IOException e) {
+            //The store is only an optimization, a failed write still answers from upstream.
+            segments.remove(key);
+        }
+
+        //Stored days plus anything from today that is not written yet.
+        TreeMap<Long, HistoricalQuote> merged = new TreeMap<>();
+        long fromMillis = from.getTimeInMillis();
+        long untilMillis = until.getTimeInMillis() - 1;
+        if (segment != null) {
+            for (HistoricalQuote quote : segment.read(key, fromMillis, untilMillis)) {
+                merged.put(quote.getDate().getTimeInMillis(), quote);
+            }
+        }
+        for (List<HistoricalQuote> fetched : Arrays.asList(before, after)) {
+            for (HistoricalQuote quote : fetched) {
+                long date = quote.getDate().getTimeInMillis();
+                if (date >= fromMillis && date <= untilMillis) {
+                    merged.put(date, quote);
+                }
+            }
+        }
+
+        Stock stock = new Stock(template.getSymbol());
+        stock.setName(template.getName());
+        stock.setCurrency(template.getCurrency());
+        stock.setStockExchange(template.getStockExchange());
+        stock.setQuote(template.getQuote());
+        stock.setStats(template.getStats());
+        stock.setDividend(template.getDividend());
+        stock.setHistory(new ArrayList<>(merged.values()));
+
+        return stock;
+    }
+
+    /**
+     * Append closed days after the last stored record and extend the covered range.
+     */
+    private void append(String key, Segment segment, List<HistoricalQuote> after, long closedBefore,
+                        long coveredFrom, long coveredUntil, Stock template) throws IOException {
+
+        long lastDate = segment.count > 0 ? segment.dateAt(segment.count - 1) : Long.MIN_VALUE;
+
+        try (RandomAccessFile file = new RandomAccessFile(fileFor(key), "rw");
+             FileChannel channel = file.getChannel()) {
+
+            ByteBuffer records = encode(after, lastDate, closedBefore);
+            channel.write(records, HEADER_SIZE + (long) segment.count * RECORD_SIZE);
+            //Header last, so a crash never claims coverage for records that were not written.
+            channel.write(encodeHeader(coveredFrom, coveredUntil, template), 0);
+            channel.force(false);
+        } finally {
+            segments.remove(key);
+        }
+    }
+
+    /**
+     * Write a new file holding the stored records merged with fetched closed days, then swap it in.
+     */
+    private void rewrite(String key, Segment segment, List<HistoricalQuote> before, List<HistoricalQuote> after,
+                         long closedBefore, long coveredFrom, long coveredUntil, Stock template) throws IOException {
+
+        TreeMap<Long, HistoricalQuote> merged = new TreeMap<>();
+        for (List<HistoricalQuote> fetched : Arrays.asList(before, after)) {
+            for (HistoricalQuote quote : fetched) {
+                merged.put(quote.getDate().getTimeInMillis(), quote);
+            }
+        }
+        if (segment != null) {
+            for (HistoricalQuote quote : segment.read(key, Long.MIN_VALUE, Long.MAX_VALUE)) {
+                merged.put(quote.getDate().getTimeInMillis(), quote);
+            }
+        }
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create bar store directory " + directory + ".");
+        }
+
+        File target = fileFor(key);
+        File temp = new File(directory, target.getName() + ".tmp");
+
+        try (RandomAccessFile file = new RandomAccessFile(temp, "rw");
+             FileChannel channel = file.getChannel()) {
+            file.setLength(0);
+            channel.write(encodeHeader(coveredFrom, coveredUntil, template), 0);
+            channel.write(encode(merged.values(), Long.MIN_VALUE, closedBefore), HEADER_SIZE);
+            channel.force(false);
+        }
+
+        try {
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            segments.remove(key);
+        }
+    }
+
+    /**
+     * Return the mapped file for a symbol, or null if nothing is stored.
+     */
+    private Segment readSegment(String key) {
+        Segment segment = segments.get(key);
+        if (segment != null) {
+            return segment;
+        }
+
+        File file = fileFor(key);
+        if (!file.isFile() || file.length() < HEADER_SIZE) {
+            return null;
+        }
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                return null;
+            }
+
+            segment = new Segment(buffer, (int) ((channel.size() - HEADER_SIZE) / RECORD_SIZE));
+            segments.put(key, segment);
+            return segment;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private File fileFor(String key) {
+        //Symbols like BRK-B or ^GSPC are kept readable, anything else is replaced.
+        return new File(directory, key.replaceAll("[^A-Z0-9.\\-^=]", "_") + SUFFIX);
+    }
+
+    private static ByteBuffer encodeHeader(long coveredFrom, long coveredUntil, Stock template) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putLong(coveredFrom).putLong(coveredUntil);
+        putString(header, template.getName(), 160);
+        putString(header, template.getStockExchange(), 40);
+        putString(header, template.getCurrency(), 24);
+        header.rewind();
+        return header;
+    }
+
+    /**
+     * Encode the closed days after lastDate as records.
+     */
+    private static ByteBuffer encode(Collection<HistoricalQuote> quotes, long lastDate, long closedBefore) {
+        ByteBuffer records = ByteBuffer.allocate(quotes.size() * RECORD_SIZE);
+
+        for (HistoricalQuote quote : quotes) {
+            if (quote == null || quote.getDate() == null) {
+                continue;
+            }
+
+            long date = quote.getDate().getTimeInMillis();
+            if (date <= lastDate || date >= closedBefore) {
+                continue;
+            }
+
+            records.putLong(date)
+                    .putLong(scale(quote.getOpen()))
+                    .putLong(scale(quote.getHigh()))
+                    .putLong(scale(quote.getLow()))
+                    .putLong(scale(quote.getClose()))
+                    .putLong(scale(quote.getAdjClose()))
+                    .putLong(quote.getVolume() == null ? NULL_VALUE : quote.getVolume());
+            lastDate = date;
+        }
+
+        records.flip();
+        return records;
+    }
+
+    private static void putString(ByteBuffer buffer, String value, int maxBytes) {
+        byte[] bytes = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(bytes.length, maxBytes);
+        buffer.putShort((short) length).put(bytes, 0, length);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getShort();
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return length == 0 ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static long scale(BigDecimal value) {
+        return value == null ? NULL_VALUE : value.movePointRight(PRICE_SCALE).setScale(0, RoundingMode.HALF_UP).longValue();
+    }
+
+    private static BigDecimal unscale(long value) {
+        return value == NULL_VALUE ? null : BigDecimal.valueOf(value, PRICE_SCALE);
+    }
+
+    private static List<HistoricalQuote> history(Stock stock) {
+        try {
+            List<HistoricalQuote> history = stock.getHistory();
+            return history == null ? Collections.<HistoricalQuote>emptyList() : history;
+        } catch (IOException e) {
+            return Collections.emptyList();
+        }
+    }
+
+    private static long toEpochDay(long millis) {
+        return Instant.ofEpochMilli(millis).atZone(MarketHours.ZONE).toLocalDate().toEpochDay();
+    }
+
+    private static long toStartOfDay(long epochDay) {
+        return LocalDate.ofEpochDay(epochDay).atStartOfDay(MarketHours.ZONE).toInstant().toEpochMilli();
+    }
+
+    private static Calendar toCalendar(long epochDay) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(toStartOfDay(epochDay));
+        return calendar;
+    }
+
+    /**
+     * Read only mapped view of one bar file.
+     */
+    private static class Segment {
+
+        private final MappedByteBuffer buffer;
+        private final int count;
+        private final long coveredFrom;
+        private final long coveredUntil;
+        private final String name;
+        private final String exchange;
+        private final String currency;
+
+        private Segment(MappedByteBuffer buffer, int count) {
+            this.buffer = buffer;
+            this.count = count;
+            this.coveredFrom = buffer.getLong(8);
+            this.coveredUntil = buffer.getLong(16);
+
+            ByteBuffer header = buffer.duplicate();
+            header.position(24);
+            this.name = getString(header);
+            this.exchange = getString(header);
+            this.currency = getString(header);
+        }
+
+        private long dateAt(int index) {
+            return buffer.getLong(HEADER_SIZE + index * RECORD_SIZE);
+        }
+
+        /**
+         * Read the records between two instants, inclusive.
+         */
+        private List<HistoricalQuote> read(String symbol, long from, long until) {
+            //Binary search for the first record on or after from.
+            int low = 0;
+            int high = count;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (dateAt(mid) < from) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+
+            List<HistoricalQuote> quotes = new ArrayList<>();
+            for (int i = low; i < count; i++) {
+                int offset = HEADER_SIZE + i * RECORD_SIZE;
+                long date = buffer.getLong(offset);
+                if (date > until) {
+                    break;
+                }
+
+                Calendar calendar = Calendar.getInstance();
+                calendar.setTimeInMillis(date);
+                long volume = buffer.getLong(offset + 48);
+
+                quotes.add(new HistoricalQuote(symbol, calendar,
+                        unscale(buffer.getLong(offset + 8)),
+                        unscale(buffer.getLong(offset + 24)),
+                        unscale(buffer.getLong(offset + 16)),
+                        unscale(buffer.getLong(offset + 32)),
+                        unscale(buffer.getLong(offset + 40)),
+                        volume == NULL_VALUE ? null : volume));
+            }
+
+            return quotes;
+        }
+
+        private Stock buildStock(String symbol) {
+            Stock stock = new Stock(symbol);
+            stock.setName(name);
+            stock.setStockExchange(exchange);
+            stock.setCurrency(currency);
+            return stock;
+        }
+    }
+}
@@ -0,0 +1,433 @@
+/**
+ * Copyright 2018 Peter Kinson
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ */
+
+package com.pkin.stocksearch.service.cache;
+
+import com.pkin.stocksearch.model.StaleStock;
+import com.pkin.stocksearch.service.exceptions.StockServiceException;
+import com.pkin.stocksearch.utilities.MarketHours;
+import yahoofinance.Stock;
+import yahoofinance.histquotes.HistoricalQuote;
+import yahoofinance.histquotes.Interval;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.util.*;
+
+/**
+ * In-process cache of historical bars keyed by symbol and interval.
+ * <p>
+ * Bars are stored by date along with the date ranges that have already been
+ * fetched. A request that overlaps cached data only fetches the missing
+ * sub-ranges from upstream and merges them in. Days are New York dates, and the
+ * bars of a session are never marked as covered until it closes at 16:00 New York
+ * time, since they keep changing until then.
+ * <p>
+ * Only daily bars are merged from separate fetches. A weekly or monthly bar spans
+ * several days, so pieces fetched separately would hold partial periods and repeat
+ * the periods that straddle their edges. For those intervals a request that is not
+ * fully covered fetches its whole range again, which replaces what was cached.
+ * <p>
+ * The cache is bounded by the total number of bars held. When the bound is
+ * exceeded the least recently used symbol is evicted.
+ */
+public class HistoricalBarCache {
+
+    private final int maxBars;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private int totalBars = 0;
+
+    /**
+     * Callback used to retrieve a date range the cache does not hold yet.
+     */
+    public interface RangeFetcher {
+
+        /**
+         * Fetch a Stock with history for the given range.
+         *
+         * @param from  Start of the range
+         * @param until End of the range
+         * @return Stock with its history set, or null if upstream has no such symbol
+         * @throws StockServiceException Thrown when upstream fails
+         */
+        Stock fetch(Calendar from, Calendar until) throws StockServiceException;
+    }
+
+    /**
+     * @param maxBars Maximum number of bars held across all symbols
+     */
+    public HistoricalBarCache(int maxBars) {
+        this.maxBars = maxBars;
+    }
+
+    /**
+     * Return a Stock with history for the requested range, fetching only what is not cached.
+     *
+     * @param symbol   Stock symbol
+     * @param from     Start date
+     * @param until    End date
+     * @param interval Interval of the bars
+     * @param fetcher  Callback used for the missing sub-ranges
+     * @return Stock with history for the range, or null if upstream has no such symbol
+     * @throws StockServiceException Thrown when a missing range cannot be fetched
+     */
+    public Stock get(String symbol, Calendar from, Calendar until, Interval interval, RangeFetcher fetcher)
+            throws StockServiceException {
+
+        LocalDate fromDay = toLocalDate(from);
+        LocalDate untilDay = toLocalDate(until);
+
+        //Nothing sensible to cache, let upstream decide what to do with the range.
+        if (symbol == null || untilDay.isBefore(fromDay)) {
+            return fetcher.fetch(from, until);
+        }
+
+        String key = buildKey(symbol, interval);
+        Entry entry = getEntry(key);
+
+        List<LocalDate[]> missing;
+        synchronized (entry) {
+            missing = entry.missingRanges(fromDay.toEpochDay(), untilDay.toEpochDay());
+        }
+
+        boolean replace = interval != Interval.DAILY;
+        if (replace && !missing.isEmpty()) {
+            missing = Collections.singletonList(new LocalDate[]{fromDay, untilDay});
+        }
+
+        for (LocalDate[] range : missing) {
+            Stock fetched = fetcher.fetch(toCalendar(range[0]), toCalendar(range[1].plusDays(1)));
+
+            if (fetched == null) {
+                //Unknown symbol, do not keep an empty entry around.
+                removeEntry(key, entry);
+                return null;
+            }
+
+            mergeRange(key, entry, fetched, range[0], range[1], replace);
+        }
+
+        synchronized (entry) {
+            return entry.template == null ? null :
+                    entry.buildStock(new Stock(entry.template.getSymbol()), from.getTimeInMillis(), until.getTimeInMillis());
+        }
+    }
+
+    /**
+     * Return the range only if the cache fully covers it, without going upstream.
+     * Closed days must be covered, and if the range reaches today, today's bars must
+     * have been fetched today.
+     *
+     * @param symbol   Stock symbol
+     * @param from     Start date
+     * @param until    End date
+     * @param interval Interval of the bars
+     * @return Stock with the cached bars in the range, or null if any part is not cached
+     */
+    public Stock getCovered(String symbol, Calendar from, Calendar until, Interval interval) {
+        if (symbol == null) {
+            return null;
+        }
+
+        long fromDay = toLocalDate(from).toEpochDay();
+        long untilDay = toLocalDate(until).toEpochDay();
+        long today = MarketHours.lastClosedDay(ZonedDateTime.now()).toEpochDay() + 1;
+
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(buildKey(symbol, interval));
+        }
+        if (entry == null || untilDay < fromDay) {
+            return null;
+        }
+
+        synchronized (entry) {
+            if (entry.template == null) {
+                return null;
+            }
+            if (fromDay < today && !entry.missingRanges(fromDay, Math.min(untilDay, today - 1)).isEmpty()) {
+                return null;
+            }
+            if (untilDay >= today && entry.openDayFetchedOn != today) {
+                return null;
+            }
+
+            return entry.buildStock(new Stock(entry.template.getSymbol()), from.getTimeInMillis(), until.getTimeInMillis());
+        }
+    }
+
+    /**
+     * Return whatever is cached for the range without going upstream, flagged as stale.
+     * Used while upstream is unavailable.
+     *
+     * @param symbol   Stock symbol
+     * @param from     Start date
+     * @param until    End date
+     * @param interval Interval of the bars
+     * @return StaleStock with the cached bars in the range, or null if no bars are cached
+     */
+    public StaleStock getStale(String symbol, Calendar from, Calendar until, Interval interval) {
+        if (symbol == null) {
+            return null;
+        }
+
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(buildKey(symbol, interval));
+        }
+        if (entry == null) {
+            return null;
+        }
+
+        synchronized (entry) {
+            if (entry.template == null || entry.bars.subMap(from.getTimeInMillis(), true, until.getTimeInMillis(), true).isEmpty()) {
+                return null;
+            }
+
+            StaleStock stale = new StaleStock(entry.template.getSymbol(), entry.fetchedAt);
+            entry.buildStock(stale, from.getTimeInMillis(), until.getTimeInMillis());
+            return stale;
+        }
+    }
+
+    /**
+     * Return the number of bars currently held.
+     *
+     * @return Bar count across all symbols
+     */
+    public synchronized int size() {
+        return totalBars;
+    }
+
+    /**
+     * Remove all cached bars.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        totalBars = 0;
+    }
+
+    /**
+     * Merge a fetched range into an entry, or replace its bars with it, and evict older
+     * entries if over the bound.
+     */
+    private void mergeRange(String key, Entry entry, Stock fetched, LocalDate start, LocalDate end, boolean replace) {
+        List<HistoricalQuote> history;
+
+        try {
+            history = fetched.getHistory();
+        } catch (IOException e) {
+            history = Collections.emptyList();
+        }
+
+        //Bars of a session still trading keep changing, only remember coverage up to the last closed one.
+        long lastClosedDay = MarketHours.lastClosedDay(ZonedDateTime.now()).toEpochDay();
+        //Only the details are kept, the fetched history would sit outside the maxBars bound.
+        Stock template = withoutHistory(fetched);
+        int added;
+
+        synchronized (entry) {
+            int before = entry.bars.size();
+            if (replace) {
+                entry.bars.clear();
+                entry.coverage.clear();
+                entry.openDayFetchedOn = Long.MIN_VALUE;
+            }
+            entry.template = template;
+            entry.fetchedAt = System.currentTimeMillis();
+
+            for (HistoricalQuote quote : history) {
+                if (quote != null && quote.getDate() != null) {
+                    entry.bars.put(quote.getDate().getTimeInMillis(), quote);
+                }
+            }
+
+            if (start.toEpochDay() <= lastClosedDay) {
+                entry.addCoverage(start.toEpochDay(), Math.min(end.toEpochDay(), lastClosedDay));
+            }
+            //Remember that today's still changing bars were fetched today.
+            if (end.toEpochDay() > lastClosedDay) {
+                entry.openDayFetchedOn = lastClosedDay + 1;
+            }
+            added = entry.bars.size() - before;
+        }
+
+        synchronized (this) {
+            //The entry may have been evicted while upstream was being called.
+            if (entries.get(key) == entry) {
+                totalBars += added;
+                evict(key);
+            }
+        }
+    }
+
+    /**
+     * Evict least recently used entries until the cache fits within maxBars.
+     * The entry that was just written is never evicted.
+     */
+    private void evict(String keep) {
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+
+        while (totalBars > maxBars && iterator.hasNext()) {
+            Map.Entry<String, Entry> eldest = iterator.next();
+
+            if (!eldest.getKey().equals(keep)) {
+                synchronized (eldest.getValue()) {
+                    totalBars -= eldest.getValue().bars.size();
+                }
+                iterator.remove();
+            }
+        }
+    }
+
+    private synchronized Entry getEntry(String key) {
+        Entry entry = entries.get(key);
+
+        if (entry == null) {
+            entry = new Entry();
+            entries.put(key, entry);
+        }
+
+        return entry;
+    }
+
+    private synchronized void removeEntry(String key, Entry entry) {
+        if (entries.get(key) == entry) {
+            synchronized (entry) {
+                totalBars -= entry.bars.size();
+            }
+            entries.remove(key);
+        }
+    }
+
+    private static String buildKey(String symbol, Interval interval) {
+        return symbol.trim().toUpperCase() + "|" + interval;
+    }
+
+    private static Stock withoutHistory(Stock fetched) {
+        Stock template = new Stock(fetched.getSymbol());
+        template.setName(fetched.getName());
+        template.setCurrency(fetched.getCurrency());
+        template.setStockExchange(fetched.getStockExchange());
+        template.setQuote(fetched.getQuote());
+        template.setStats(fetched.getStats());
+        template.setDividend(fetched.getDividend());
+        return template;
+    }
+
+    private static LocalDate toLocalDate(Calendar calendar) {
+        return Instant.ofEpochMilli(calendar.getTimeInMillis()).atZone(MarketHours.ZONE).toLocalDate();
+    }
+
+    private static Calendar toCalendar(LocalDate date) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(date.atStartOfDay(MarketHours.ZONE).toInstant().toEpochMilli());
+        return calendar;
+    }
+
+    /**
+     * Bars and covered day ranges for one symbol and interval.
+     */
+    private static class Entry {
+
+        //Bars keyed by date in epoch millis
+        private final TreeMap<Long, HistoricalQuote> bars = new TreeMap<>();
+        //Covered ranges in epoch days, start -> end inclusive. Ranges never overlap or touch.
+        private final TreeMap<Long, Long> coverage = new TreeMap<>();
+        //Most recently fetched Stock, used for name and exchange details.
+        private Stock template;
+        //When upstream was last called for this entry, in epoch millis.
+        private long fetchedAt;
+        //Epoch day on which a fetch last included the current day.
+        private long openDayFetchedOn = Long.MIN_VALUE;
+
+        /**
+         * Return the day ranges within [start, end] that have not been fetched yet.
+         */
+        private List<LocalDate[]> missingRanges(long start, long end) {
+            List<LocalDate[]> missing = new ArrayList<>();
+            long cursor = start;
+
+            //Start from the range that may already cover the first requested day.
+            Map.Entry<Long, Long> floor = coverage.floorEntry(start);
+            if (floor != null && floor.getValue() >= start) {
+                cursor = floor.getValue() + 1;
+            }
+
+            for (Map.Entry<Long, Long> covered : coverage.tailMap(cursor, true).entrySet()) {
+                if (covered.getKey() > end) {
+                    break;
+                }
+                if (covered.getKey() > cursor) {
+                    missing.add(new LocalDate[]{LocalDate.ofEpochDay(cursor), LocalDate.ofEpochDay(covered.getKey() - 1)});
+                }
+                cursor = Math.max(cursor, covered.getValue() + 1);
+            }
+
+            if (cursor <= end) {
+                missing.add(new LocalDate[]{LocalDate.ofEpochDay(cursor), LocalDate.ofEpochDay(end)});
+            }
+
+            //Nothing is cached for a symbol we have never seen, so a template is needed regardless.
+            if (missing.isEmpty() && template == null) {
+                missing.add(new LocalDate[]{LocalDate.ofEpochDay(start), LocalDate.ofEpochDay(end)});
+            }
+
+            return missing;
+        }
+
+        /**
+         * Add a covered range, merging it with any ranges it overlaps or touches.
+         */
+        private void addCoverage(long start, long end) {
+            Map.Entry<Long, Long> floor = coverage.floorEntry(start);
+            if (floor != null && floor.getValue() >= start - 1) {
+                start = floor.getKey();
+                end = Math.max(end, floor.getValue());
+            }
+
+            Iterator<Map.Entry<Long, Long>> iterator = coverage.tailMap(start, true).entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Long, Long> next = iterator.next();
+                if (next.getKey() > end + 1) {
+                    break;
+                }
+                end = Math.max(end, next.getValue());
+                iterator.remove();
+            }
+
+            coverage.put(start, end);
+        }
+
+        /**
+         * Fill a Stock with the template details and the cached bars between two instants.
+         */
+        private Stock buildStock(Stock stock, long from, long until) {
+            stock.setName(template.getName());
+            stock.setCurrency(template.getCurrency());
+            stock.setStockExchange(template.getStockExchange());
+            stock.setQuote(template.getQuote());
+            stock.setStats(template.getStats());
+            stock.setDividend(template.getDividend());
+            stock.setHistory(new ArrayList<>(bars.subMap(from, true, until, true).values()));
+
+            return stock;
+        }
+    }
+}
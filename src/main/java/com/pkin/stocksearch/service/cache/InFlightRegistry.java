@@ -0,0 +1,118 @@
+/**
+ * Copyright 2018 Peter Kinson
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ */
+
+package com.pkin.stocksearch.service.cache;
+
+import com.pkin.stocksearch.service.exceptions.StockServiceException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Registry of upstream requests that are currently in flight.
+ * <p>
+ * The first caller for a key runs the request. Callers that arrive with the
+ * same key while it is running wait on the same future and receive the same
+ * result, or the same exception. The key is released as soon as the request
+ * completes, so nothing is cached here.
+ *
+ * @param <K> Key type identifying a request
+ * @param <V> Result type of the request
+ */
+public class InFlightRegistry<K, V> {
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Upstream request to run for a key.
+     *
+     * @param <V> Result type of the request
+     */
+    public interface Loader<V> {
+
+        /**
+         * Run the request.
+         *
+         * @return Result shared with all waiting callers
+         * @throws StockServiceException Thrown when the request fails
+         */
+        V load() throws StockServiceException;
+    }
+
+    /**
+     * Run the loader, or join a request already in flight for the same key.
+     *
+     * @param key    Key identifying the request
+     * @param loader Request to run if none is in flight
+     * @return Result of the request
+     * @throws StockServiceException Thrown when the shared request fails
+     */
+    public V execute(K key, Loader<V> loader) throws StockServiceException {
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, future);
+
+        //Someone else is already fetching this, wait for their result.
+        if (existing != null) {
+            return await(existing, key);
+        }
+
+        try {
+            V result = loader.load();
+            future.complete(result);
+            return result;
+        } catch (StockServiceException | RuntimeException | Error e) {
+            //Waiting callers block until the future completes, so it must complete however the loader fails.
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    /**
+     * Return the number of requests currently in flight.
+     *
+     * @return In flight request count
+     */
+    public int size() {
+        return inFlight.size();
+    }
+
+    /**
+     * Wait for a shared request and unwrap its failure.
+     */
+    private V await(CompletableFuture<V> future, K key) throws StockServiceException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StockServiceException("Interrupted while waiting on the request for " + key + ".", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+
+            if (cause instanceof StockServiceException) {
+                throw (StockServiceException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new StockServiceException("The request for " + key + " failed.", cause);
+        }
+    }
+}
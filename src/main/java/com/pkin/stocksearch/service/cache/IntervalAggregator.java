@@ -0,0 +1,124 @@
+/**
+ * Copyright 2018 Peter Kinson
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ */
+
+
+package com.pkin.stocksearch.service.cache;
+
+import yahoofinance.histquotes.HistoricalQuote;
+import yahoofinance.histquotes.Interval;
+
+import java.math.BigDecimal;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.GregorianCalendar;
+import java.util.List;
+
+/**
+ * Builds weekly and monthly bars from daily bars.
+ * <p>
+ * Daily bars are grouped by the week (starting Monday) or month they fall in. Each group
+ * becomes one bar dated at the start of its period, like the provider's own weekly and
+ * monthly bars: the first open, the highest high, the lowest low, the last close and
+ * adjusted close, and the summed volume. Missing values are skipped.
+ */
+public class IntervalAggregator {
+
+    private IntervalAggregator() {
+        //Hiding constructor.
+    }
+
+    /**
+     * Aggregate daily bars into the given interval.
+     *
+     * @param daily    Daily bars in date order
+     * @param interval Target interval
+     * @return Aggregated bars in date order. Daily bars are returned as is for DAILY.
+     */
+    public static List<HistoricalQuote> aggregate(List<HistoricalQuote> daily, Interval interval) {
+        if (interval == Interval.DAILY) {
+            return daily;
+        }
+
+        List<HistoricalQuote> aggregated = new ArrayList<>();
+        HistoricalQuote current = null;
+        LocalDate currentPeriod = null;
+
+        for (HistoricalQuote bar : daily) {
+            if (bar == null || bar.getDate() == null) {
+                continue;
+            }
+
+            ZoneId zone = bar.getDate().getTimeZone().toZoneId();
+            LocalDate day = bar.getDate().toInstant().atZone(zone).toLocalDate();
+            LocalDate period = periodStart(day, interval);
+
+            if (!period.equals(currentPeriod)) {
+                current = new HistoricalQuote(bar.getSymbol(), GregorianCalendar.from(ZonedDateTime.of(period.atStartOfDay(), zone)),
+                        null, null, null, null, null, null);
+                currentPeriod = period;
+                aggregated.add(current);
+            }
+
+            merge(current, bar);
+        }
+
+        return aggregated;
+    }
+
+    /**
+     * Return the first day of the period a day falls in.
+     */
+    private static LocalDate periodStart(LocalDate day, Interval interval) {
+        if (interval == Interval.MONTHLY) {
+            return day.with(TemporalAdjusters.firstDayOfMonth());
+        }
+        return day.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+    }
+
+    /**
+     * Fold a daily bar into the bar of its period. Bars arrive in date order.
+     */
+    private static void merge(HistoricalQuote period, HistoricalQuote bar) {
+        if (period.getOpen() == null) {
+            period.setOpen(bar.getOpen());
+        }
+        if (bar.getClose() != null) {
+            period.setClose(bar.getClose());
+        }
+        if (bar.getAdjClose() != null) {
+            period.setAdjClose(bar.getAdjClose());
+        }
+        period.setHigh(max(period.getHigh(), bar.getHigh()));
+        period.setLow(min(period.getLow(), bar.getLow()));
+
+        if (bar.getVolume() != null) {
+            period.setVolume(period.getVolume() == null ? bar.getVolume() : period.getVolume() + bar.getVolume());
+        }
+    }
+
+    private static BigDecimal max(BigDecimal a, BigDecimal b) {
+        return a == null ? b : b == null ? a : a.max(b);
+    }
+
+    private static BigDecimal min(BigDecimal a, BigDecimal b) {
+        return a == null ? b : b == null ? a : a.min(b);
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * Copyright 2018 Peter Kinson
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ */
+
+package com.pkin.stocksearch.service.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Symbols upstream recently answered do not exist.
+ * <p>
+ * Repeat requests for them are rejected locally until the time to live runs out,
+ * so mistyped or made up tickers cost one upstream call at most per period.
+ * Bounded, least recently rejected symbols are dropped first.
+ */
+public class NegativeSymbolCache {
+
+    private final long ttlMillis;
+    private final LinkedHashMap<String, Long> rejected;
+
+    /**
+     * @param maxSymbols Maximum number of symbols remembered
+     * @param ttlMillis  How long a symbol stays rejected
+     */
+    public NegativeSymbolCache(int maxSymbols, long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+        this.rejected = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > maxSymbols;
+            }
+        };
+    }
+
+    /**
+     * Remember that upstream does not know a symbol.
+     *
+     * @param symbol Unknown symbol
+     */
+    public synchronized void reject(String symbol) {
+        if (symbol != null && ttlMillis > 0) {
+            rejected.put(symbol.trim().toUpperCase(), System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Check whether a symbol was rejected within the time to live.
+     *
+     * @param symbol Symbol to check
+     * @return True if the symbol should not go upstream
+     */
+    public synchronized boolean isRejected(String symbol) {
+        String key = symbol.trim().toUpperCase();
+        Long rejectedAt = rejected.get(key);
+
+        if (rejectedAt == null) {
+            return false;
+        }
+        if (System.currentTimeMillis() - rejectedAt >= ttlMillis) {
+            rejected.remove(key);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Return the number of symbols remembered.
+     *
+     * @return Rejected symbol count
+     */
+    public synchronized int size() {
+        return rejected.size();
+    }
+
+    /**
+     * Forget all rejected symbols.
+     */
+    public synchronized void clear() {
+        rejected.clear();
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ * Copyright 2018 Peter Kinson
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ */
+
+
+package com.pkin.stocksearch.service.cache;
+
+import com.pkin.stocksearch.model.StaleStock;
+import yahoofinance.Stock;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Last successfully fetched quick quote per symbol.
+ * <p>
+ * Quotes younger than the time to live are served as is, which lets prefetched
+ * quotes be answered from memory. Older quotes are only served as stale data
+ * while upstream is unavailable. Bounded, least recently used symbols are dropped first.
+ */
+public class QuoteCache {
+
+    private final long ttlMillis;
+    private final LinkedHashMap<String, CachedQuote> quotes;
+
+    /**
+     * @param maxSymbols Maximum number of symbols remembered
+     * @param ttlMillis  How long a quote is served as fresh
+     */
+    public QuoteCache(int maxSymbols, long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+        this.quotes = new LinkedHashMap<String, CachedQuote>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedQuote> eldest) {
+                return size() > maxSymbols;
+            }
+        };
+    }
+
+    /**
+     * Remember a freshly fetched quote.
+     *
+     * @param stock Stock returned from upstream, ignored if null
+     */
+    public synchronized void put(Stock stock) {
+        if (stock != null && stock.getSymbol() != null) {
+            quotes.put(stock.getSymbol().toUpperCase(), new CachedQuote(stock, System.currentTimeMillis()));
+        }
+    }
+
+    /**
+     * Return the quote for a symbol if it was fetched within the time to live.
+     *
+     * @param symbol Stock symbol
+     * @return The cached quote, or null if there is none or it is too old
+     */
+    public synchronized Stock getFresh(String symbol) {
+        CachedQuote entry = quotes.get(symbol.trim().toUpperCase());
+
+        if (entry == null || System.currentTimeMillis() - entry.fetchedAt >= ttlMillis) {
+            return null;
+        }
+        return entry.stock;
+    }
+
+    /**
+     * Return the last known good quote for a symbol, whatever its age.
+     *
+     * @param symbol Stock symbol
+     * @return The stale quote, or null if the symbol was never fetched
+     */
+    public synchronized StaleStock getStale(String symbol) {
+        CachedQuote entry = quotes.get(symbol.trim().toUpperCase());
+
+        return entry == null ? null : StaleStock.of(entry.stock, entry.fetchedAt);
+    }
+
+    /**
+     * Forget all quotes.
+     */
+    public synchronized void clear() {
+        quotes.clear();
+    }
+
+    /**
+     * Quote and the time it was fetched.
+     */
+    private static class CachedQuote {
+        private final Stock stock;
+        private final long fetchedAt;
+
+        private CachedQuote(Stock stock, long fetchedAt) {
+            this.stock = stock;
+            this.fetchedAt = fetchedAt;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/**
+ * Copyright 2018 Peter Kinson
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ */
+
+package com.pkin.stocksearch.service.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Rendered results page fragments, keyed by the normalized search.
+ * <p>
+ * The table and chart data for a search are rendered the same way every time,
+ * so repeat views are served from here without fetching or rendering. Each
+ * entry carries a hash of its content to be used as an ETag. Bounded by the
+ * total number of characters held, least recently used entries are dropped first.
+ */
+public class RenderedFragmentCache {
+
+    private final long maxChars;
+    private final LinkedHashMap<String, Fragment> fragments = new LinkedHashMap<>(16, 0.75f, true);
+    private long chars;
+
+    /**
+     * @param maxChars Maximum number of characters held across all entries
+     */
+    public RenderedFragmentCache(long maxChars) {
+        this.maxChars = maxChars;
+    }
+
+    /**
+     * Return the fragment for a search if it has not expired.
+     *
+     * @param key Normalized search
+     * @return The cached fragment, or null if there is none or it expired
+     */
+    public synchronized Fragment get(String key) {
+        Fragment fragment = fragments.get(key);
+
+        if (fragment != null && System.currentTimeMillis() >= fragment.expiresAt) {
+            remove(key);
+            return null;
+        }
+        return fragment;
+    }
+
+    /**
+     * Remember a rendered fragment. Fragments larger than the whole cache are not kept,
+     * but are still returned so the caller gets its ETag.
+     *
+     * @param key       Normalized search
+     * @param html      Rendered table
+     * @param json      Rendered chart data
+     * @param ttlMillis How long the fragment may be served
+     * @return The fragment with its ETag
+     */
+    public synchronized Fragment put(String key, String html, String json, long ttlMillis) {
+        Fragment fragment = new Fragment(html, json, System.currentTimeMillis() + ttlMillis);
+
+        remove(key);
+        if (fragment.length() > maxChars) {
+            return fragment;
+        }
+
+        fragments.put(key, fragment);
+        chars += fragment.length();
+
+        //Drop least recently used entries until the cache is back within its bound.
+        Iterator<Map.Entry<String, Fragment>> eldest = fragments.entrySet().iterator();
+        while (chars > maxChars && eldest.hasNext()) {
+            chars -= eldest.next().getValue().length();
+            eldest.remove();
+        }
+
+        return fragment;
+    }
+
+    /**
+     * Return the number of cached fragments.
+     *
+     * @return Fragment count
+     */
+    public synchronized int size() {
+        return fragments.size();
+    }
+
+    /**
+     * Forget all fragments.
+     */
+    public synchronized void clear() {
+        fragments.clear();
+        chars = 0;
+    }
+
+    private void remove(String key) {
+        Fragment removed = fragments.remove(key);
+        if (removed != null) {
+            chars -= removed.length();
+        }
+    }
+
+    /**
+     * Rendered table and chart data with the hash of both.
+     */
+    public static class Fragment {
+        private final String html;
+        private final String json;
+        private final String eTag;
+        private final long expiresAt;
+
+        private Fragment(String html, String json, long expiresAt) {
+            this.html = html;
+            this.json = json;
+            this.eTag = hash(html, json);
+            this.expiresAt = expiresAt;
+        }
+
+        public String getHtml() {
+            return html;
+        }
+
+        public String getJson() {
+            return json;
+        }
+
+        /**
+         * @return Quoted hash of the content, ready for an ETag header
+         */
+        public String getETag() {
+            return eTag;
+        }
+
+        public long getExpiresAt() {
+            return expiresAt;
+        }
+
+        private long length() {
+            return (long) html.length() + json.length();
+        }
+
+        /**
+         * Hash the table and chart data into a strong ETag value.
+         */
+        private static String hash(String html, String json) {
+            try {
+                MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                digest.update(html.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+                digest.update(json.getBytes(StandardCharsets.UTF_8));
+
+                StringBuilder builder = new StringBuilder("\"");
+                //Half of the digest is plenty to tell versions of a page apart.
+                byte[] bytes = digest.digest();
+                for (int i = 0; i < 16; i++) {
+                    builder.append(Character.forDigit((bytes[i] >> 4) & 0xF, 16))
+                            .append(Character.forDigit(bytes[i] & 0xF, 16));
+                }
+                return builder.append('"').toString();
+            } catch (NoSuchAlgorithmException e) {
+                //Every JVM ships SHA-256.
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/**
+ * Copyright 2018 Peter Kinson
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ */
+
+package com.pkin.stocksearch.service.exceptions;
+
+import java.io.FileNotFoundException;
+
+/**
+ * Thrown when a symbol is rejected without going upstream, because it is not
+ * shaped like a ticker, is not in the listed universe, or upstream recently
+ * answered that it does not exist.
+ * <p>
+ * The cause is a FileNotFoundException, the same cause an unknown symbol from
+ * upstream has, so callers handle both the same way.
+ */
+public class InvalidSymbolException extends StockServiceException {
+
+    private final String symbol;
+
+    /**
+     * @param symbol Rejected symbol
+     * @param reason Why it was rejected
+     */
+    public InvalidSymbolException(String symbol, String reason) {
+        super("The symbol " + symbol + " was rejected: " + reason,
+                new FileNotFoundException("Unknown symbol " + symbol));
+        this.symbol = symbol;
+    }
+
+    /**
+     * @return The rejected symbol
+     */
+    public String getSymbol() {
+        return symbol;
+    }
+}
@@ -0,0 +1,66 @@
+/**
+ * Copyright 2018 Peter Kinson
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ */
+
+package com.pkin.stocksearch.service.provider;
+
+import yahoofinance.Stock;
+import yahoofinance.histquotes.Interval;
+
+import java.io.IOException;
+import java.util.Calendar;
+import java.util.Map;
+
+/**
+ * Source of stock quotes used by StockService.
+ * <p>
+ * Implementations are selected through ServiceFactory with the
+ * stocksearch.provider setting. Implementations must be thread-safe since
+ * one instance is shared by every request.
+ */
+public interface QuoteProvider {
+
+    /**
+     * Get a current quote without history.
+     *
+     * @param symbol Stock symbol
+     * @return Stock with its current quote, or null if the symbol is unknown
+     * @throws java.io.FileNotFoundException Thrown when the symbol is unknown
+     * @throws IOException                   Thrown when the quote cannot be retrieved
+     */
+    Stock getStock(String symbol) throws IOException;
+
+    /**
+     * Get current quotes for several symbols with one upstream call.
+     *
+     * @param symbols Stock symbols
+     * @return Stocks keyed by upper case symbol. Unknown symbols are left out.
+     * @throws IOException Thrown when the quotes cannot be retrieved
+     */
+    Map<String, Stock> getStocks(String[] symbols) throws IOException;
+
+    /**
+     * Get a Stock with historical quotes for a date range.
+     *
+     * @param symbol   Stock symbol
+     * @param from     Start date
+     * @param until    End date
+     * @param interval Interval of the historical quotes
+     * @return Stock with its history set, or null if the symbol is unknown
+     * @throws IOException Thrown when the history cannot be retrieved
+     */
+    Stock getHistory(String symbol, Calendar from, Calendar until, Interval interval) throws IOException;
+}
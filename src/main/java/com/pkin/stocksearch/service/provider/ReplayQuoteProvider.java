@@ -0,0 +1,389 @@
+/**
+ * Copyright 2018 Peter Kinson
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ */
+
+package com.pkin.stocksearch.service.provider;
+
+import com.opencsv.CSVReader;
+import yahoofinance.Stock;
+import yahoofinance.histquotes.HistoricalQuote;
+import yahoofinance.histquotes.Interval;
+import yahoofinance.quotes.stock.StockDividend;
+import yahoofinance.quotes.stock.StockQuote;
+import yahoofinance.quotes.stock.StockStats;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Offline QuoteProvider that serves recorded or synthetic quotes from local files.
+ * <p>
+ * Recorded history is read from CSV files in the Yahoo download format,
+ * "Date,Open,High,Low,Close,Adj Close,Volume" with yyyy-MM-dd dates. The file
+ * for an interval is named SYMBOL_INTERVAL.csv (e.g. GOOG_WEEKLY.csv) and
+ * SYMBOL.csv is used when there is no interval specific file. Quick quotes are
+ * derived from the most recent bars. Files are parsed once and kept in memory.
+ * <p>
+ * When synthetic mode is on, symbols without a file get a deterministic
+ * price series generated from the symbol, so the same request always returns
+ * the same data. Every call can be delayed by a fixed latency plus random
+ * jitter to imitate an upstream round trip.
+ */
+public class ReplayQuoteProvider implements QuoteProvider {
+
+    private static final String EXCHANGE = "REPLAY";
+    private static final int TRADING_DAYS_PER_YEAR = 252;
+
+    private final File directory;
+    private final boolean synthetic;
+    private final long latencyMillis;
+    private final long jitterMillis;
+    //Parsed recorded files keyed by file name
+    private final ConcurrentHashMap<String, List<HistoricalQuote>> recorded = new ConcurrentHashMap<>();
+
+    /**
+     * @param directory     Directory holding the recorded CSV files
+     * @param synthetic     Generate data for symbols without a recorded file
+     * @param latencyMillis Fixed delay added to every call
+     * @param jitterMillis  Maximum random delay added on top of the fixed delay
+     */
+    public ReplayQuoteProvider(File directory, boolean synthetic, long latencyMillis, long jitterMillis) {
+        this.directory = directory;
+        this.synthetic = synthetic;
+        this.latencyMillis = Math.max(0, latencyMillis);
+        this.jitterMillis = Math.max(0, jitterMillis);
+    }
+
+    @Override
+    public Stock getStock(String symbol) throws IOException {
+        simulateLatency();
+
+        return replayQuote(symbol);
+    }
+
+    @Override
+    public Map<String, Stock> getStocks(String[] symbols) throws IOException {
+        //One simulated round trip for the whole batch, same as the upstream multi-symbol call.
+        simulateLatency();
+
+        Map<String, Stock> stocks = new LinkedHashMap<>();
+        for (String symbol : symbols) {
+            try {
+                Stock stock = replayQuote(symbol);
+                stocks.put(stock.getSymbol(), stock);
+            } catch (FileNotFoundException e) {
+                //Unknown symbols are left out of the result.
+            }
+        }
+
+        return stocks;
+    }
+
+    /**
+     * Build a quick quote for a symbol from recorded or synthetic data.
+     */
+    private Stock replayQuote(String symbol) throws IOException {
+        String upperSymbol = symbol.trim().toUpperCase();
+        List<HistoricalQuote> daily = loadRecorded(upperSymbol, Interval.DAILY);
+
+        if (daily == null) {
+            if (!synthetic) {
+                throw new FileNotFoundException("No recorded quotes for " + upperSymbol + ".");
+            }
+            LocalDate today = LocalDate.now();
+            daily = generate(upperSymbol, today.minusYears(1), today, Interval.DAILY);
+        }
+
+        if (daily.isEmpty()) {
+            throw new FileNotFoundException("No recorded quotes for " + upperSymbol + ".");
+        }
+
+        return buildQuickQuote(upperSymbol, daily);
+    }
+
+    @Override
+    public Stock getHistory(String symbol, Calendar from, Calendar until, Interval interval) throws IOException {
+        simulateLatency();
+
+        String upperSymbol = symbol.trim().toUpperCase();
+        List<HistoricalQuote> history = loadRecorded(upperSymbol, interval);
+
+        if (history == null) {
+            if (!synthetic) {
+                throw new FileNotFoundException("No recorded quotes for " + upperSymbol + ".");
+            }
+            history = generate(upperSymbol, toLocalDate(from), toLocalDate(until), interval);
+        }
+
+        List<HistoricalQuote> range = new ArrayList<>();
+        for (HistoricalQuote quote : history) {
+            long date = quote.getDate().getTimeInMillis();
+            if (date >= from.getTimeInMillis() && date <= until.getTimeInMillis()) {
+                range.add(quote);
+            }
+        }
+
+        Stock stock = buildStock(upperSymbol);
+        stock.setHistory(range);
+
+        return stock;
+    }
+
+    /**
+     * Return the recorded history for a symbol, or null if there is no file for it.
+     */
+    private List<HistoricalQuote> loadRecorded(String symbol, Interval interval) throws IOException {
+        File file = new File(directory, symbol + "_" + interval + ".csv");
+
+        if (!file.isFile()) {
+            file = new File(directory, symbol + ".csv");
+        }
+        if (!file.isFile()) {
+            return null;
+        }
+
+        List<HistoricalQuote> history = recorded.get(file.getName());
+        if (history == null) {
+            history = parseCsv(symbol, file);
+            recorded.putIfAbsent(file.getName(), history);
+        }
+
+        return history;
+    }
+
+    /**
+     * Parse a Yahoo formatted CSV file into historical quotes sorted by date.
+     */
+    private static List<HistoricalQuote> parseCsv(String symbol, File file) throws IOException {
+        List<HistoricalQuote> history = new ArrayList<>();
+
+        try (CSVReader csvReader = new CSVReader(new FileReader(file))) {
+            String[] line;
+
+            while ((line = csvReader.readNext()) != null) {
+                if (line.length < 7) {
+                    continue;
+                }
+
+                LocalDate date;
+                try {
+                    date = LocalDate.parse(line[0].trim());
+                } catch (DateTimeParseException e) {
+                    //Header or malformed row.
+                    continue;
+                }
+
+                history.add(new HistoricalQuote(symbol, toCalendar(date),
+                        parseDecimal(line[1]), parseDecimal(line[3]), parseDecimal(line[2]),
+                        parseDecimal(line[4]), parseDecimal(line[5]), parseLong(line[6])));
+            }
+        }
+
+        history.sort(Comparator.comparing(quote -> quote.getDate().getTimeInMillis()));
+        return Collections.unmodifiableList(history);
+    }
+
+    /**
+     * Generate a deterministic price series for a symbol.
+     * Prices depend only on the symbol and the date, never on the requested range.
+     */
+    private static List<HistoricalQuote> generate(String symbol, LocalDate from, LocalDate until, Interval interval) {
+        List<HistoricalQuote> history = new ArrayList<>();
+        long seed = symbol.hashCode();
+        double base = 20 + Math.floorMod(seed, 480);
+
+        for (LocalDate date = alignToInterval(from, interval); !date.isAfter(until); date = nextDate(date, interval)) {
+            if (date.isBefore(from) || date.getDayOfWeek() == DayOfWeek.SATURDAY || date.getDayOfWeek() == DayOfWeek.SUNDAY) {
+                continue;
+            }
+
+            long day = date.toEpochDay();
+            double open = syntheticPrice(base, seed, day - 1);
+            double close = syntheticPrice(base, seed, day);
+            double high = Math.max(open, close) * (1 + noise(seed, day, 1) * 0.02);
+            double low = Math.min(open, close) * (1 - noise(seed, day, 2) * 0.02);
+            long volume = 500000 + (long) (noise(seed, day, 3) * 5000000);
+
+            history.add(new HistoricalQuote(symbol, toCalendar(date), scale(open), scale(low), scale(high),
+                    scale(close), scale(close), volume));
+        }
+
+        return history;
+    }
+
+    private static double syntheticPrice(double base, long seed, long day) {
+        double phase = Math.floorMod(seed, 360);
+        double trend = 0.00015 * (day - 10000);
+
+        return base * Math.exp(trend + 0.25 * Math.sin(day / 90.0 + phase)
+                + 0.08 * Math.sin(day / 13.0 + phase / 2) + 0.02 * (noise(seed, day, 0) - 0.5));
+    }
+
+    /**
+     * Deterministic value in [0, 1) for a seed, day and channel.
+     */
+    private static double noise(long seed, long day, int channel) {
+        long hash = seed * 0x9E3779B97F4A7C15L + day * 0xBF58476D1CE4E5B9L + channel * 0x94D049BB133111EBL;
+        hash ^= hash >>> 31;
+        hash *= 0xBF58476D1CE4E5B9L;
+        hash ^= hash >>> 29;
+
+        return (hash >>> 11) * 0x1.0p-53;
+    }
+
+    private static LocalDate alignToInterval(LocalDate date, Interval interval) {
+        switch (interval) {
+            case WEEKLY: {
+                return date.with(DayOfWeek.MONDAY);
+            }
+            case MONTHLY: {
+                return date.withDayOfMonth(1);
+            }
+            default: {
+                return date;
+            }
+        }
+    }
+
+    private static LocalDate nextDate(LocalDate date, Interval interval) {
+        switch (interval) {
+            case WEEKLY: {
+                return date.plusWeeks(1);
+            }
+            case MONTHLY: {
+                return date.plusMonths(1);
+            }
+            default: {
+                return date.plusDays(1);
+            }
+        }
+    }
+
+    /**
+     * Build a quick quote from the most recent daily bars.
+     */
+    private static Stock buildQuickQuote(String symbol, List<HistoricalQuote> daily) {
+        HistoricalQuote last = daily.get(daily.size() - 1);
+        HistoricalQuote previous = daily.size() > 1 ? daily.get(daily.size() - 2) : last;
+        List<HistoricalQuote> year = daily.subList(Math.max(0, daily.size() - TRADING_DAYS_PER_YEAR), daily.size());
+
+        BigDecimal yearLow = null;
+        BigDecimal yearHigh = null;
+        long totalVolume = 0;
+
+        for (HistoricalQuote quote : year) {
+            if (quote.getLow() != null && (yearLow == null || quote.getLow().compareTo(yearLow) < 0)) {
+                yearLow = quote.getLow();
+            }
+            if (quote.getHigh() != null && (yearHigh == null || quote.getHigh().compareTo(yearHigh) > 0)) {
+                yearHigh = quote.getHigh();
+            }
+            totalVolume += quote.getVolume() == null ? 0 : quote.getVolume();
+        }
+
+        StockQuote stockQuote = new StockQuote(symbol);
+        stockQuote.setPrice(last.getClose());
+        stockQuote.setOpen(last.getOpen());
+        stockQuote.setPreviousClose(previous.getClose());
+        stockQuote.setDayLow(last.getLow());
+        stockQuote.setDayHigh(last.getHigh());
+        stockQuote.setYearLow(yearLow);
+        stockQuote.setYearHigh(yearHigh);
+        stockQuote.setAvgVolume(totalVolume / year.size());
+
+        Stock stock = buildStock(symbol);
+        stock.setQuote(stockQuote);
+
+        return stock;
+    }
+
+    private static Stock buildStock(String symbol) {
+        StockStats stats = new StockStats(symbol);
+        stats.setMarketCap(BigDecimal.ZERO);
+        stats.setSharesOutstanding(0L);
+        stats.setEps(BigDecimal.ZERO);
+
+        Stock stock = new Stock(symbol);
+        stock.setName(symbol);
+        stock.setStockExchange(EXCHANGE);
+        stock.setCurrency("USD");
+        stock.setStats(stats);
+        stock.setDividend(new StockDividend(symbol));
+
+        return stock;
+    }
+
+    private void simulateLatency() throws IOException {
+        long delay = latencyMillis + (jitterMillis > 0 ? ThreadLocalRandom.current().nextLong(jitterMillis + 1) : 0);
+
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while simulating upstream latency.", e);
+            }
+        }
+    }
+
+    private static BigDecimal parseDecimal(String value) {
+        try {
+            return new BigDecimal(value.trim());
+        } catch (NumberFormatException e) {
+            //Yahoo writes "null" for missing values.
+            return null;
+        }
+    }
+
+    private static Long parseLong(String value) {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static BigDecimal scale(double value) {
+        return BigDecimal.valueOf(value).setScale(6, RoundingMode.HALF_UP);
+    }
+
+    private static LocalDate toLocalDate(Calendar calendar) {
+        return calendar.getTime().toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+    }
+
+    private static Calendar toCalendar(LocalDate date) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(date.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        return calendar;
+    }
+
+    @Override
+    public String toString() {
+        return "ReplayQuoteProvider{directory=" + directory + ", synthetic=" + synthetic +
+                ", latencyMillis=" + latencyMillis + ", jitterMillis=" + jitterMillis + "}";
+    }
+}
@@ -0,0 +1,52 @@
+/**
+ * Copyright 2018 Peter Kinson
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ */
+
+package com.pkin.stocksearch.service.provider;
+
+import yahoofinance.Stock;
+import yahoofinance.YahooFinance;
+import yahoofinance.histquotes.Interval;
+
+import java.io.IOException;
+import java.util.Calendar;
+import java.util.Map;
+
+/**
+ * QuoteProvider backed by the YahooFinance-API.
+ */
+public class YahooQuoteProvider implements QuoteProvider {
+
+    @Override
+    public Stock getStock(String symbol) throws IOException {
+        return YahooFinance.get(symbol);
+    }
+
+    @Override
+    public Map<String, Stock> getStocks(String[] symbols) throws IOException {
+        return YahooFinance.get(symbols);
+    }
+
+    @Override
+    public Stock getHistory(String symbol, Calendar from, Calendar until, Interval interval) throws IOException {
+        return YahooFinance.get(symbol, from, until, interval);
+    }
+
+    @Override
+    public String toString() {
+        return "YahooQuoteProvider{}";
+    }
+}
@@ -0,0 +1,667 @@
+/**
+ * Copyright 2018 Peter Kinson
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ */
+
+package com.pkin.stocksearch.service.searchlog;
+
+import com.pkin.stocksearch.model.SearchDAO;
+import com.pkin.stocksearch.utilities.ExecutorUtils;
+import com.pkin.stocksearch.utilities.database.DatabaseUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Records searches in an append-only journal on local disk and ships them to the
+ * database in the background.
+ * <p>
+ * The journal is a directory of numbered segment files. A request only appends one
+ * record to the current segment, which rolls over to a new one at segmentBytes. The
+ * segment is fsync'd every syncMillis for all the records appended since, so a crash
+ * of the machine loses at most that much and a crash of the process loses nothing.
+ * <p>
+ * A shipper reads records from a checkpoint, hands them to the sink in batches and
+ * moves the checkpoint past each batch once the sink has written it. A batch that
+ * fails is tried again on the next pass, so the database can be slow or down without
+ * losing searches. A batch the sink rejects because of its data would fail the same
+ * way forever, so it is shipped again one search at a time and the searches still
+ * rejected are counted and skipped. Segments behind the checkpoint are deleted.
+ * Delivery is at least once: a crash between a batch being written and the checkpoint
+ * being saved ships that batch again.
+ * <p>
+ * Every record is its payload length and CRC32 followed by the payload. On open, a
+ * record torn by a crash is cut off the end of the last segment and appends start a
+ * new segment.
+ * <p>
+ * The first dropped search is logged as a warning and the counters are logged on stop.
+ */
+public class SearchJournal implements SearchLog {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SearchJournal.class);
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String CHECKPOINT = "checkpoint";
+    private static final String LOCK = "lock";
+    private static final int HEADER_BYTES = 8;
+    private static final int MAX_PAYLOAD_BYTES = 64 * 1024;
+
+    private final Path directory;
+    private final BatchSink sink;
+    private final long segmentBytes;
+    private final long maxBytes;
+    private final int batchSize;
+    private final AtomicLong journalBytes = new AtomicLong();
+    private final AtomicLong appended = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong shipped = new AtomicLong();
+    private final AtomicLong shipFailures = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final FileChannel lock;
+    private ScheduledExecutorService scheduler;
+
+    //Current segment, guarded by this.
+    private FileChannel active;
+    private long activeId;
+    private long activePosition;
+    private boolean dirty;
+    private boolean closed;
+
+    //Next record to ship, guarded by shipLock.
+    private final Object shipLock = new Object();
+    private long checkpointSegment;
+    private long checkpointOffset;
+
+    /**
+     * Open the journal in directory, creating it if needed, and recover from a crash.
+     *
+     * @param directory    Directory for segments and the checkpoint
+     * @param sink         Destination for shipped batches
+     * @param segmentBytes Size at which a new segment is started
+     * @param maxBytes     Largest the journal may grow while the sink is behind, searches beyond are dropped
+     * @param batchSize    Maximum number of searches shipped at once
+     * @throws IOException Thrown when the directory cannot be used or another journal has it open
+     */
+    public SearchJournal(Path directory, BatchSink sink, long segmentBytes, long maxBytes, int batchSize) throws IOException {
+        this.directory = directory;
+        this.sink = sink;
+        this.segmentBytes = Math.max(HEADER_BYTES + MAX_PAYLOAD_BYTES, segmentBytes);
+        //The current segment is only deleted after it rolls, so room for two keeps a full journal from sticking.
+        this.maxBytes = Math.max(2 * this.segmentBytes, maxBytes);
+        this.batchSize = Math.max(1, batchSize);
+
+        Files.createDirectories(directory);
+
+        //Two journals appending to and shipping the same segments would duplicate searches.
+        lock = FileChannel.open(directory.resolve(LOCK), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock held;
+        try {
+            held = lock.tryLock();
+        } catch (OverlappingFileLockException e) {
+            held = null;
+        }
+        if (held == null) {
+            lock.close();
+            throw new IOException("Journal " + directory + " is already open");
+        }
+
+        try {
+            readCheckpoint();
+
+            long lastId = checkpointSegment;
+            TreeMap<Long, Path> segments = listSegments();
+            for (Map.Entry<Long, Path> segment : segments.entrySet()) {
+                if (segment.getKey() < checkpointSegment) {
+                    Files.deleteIfExists(segment.getValue());
+                } else {
+                    journalBytes.addAndGet(Files.size(segment.getValue()));
+                    lastId = segment.getKey();
+                }
+            }
+
+            if (!segments.isEmpty() && segments.lastKey() >= checkpointSegment) {
+                truncateTornTail(segments.lastEntry().getValue());
+            }
+
+            //Never append to a segment that may hold shipped or torn records.
+            activeId = lastId + 1;
+            active = FileChannel.open(segmentPath(activeId), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            activePosition = 0;
+        } catch (IOException | RuntimeException e) {
+            lock.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Start the background sync and shipper. Does nothing if already started.
+     *
+     * @param syncMillis Time between fsyncs of the current segment
+     * @param shipMillis Time between shipping passes, and before retrying a failed batch
+     */
+    public synchronized void start(long syncMillis, long shipMillis) {
+        if (scheduler == null && !closed) {
+            //Two threads, so a slow database never delays an fsync.
+            scheduler = Executors.newScheduledThreadPool(2, ExecutorUtils.newThreadFactory("search-journal"));
+            scheduler.scheduleWithFixedDelay(this::sync, syncMillis, syncMillis, TimeUnit.MILLISECONDS);
+            scheduler.scheduleWithFixedDelay(this::shipAvailable, shipMillis, shipMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Append a search to the journal. Never waits on the database or for an fsync.
+     *
+     * @param search Search to record
+     * @return False if the search was dropped because the journal is full, closed or not writable
+     */
+    @Override
+    public boolean offer(SearchDAO search) {
+        byte[] record;
+        try {
+            record = encode(search);
+        } catch (IOException e) {
+            drop();
+            return false;
+        }
+
+        synchronized (this) {
+            if (closed || journalBytes.get() + record.length > maxBytes) {
+                drop();
+                return false;
+            }
+
+            try {
+                if (activePosition > 0 && activePosition + record.length > segmentBytes) {
+                    roll();
+                }
+
+                //A failed write leaves activePosition alone, so the next record overwrites any partial one.
+                ByteBuffer buffer = ByteBuffer.wrap(record);
+                while (buffer.hasRemaining()) {
+                    active.write(buffer, activePosition + buffer.position());
+                }
+
+                activePosition += record.length;
+                dirty = true;
+                journalBytes.addAndGet(record.length);
+                appended.incrementAndGet();
+                return true;
+            } catch (IOException e) {
+                drop();
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Stop the background work, fsync and close the current segment, then ship what
+     * the sink accepts within drainMillis. Whatever is left ships after the next start.
+     *
+     * @param drainMillis Longest to spend shipping
+     */
+    @Override
+    public void stop(long drainMillis) {
+        long deadline = System.currentTimeMillis() + drainMillis;
+
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (scheduler != null) {
+                scheduler.shutdownNow();
+            }
+            try {
+                active.force(false);
+                active.close();
+            } catch (IOException e) {
+                //The records are still in the file, only their fsync is in doubt.
+            }
+        }
+
+        try {
+            while (System.currentTimeMillis() < deadline && ship() > 0) {
+                //Keep shipping until caught up.
+            }
+        } catch (Exception e) {
+            //Counted by ship, shipped after the next start.
+        }
+
+        try {
+            lock.close();
+        } catch (IOException e) {
+            //Released when the process exits.
+        }
+
+        LOG.info("Stopped {}", this);
+    }
+
+    /**
+     * Fsync the current segment if anything was appended since the last fsync.
+     * Appends carry on while the fsync runs.
+     */
+    public void sync() {
+        FileChannel channel;
+
+        synchronized (this) {
+            if (!dirty || closed) {
+                return;
+            }
+            dirty = false;
+            channel = active;
+        }
+
+        try {
+            channel.force(false);
+        } catch (IOException e) {
+            //Rolled or closed meanwhile, both fsync the segment themselves. Otherwise try again next time.
+            synchronized (this) {
+                dirty = channel == active;
+            }
+        }
+    }
+
+    /**
+     * Ship one batch from the checkpoint and move the checkpoint past it.
+     *
+     * @return Number of searches shipped, 0 when caught up
+     * @throws Exception Thrown when the sink failed other than by rejecting searches, the
+     *                   checkpoint is left where it was
+     */
+    public int ship() throws Exception {
+        synchronized (shipLock) {
+            long lastId;
+            long lastEnd;
+            synchronized (this) {
+                lastId = activeId;
+                lastEnd = activePosition;
+            }
+
+            List<SearchDAO> batch = new ArrayList<>();
+            long segment = checkpointSegment;
+            long offset = checkpointOffset;
+
+            for (Map.Entry<Long, Path> entry : listSegments().tailMap(checkpointSegment).entrySet()) {
+                if (entry.getKey() > lastId || batch.size() >= batchSize) {
+                    break;
+                }
+                if (entry.getKey() != segment) {
+                    segment = entry.getKey();
+                    offset = 0;
+                }
+
+                //Only whole records below the current segment's append position are read from it.
+                long limit = entry.getKey() == lastId ? lastEnd : Files.size(entry.getValue());
+                offset = readRecords(entry.getValue(), offset, limit, batch);
+
+                if (entry.getKey() == lastId || batch.size() >= batchSize) {
+                    break;
+                }
+                //Past the end of a finished segment, start the next one.
+                segment = entry.getKey() + 1;
+                offset = 0;
+            }
+
+            if (!batch.isEmpty()) {
+                try {
+                    sink.write(batch);
+                    shipped.addAndGet(batch.size());
+                } catch (Exception e) {
+                    if (!DatabaseUtils.isDataError(e)) {
+                        shipFailures.incrementAndGet();
+                        throw e;
+                    }
+                    shipEach(batch);
+                }
+            }
+
+            if (segment != checkpointSegment || offset != checkpointOffset) {
+                writeCheckpoint(segment, offset);
+                deleteShippedSegments(Math.min(segment, lastId));
+            }
+
+            return batch.size();
+        }
+    }
+
+    /**
+     * @return Number of searches appended to the journal
+     */
+    public long getAppended() {
+        return appended.get();
+    }
+
+    /**
+     * @return Number of searches dropped because the journal was full, closed or not writable
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * @return Number of searches the sink wrote
+     */
+    public long getShipped() {
+        return shipped.get();
+    }
+
+    /**
+     * @return Number of batches the sink failed to write
+     */
+    public long getShipFailures() {
+        return shipFailures.get();
+    }
+
+    /**
+     * @return Number of searches skipped because the sink rejected their data
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * @return Bytes of segments on disk
+     */
+    public long getJournalBytes() {
+        return journalBytes.get();
+    }
+
+    private void shipAvailable() {
+        try {
+            while (ship() >= batchSize) {
+                //A full batch means more may be waiting.
+            }
+        } catch (Exception e) {
+            //Counted by ship, tried again on the next pass.
+        }
+    }
+
+    private void shipEach(List<SearchDAO> batch) throws Exception {
+        for (SearchDAO search : batch) {
+            try {
+                sink.write(Collections.singletonList(search));
+                shipped.incrementAndGet();
+            } catch (Exception e) {
+                if (!DatabaseUtils.isDataError(e)) {
+                    //The searches already shipped go again with the batch, as after a crash.
+                    shipFailures.incrementAndGet();
+                    throw e;
+                }
+                rejected.incrementAndGet();
+            }
+        }
+    }
+
+    private void drop() {
+        if (dropped.incrementAndGet() == 1) {
+            LOG.warn("Search journal in {} is dropping searches. Further drops are only counted.", directory);
+        }
+    }
+
+    private void roll() throws IOException {
+        FileChannel next = FileChannel.open(segmentPath(activeId + 1), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        active.force(false);
+        active.close();
+        active = next;
+        activeId++;
+        activePosition = 0;
+        dirty = false;
+    }
+
+    /**
+     * Read records from offset up to limit into batch, stopping when it is full or at
+     * the first incomplete or corrupt record.
+     *
+     * @return Offset just past the last record read
+     */
+    private long readRecords(Path segment, long offset, long limit, List<SearchDAO> batch) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+
+            while (batch.size() < batchSize && offset + HEADER_BYTES <= limit) {
+                header.clear();
+                readFully(channel, header, offset);
+                int length = header.getInt(0);
+                int checksum = header.getInt(4);
+
+                if (length <= 0 || length > MAX_PAYLOAD_BYTES || offset + HEADER_BYTES + length > limit) {
+                    break;
+                }
+
+                ByteBuffer payload = ByteBuffer.allocate(length);
+                readFully(channel, payload, offset + HEADER_BYTES);
+                if (checksum(payload.array()) != checksum) {
+                    break;
+                }
+
+                batch.add(decode(payload.array()));
+                offset += HEADER_BYTES + length;
+            }
+        }
+
+        return offset;
+    }
+
+    private void truncateTornTail(Path segment) throws IOException {
+        long size = Files.size(segment);
+        List<SearchDAO> records = new ArrayList<>();
+        long offset = 0;
+        long end;
+
+        //Scan in batches so a large segment is not held in memory.
+        while ((end = readRecords(segment, offset, size, records)) > offset) {
+            offset = end;
+            records.clear();
+        }
+
+        if (offset < size) {
+            try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+                channel.truncate(offset);
+                channel.force(false);
+            }
+            journalBytes.addAndGet(offset - size);
+        }
+    }
+
+    private void deleteShippedSegments(long below) throws IOException {
+        for (Map.Entry<Long, Path> entry : listSegments().headMap(below).entrySet()) {
+            long size = Files.size(entry.getValue());
+            if (Files.deleteIfExists(entry.getValue())) {
+                journalBytes.addAndGet(-size);
+            }
+        }
+    }
+
+    private void readCheckpoint() throws IOException {
+        Path file = directory.resolve(CHECKPOINT);
+
+        if (Files.exists(file)) {
+            String[] parts = new String(Files.readAllBytes(file), StandardCharsets.US_ASCII).trim().split(" ");
+            try {
+                checkpointSegment = Long.parseLong(parts[0]);
+                checkpointOffset = Long.parseLong(parts[1]);
+            } catch (RuntimeException e) {
+                throw new IOException("Unreadable journal checkpoint " + file, e);
+            }
+        }
+    }
+
+    private void writeCheckpoint(long segment, long offset) throws IOException {
+        Path temp = directory.resolve(CHECKPOINT + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap((segment + " " + offset + "\n").getBytes(StandardCharsets.US_ASCII));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+
+        //Readers see either the old checkpoint or the new one, never a partial file.
+        Files.move(temp, directory.resolve(CHECKPOINT), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        checkpointSegment = segment;
+        checkpointOffset = offset;
+    }
+
+    private TreeMap<Long, Path> listSegments() throws IOException {
+        TreeMap<Long, Path> segments = new TreeMap<>();
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                try {
+                    segments.put(Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                            name.length() - SEGMENT_SUFFIX.length())), path);
+                } catch (NumberFormatException e) {
+                    //Not one of ours.
+                }
+            }
+        }
+
+        return segments;
+    }
+
+    private Path segmentPath(long id) {
+        return directory.resolve(String.format("%s%016d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of journal segment");
+            }
+        }
+    }
+
+    private static int checksum(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        return (int) crc.getValue();
+    }
+
+    private static byte[] encode(SearchDAO search) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        writeInteger(out, search.getTypeOfSearch());
+        writeInteger(out, search.getUserId());
+        writeString(out, search.getStockSymbol());
+        writeString(out, search.getFamily());
+        writeString(out, search.getFamilyVersion());
+        writeString(out, search.getOs());
+        writeString(out, search.getOsVersion());
+        writeString(out, search.getDevice());
+        out.writeBoolean(search.getTimeStamp() != null);
+        if (search.getTimeStamp() != null) {
+            out.writeLong(search.getTimeStamp().getTime());
+            out.writeInt(search.getTimeStamp().getNanos());
+        }
+        out.flush();
+
+        byte[] payload = bytes.toByteArray();
+        if (payload.length > MAX_PAYLOAD_BYTES) {
+            throw new IOException("Search record too large");
+        }
+
+        return ByteBuffer.allocate(HEADER_BYTES + payload.length)
+                .putInt(payload.length)
+                .putInt(checksum(payload))
+                .put(payload)
+                .array();
+    }
+
+    private static SearchDAO decode(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        SearchDAO search = new SearchDAO();
+
+        search.setTypeOfSearch(readInteger(in));
+        search.setUserId(readInteger(in));
+        search.setStockSymbol(readString(in));
+        search.setFamily(readString(in));
+        search.setFamilyVersion(readString(in));
+        search.setOs(readString(in));
+        search.setOsVersion(readString(in));
+        search.setDevice(readString(in));
+        if (in.readBoolean()) {
+            Timestamp timeStamp = new Timestamp(in.readLong());
+            timeStamp.setNanos(in.readInt());
+            search.setTimeStamp(timeStamp);
+        }
+
+        return search;
+    }
+
+    private static void writeInteger(DataOutputStream out, Integer value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeInt(value);
+        }
+    }
+
+    private static Integer readInteger(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readInt() : null;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    @Override
+    public String toString() {
+        return "SearchJournal{" +
+                "directory=" + directory +
+                ", journalBytes=" + journalBytes.get() +
+                ", appended=" + appended.get() +
+                ", dropped=" + dropped.get() +
+                ", shipped=" + shipped.get() +
+                ", shipFailures=" + shipFailures.get() +
+                ", rejected=" + rejected.get() +
+                '}';
+    }
+}
@@ -0,0 +1,58 @@
+/**
+ * Copyright 2018 Peter Kinson
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ */
+
+package com.pkin.stocksearch.service.searchlog;
+
+import com.pkin.stocksearch.model.SearchDAO;
+
+import java.util.List;
+
+/**
+ * Records searches for the top searches list and analytics without holding up the request.
+ */
+public interface SearchLog {
+
+    /**
+     * Destination for batches of searches.
+     */
+    @FunctionalInterface
+    interface BatchSink {
+
+        /**
+         * Write the batch.
+         *
+         * @param batch Searches to write, never empty
+         * @throws Exception Thrown when the batch could not be written
+         */
+        void write(List<SearchDAO> batch) throws Exception;
+    }
+
+    /**
+     * Record a search. Never blocks on the database.
+     *
+     * @param search Search to record
+     * @return False if the search was dropped
+     */
+    boolean offer(SearchDAO search);
+
+    /**
+     * Stop background work, writing what is pending for at most drainMillis.
+     *
+     * @param drainMillis Longest to wait for pending searches
+     */
+    void stop(long drainMillis);
+}
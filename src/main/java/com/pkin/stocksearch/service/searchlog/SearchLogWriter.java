@@ -0,0 +1,274 @@
+/**
+ * Copyright 2018 Peter Kinson
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ */
+
+package com.pkin.stocksearch.service.searchlog;
+
+import com.pkin.stocksearch.model.SearchDAO;
+import com.pkin.stocksearch.utilities.ExecutorUtils;
+import com.pkin.stocksearch.utilities.database.DatabaseUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes searches to the database in batches on background threads.
+ * <p>
+ * Request threads only offer a search to a bounded queue and return. Flusher threads
+ * take up to batchSize searches at a time and hand them to the sink in one call. A
+ * batch that is not full is written once its oldest search has waited flushMillis, so
+ * a quiet site still records searches promptly. When the queue is full the search is
+ * dropped and counted rather than holding up the request. When the sink rejects a
+ * batch because of its data, the searches are written again one at a time so only the
+ * bad ones are lost, and those are counted as rejected. A batch that fails for any
+ * other reason is counted and not retried.
+ * <p>
+ * The first dropped search is logged as a warning and the counters are logged on stop.
+ */
+public class SearchLogWriter implements SearchLog {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SearchLogWriter.class);
+    //Longest a flusher waits on the queue before checking whether it is stopping.
+    private static final long WAKE_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private final BlockingQueue<SearchDAO> queue;
+    private final BatchSink sink;
+    private final int batchSize;
+    private final long flushNanos;
+    private final int threads;
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private ExecutorService flushers;
+    private volatile boolean running;
+
+    /**
+     * @param sink        Destination for batches
+     * @param queueSize   Maximum number of searches waiting to be written
+     * @param batchSize   Maximum number of searches written at once
+     * @param flushMillis Longest a search waits for its batch to fill
+     * @param threads     Number of flusher threads
+     */
+    public SearchLogWriter(BatchSink sink, int queueSize, int batchSize, long flushMillis, int threads) {
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueSize));
+        this.sink = sink;
+        this.batchSize = Math.max(1, batchSize);
+        this.flushNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, flushMillis));
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Queue a search to be written. Never blocks.
+     *
+     * @param search Search to write
+     * @return False if the queue was full and the search was dropped
+     */
+    @Override
+    public boolean offer(SearchDAO search) {
+        if (queue.offer(search)) {
+            accepted.incrementAndGet();
+            return true;
+        }
+
+        if (dropped.incrementAndGet() == 1) {
+            LOG.warn("Search log queue is full, searches are being dropped. Further drops are only counted.");
+        }
+        return false;
+    }
+
+    /**
+     * Start the flusher threads. Does nothing if already started.
+     */
+    public synchronized void start() {
+        if (flushers == null) {
+            running = true;
+            flushers = Executors.newFixedThreadPool(threads, ExecutorUtils.newThreadFactory("search-log"));
+            for (int i = 0; i < threads; i++) {
+                flushers.execute(this::flushLoop);
+            }
+        }
+    }
+
+    /**
+     * Stop the flusher threads once the queue has been written, waiting at most
+     * drainMillis. Searches still queued after that are left unwritten.
+     *
+     * @param drainMillis Longest to wait for the queue to drain
+     */
+    @Override
+    public synchronized void stop(long drainMillis) {
+        if (flushers != null) {
+            running = false;
+            flushers.shutdown();
+            try {
+                if (!flushers.awaitTermination(drainMillis, TimeUnit.MILLISECONDS)) {
+                    flushers.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                flushers.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+            flushers = null;
+            LOG.info("Stopped {}", this);
+        }
+    }
+
+    /**
+     * Write every queued search on the calling thread.
+     */
+    public void flush() {
+        List<SearchDAO> batch = new ArrayList<>(batchSize);
+
+        while (queue.drainTo(batch, batchSize) > 0) {
+            write(batch);
+        }
+    }
+
+    /**
+     * @return Number of searches waiting to be written
+     */
+    public int getQueued() {
+        return queue.size();
+    }
+
+    /**
+     * @return Number of searches accepted into the queue
+     */
+    public long getAccepted() {
+        return accepted.get();
+    }
+
+    /**
+     * @return Number of searches dropped because the queue was full
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * @return Number of searches the sink wrote
+     */
+    public long getWritten() {
+        return written.get();
+    }
+
+    /**
+     * @return Number of searches in batches the sink failed to write
+     */
+    public long getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * @return Number of searches the sink rejected because of their data
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    private void flushLoop() {
+        List<SearchDAO> batch = new ArrayList<>(batchSize);
+
+        try {
+            while (running || !queue.isEmpty()) {
+                //Once stopping, another flusher may take the last search, so do not wait for more.
+                SearchDAO first = running ? queue.poll(Math.min(flushNanos, WAKE_NANOS), TimeUnit.NANOSECONDS) : queue.poll();
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                //Fill the batch until it is full or its oldest search has waited long enough.
+                long deadline = System.nanoTime() + flushNanos;
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0 || !running) {
+                        break;
+                    }
+
+                    SearchDAO next = queue.poll(Math.min(remaining, WAKE_NANOS), TimeUnit.NANOSECONDS);
+                    if (next != null) {
+                        batch.add(next);
+                    }
+                }
+
+                write(batch);
+            }
+        } catch (InterruptedException e) {
+            //Forced shutdown, keep what was already taken from the queue.
+            write(batch);
+        }
+    }
+
+    private void write(List<SearchDAO> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        try {
+            sink.write(batch);
+            written.addAndGet(batch.size());
+        } catch (Exception e) {
+            if (DatabaseUtils.isDataError(e)) {
+                writeEach(batch);
+            } else {
+                failed.addAndGet(batch.size());
+            }
+        } finally {
+            batch.clear();
+        }
+    }
+
+    private void writeEach(List<SearchDAO> batch) {
+        for (SearchDAO search : batch) {
+            try {
+                sink.write(Collections.singletonList(search));
+                written.incrementAndGet();
+            } catch (Exception e) {
+                if (DatabaseUtils.isDataError(e)) {
+                    rejected.incrementAndGet();
+                } else {
+                    failed.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SearchLogWriter{" +
+                "queued=" + getQueued() +
+                ", accepted=" + accepted.get() +
+                ", dropped=" + dropped.get() +
+                ", written=" + written.get() +
+                ", failed=" + failed.get() +
+                ", rejected=" + rejected.get() +
+                '}';
+    }
+}
@@ -0,0 +1,293 @@
+/**
+ * Copyright 2018 Peter Kinson
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ */
+
+
+package com.pkin.stocksearch.service.stream;
+
+import com.pkin.stocksearch.service.exceptions.StockServiceException;
+import com.pkin.stocksearch.utilities.ExecutorUtils;
+import com.pkin.stocksearch.utilities.MarketHours;
+import yahoofinance.Stock;
+
+import java.math.BigDecimal;
+import java.time.ZonedDateTime;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fans live quick quotes out to streaming clients.
+ * <p>
+ * There is one polling loop per subscribed symbol, however many clients watch it.
+ * Each loop polls upstream, pushes the quote to every subscriber when it changed and
+ * sends a keep alive otherwise, so disconnected clients are noticed and dropped. The
+ * loop stops when the last subscriber leaves.
+ * <p>
+ * The poll interval adapts: while the US market is open it shortens as more clients
+ * watch a symbol, down to minMillis. While the market is closed prices barely move
+ * and closedMillis is used.
+ */
+public class QuoteStreamHub {
+
+    private final QuoteSource source;
+    private final long openMillis;
+    private final long minMillis;
+    private final long closedMillis;
+    private final int threads;
+    private final Map<String, Poller> pollers = new ConcurrentHashMap<>();
+    private ScheduledThreadPoolExecutor scheduler;
+
+    /**
+     * Client receiving quotes for one symbol.
+     */
+    public interface Subscriber {
+
+        /**
+         * Deliver a new quote.
+         *
+         * @param stock Latest quote
+         * @return False if the client is gone and should be dropped
+         */
+        boolean onQuote(Stock stock);
+
+        /**
+         * Deliver a keep alive when the quote did not change.
+         *
+         * @return False if the client is gone and should be dropped
+         */
+        boolean onKeepAlive();
+    }
+
+    /**
+     * Upstream source polled for quotes.
+     */
+    public interface QuoteSource {
+
+        /**
+         * Fetch the current quote for a symbol.
+         *
+         * @param symbol Stock symbol
+         * @return Current quote, or null if the symbol is unknown
+         * @throws StockServiceException Thrown when upstream fails
+         */
+        Stock poll(String symbol) throws StockServiceException;
+    }
+
+    /**
+     * @param source       Upstream source polled for quotes
+     * @param openMillis   Poll interval for a single subscriber while the market is open
+     * @param minMillis    Shortest poll interval however many subscribers there are
+     * @param closedMillis Poll interval while the market is closed
+     * @param threads      Threads shared by all polling loops
+     */
+    public QuoteStreamHub(QuoteSource source, long openMillis, long minMillis, long closedMillis, int threads) {
+        this.source = source;
+        this.openMillis = openMillis;
+        this.minMillis = minMillis;
+        this.closedMillis = closedMillis;
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Subscribe a client to a symbol, starting its polling loop if needed. The last
+     * known quote is sent straight away.
+     *
+     * @param symbol     Stock symbol
+     * @param subscriber Client to receive quotes
+     */
+    public void subscribe(String symbol, Subscriber subscriber) {
+        String key = symbol.trim().toUpperCase();
+        Poller poller;
+        boolean started = false;
+
+        synchronized (pollers) {
+            poller = pollers.get(key);
+            if (poller == null) {
+                poller = new Poller(key);
+                pollers.put(key, poller);
+                started = true;
+            }
+            poller.subscribers.add(subscriber);
+        }
+
+        Stock last = poller.lastStock;
+        if (last != null && !subscriber.onQuote(last)) {
+            unsubscribe(key, subscriber);
+            return;
+        }
+
+        if (started) {
+            poller.schedule(0);
+        }
+    }
+
+    /**
+     * Remove a client. The polling loop of the symbol stops with its last subscriber.
+     *
+     * @param symbol     Stock symbol
+     * @param subscriber Client to remove
+     */
+    public void unsubscribe(String symbol, Subscriber subscriber) {
+        String key = symbol.trim().toUpperCase();
+
+        synchronized (pollers) {
+            Poller poller = pollers.get(key);
+
+            if (poller != null && poller.subscribers.remove(subscriber) && poller.subscribers.isEmpty()) {
+                pollers.remove(key);
+                poller.stop();
+            }
+        }
+    }
+
+    /**
+     * Return the number of symbols with a running polling loop.
+     *
+     * @return Polled symbol count
+     */
+    public int getPolledSymbolCount() {
+        return pollers.size();
+    }
+
+    /**
+     * Stop every polling loop.
+     */
+    public synchronized void shutdown() {
+        synchronized (pollers) {
+            for (Poller poller : pollers.values()) {
+                poller.stop();
+            }
+            pollers.clear();
+        }
+
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Return how long to wait before the next poll.
+     *
+     * @param subscribers Number of clients watching the symbol
+     * @param now         Current time
+     * @return Delay in millis
+     */
+    long nextDelay(int subscribers, ZonedDateTime now) {
+        if (!isMarketOpen(now)) {
+            return closedMillis;
+        }
+
+        //Halve the interval each time the audience doubles.
+        int doublings = 31 - Integer.numberOfLeadingZeros(Math.max(1, subscribers));
+        return Math.max(minMillis, openMillis >> Math.min(doublings, 30));
+    }
+
+    /**
+     * Check whether the US market is in its regular session. Holidays are not known here.
+     *
+     * @param now Current time
+     * @return True between 9:30 and 16:00 New York time on weekdays
+     */
+    static boolean isMarketOpen(ZonedDateTime now) {
+        return MarketHours.isOpen(now);
+    }
+
+    private synchronized ScheduledThreadPoolExecutor getScheduler() {
+        if (scheduler == null) {
+            scheduler = new ScheduledThreadPoolExecutor(threads, ExecutorUtils.newThreadFactory("quote-stream"));
+            scheduler.setRemoveOnCancelPolicy(true);
+        }
+        return scheduler;
+    }
+
+    /**
+     * Polling loop of one symbol.
+     */
+    private class Poller {
+
+        private final String symbol;
+        private final Set<Subscriber> subscribers = new CopyOnWriteArraySet<>();
+        private volatile Stock lastStock;
+        private volatile boolean stopped = false;
+        private ScheduledFuture<?> next;
+
+        private Poller(String symbol) {
+            this.symbol = symbol;
+        }
+
+        private synchronized void schedule(long delayMillis) {
+            if (!stopped) {
+                next = getScheduler().schedule(this::poll, delayMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private synchronized void stop() {
+            stopped = true;
+            if (next != null) {
+                next.cancel(false);
+            }
+        }
+
+        private void poll() {
+            Stock stock;
+
+            try {
+                stock = source.poll(symbol);
+            } catch (StockServiceException | RuntimeException e) {
+                //Keep the clients and try again on the next poll.
+                stock = null;
+            }
+
+            boolean changed = stock != null && (lastStock == null || !sameQuote(lastStock, stock));
+            if (changed) {
+                lastStock = stock;
+            }
+
+            for (Subscriber subscriber : subscribers) {
+                boolean alive = changed ? subscriber.onQuote(stock) : subscriber.onKeepAlive();
+
+                if (!alive) {
+                    unsubscribe(symbol, subscriber);
+                }
+            }
+
+            schedule(nextDelay(subscribers.size(), ZonedDateTime.now()));
+        }
+    }
+
+    /**
+     * Compare the parts of a quote shown to clients.
+     */
+    private static boolean sameQuote(Stock a, Stock b) {
+        if (a.getQuote() == null || b.getQuote() == null) {
+            return a.getQuote() == b.getQuote();
+        }
+
+        return equal(a.getQuote().getPrice(), b.getQuote().getPrice())
+                && Objects.equals(a.getQuote().getVolume(), b.getQuote().getVolume());
+    }
+
+    private static boolean equal(BigDecimal a, BigDecimal b) {
+        return a == null ? b == null : b != null && a.compareTo(b) == 0;
+    }
+}
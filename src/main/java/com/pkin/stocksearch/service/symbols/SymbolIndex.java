@@ -0,0 +1,335 @@
+/**
+ * Copyright 2018 Peter Kinson
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ */
+
+package com.pkin.stocksearch.service.symbols;
+
+import com.opencsv.CSVReader;
+import com.pkin.stocksearch.model.SymbolListing;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Immutable prefix index over listed symbols and company names.
+ * <p>
+ * Keys are held in sorted arrays, so every prefix maps to one contiguous range
+ * found with two binary searches, the same ranges a trie would walk to without
+ * a node object per character. Symbols are indexed as upper case keys. Names are
+ * indexed from the start of every word, so "air" finds "American Airlines Group".
+ * Results are ranked exact symbol first, then symbols starting with the query
+ * shortest first, then names starting with the query, then names with a word
+ * starting with it. When those run short, names similar to a misspelled query are
+ * added from a trigram index, so "Agilant" still finds Agilent Technologies.
+ */
+public class SymbolIndex {
+
+    //Shortest normalized query that is matched fuzzily, shorter ones have too few trigrams.
+    private static final int MIN_FUZZY_LENGTH = 4;
+    //Least share of the query trigrams a name must contain to be suggested.
+    private static final double MIN_SIMILARITY = 0.5;
+
+    private final SymbolListing[] listings;
+    //Upper case symbols, sorted, parallel to listings.
+    private final String[] symbolKeys;
+    //Normalized name suffixes starting at a word, sorted.
+    private final String[] nameKeys;
+    //Listing each name key belongs to, parallel to nameKeys.
+    private final int[] nameOwners;
+    //Whether each name key is the whole name, parallel to nameKeys.
+    private final boolean[] nameStarts;
+    //Typo tolerant index over the names, ids are listing positions.
+    private final TrigramIndex fuzzyNames;
+
+    /**
+     * Build an index. Duplicate symbols keep their first listing.
+     *
+     * @param listings Symbols and company names
+     */
+    public SymbolIndex(List<SymbolListing> listings) {
+        List<SymbolListing> sorted = new ArrayList<>(listings);
+        sorted.sort(Comparator.comparing(SymbolListing::getSymbol));
+
+        List<SymbolListing> unique = new ArrayList<>(sorted.size());
+        for (SymbolListing listing : sorted) {
+            if (unique.isEmpty() || !unique.get(unique.size() - 1).getSymbol().equals(listing.getSymbol())) {
+                unique.add(listing);
+            }
+        }
+
+        this.listings = unique.toArray(new SymbolListing[0]);
+        this.symbolKeys = new String[this.listings.length];
+
+        List<NameKey> keys = new ArrayList<>();
+        List<String> names = new ArrayList<>(this.listings.length);
+        for (int i = 0; i < this.listings.length; i++) {
+            symbolKeys[i] = this.listings[i].getSymbol();
+
+            String name = normalize(this.listings[i].getName());
+            names.add(name);
+            for (int start = 0; start < name.length(); start = name.indexOf(' ', start) + 1) {
+                keys.add(new NameKey(name.substring(start), i, start == 0));
+                if (name.indexOf(' ', start) < 0) {
+                    break;
+                }
+            }
+        }
+        keys.sort(Comparator.comparing((NameKey key) -> key.key).thenComparingInt(key -> key.owner));
+
+        this.nameKeys = new String[keys.size()];
+        this.nameOwners = new int[keys.size()];
+        this.nameStarts = new boolean[keys.size()];
+        for (int i = 0; i < keys.size(); i++) {
+            nameKeys[i] = keys.get(i).key;
+            nameOwners[i] = keys.get(i).owner;
+            nameStarts[i] = keys.get(i).start;
+        }
+
+        this.fuzzyNames = new TrigramIndex(names);
+    }
+
+    /**
+     * Build an index from a CSV of symbol,name rows.
+     *
+     * @param reader CSV source, closed when read
+     * @return Index over the rows
+     * @throws IOException Thrown if the CSV cannot be read
+     */
+    public static SymbolIndex load(Reader reader) throws IOException {
+        List<SymbolListing> listings = new ArrayList<>();
+
+        try (CSVReader csvReader = new CSVReader(reader)) {
+            String[] row;
+            while ((row = csvReader.readNext()) != null) {
+                if (row.length >= 2 && !row[0].trim().isEmpty()) {
+                    listings.add(new SymbolListing(row[0].trim().toUpperCase(), row[1].trim()));
+                }
+            }
+        }
+
+        return new SymbolIndex(listings);
+    }
+
+    /**
+     * Build an index from a CSV on the classpath.
+     *
+     * @param resource Classpath resource, such as stocks.csv
+     * @return Index over the rows
+     * @throws IOException Thrown if the resource is missing or cannot be read
+     */
+    public static SymbolIndex fromResource(String resource) throws IOException {
+        InputStream stream = SymbolIndex.class.getClassLoader().getResourceAsStream(resource);
+
+        if (stream == null) {
+            throw new FileNotFoundException("The symbol list " + resource + " is not on the classpath.");
+        }
+        return load(new InputStreamReader(stream, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Return the best matches for a partial symbol or company name.
+     *
+     * @param query Text typed by the user
+     * @param limit Maximum number of matches
+     * @return Matches, best first
+     */
+    public List<SymbolListing> search(String query, int limit) {
+        if (query == null || query.trim().isEmpty() || limit < 1) {
+            return Collections.emptyList();
+        }
+
+        Set<Integer> matches = new LinkedHashSet<>();
+        String symbolPrefix = query.trim().toUpperCase();
+
+        //Symbols, the exact match sorts first since it is the shortest.
+        int from = lowerBound(symbolKeys, symbolPrefix);
+        int to = upperBound(symbolKeys, symbolPrefix, from);
+        Integer[] symbolMatches = new Integer[to - from];
+        for (int i = from; i < to; i++) {
+            symbolMatches[i - from] = i;
+        }
+        Arrays.sort(symbolMatches, Comparator.comparingInt((Integer i) -> symbolKeys[i].length()));
+        for (int i = 0; i < symbolMatches.length && matches.size() < limit; i++) {
+            matches.add(symbolMatches[i]);
+        }
+
+        //Names, those starting with the query before those with a later word starting with it.
+        String namePrefix = normalize(query);
+        if (!namePrefix.isEmpty() && matches.size() < limit) {
+            from = lowerBound(nameKeys, namePrefix);
+            to = upperBound(nameKeys, namePrefix, from);
+
+            for (int i = from; i < to && matches.size() < limit; i++) {
+                if (nameStarts[i]) {
+                    matches.add(nameOwners[i]);
+                }
+            }
+            for (int i = from; i < to && matches.size() < limit; i++) {
+                matches.add(nameOwners[i]);
+            }
+        }
+
+        //Misspelled names last.
+        if (namePrefix.length() >= MIN_FUZZY_LENGTH && matches.size() < limit) {
+            for (int id : fuzzyNames.search(namePrefix, limit, MIN_SIMILARITY)) {
+                if (matches.size() == limit) {
+                    break;
+                }
+                matches.add(id);
+            }
+        }
+
+        List<SymbolListing> results = new ArrayList<>(matches.size());
+        for (int index : matches) {
+            results.add(listings[index]);
+        }
+        return results;
+    }
+
+    /**
+     * Return the companies whose names are most similar to the query, tolerating typos.
+     *
+     * @param query Company name as typed by the user
+     * @param limit Maximum number of matches
+     * @return Matches, most similar first
+     */
+    public List<SymbolListing> fuzzySearch(String query, int limit) {
+        if (query == null) {
+            return Collections.emptyList();
+        }
+
+        String name = normalize(query);
+        if (name.length() < MIN_FUZZY_LENGTH) {
+            return Collections.emptyList();
+        }
+
+        int[] ids = fuzzyNames.search(name, limit, MIN_SIMILARITY);
+        List<SymbolListing> results = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            results.add(listings[id]);
+        }
+        return results;
+    }
+
+    /**
+     * Look up a symbol.
+     *
+     * @param symbol Symbol in any case
+     * @return The listing, or null if the symbol is not listed
+     */
+    public SymbolListing get(String symbol) {
+        if (symbol == null) {
+            return null;
+        }
+
+        int index = Arrays.binarySearch(symbolKeys, symbol.trim().toUpperCase());
+        return index < 0 ? null : listings[index];
+    }
+
+    /**
+     * Return the number of listed symbols.
+     *
+     * @return Symbol count
+     */
+    public int size() {
+        return listings.length;
+    }
+
+    /**
+     * Lower case a name and collapse everything but letters and digits into single spaces.
+     */
+    static String normalize(String text) {
+        StringBuilder builder = new StringBuilder(text.length());
+        boolean space = false;
+
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+
+            if (Character.isLetterOrDigit(c)) {
+                if (space && builder.length() > 0) {
+                    builder.append(' ');
+                }
+                builder.append(Character.toLowerCase(c));
+                space = false;
+            } else {
+                space = true;
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * First index whose key is not less than the prefix.
+     */
+    private static int lowerBound(String[] keys, String prefix) {
+        int low = 0;
+        int high = keys.length;
+
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid].compareTo(prefix) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * First index from lowerBound on whose key does not start with the prefix.
+     */
+    private static int upperBound(String[] keys, String prefix, int from) {
+        int low = from;
+        int high = keys.length;
+
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid].startsWith(prefix)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Name suffix while the index is built.
+     */
+    private static class NameKey {
+        private final String key;
+        private final int owner;
+        private final boolean start;
+
+        private NameKey(String key, int owner, boolean start) {
+            this.key = key;
+            this.owner = owner;
+            this.start = start;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/**
+ * Copyright 2018 Peter Kinson
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ */
+
+package com.pkin.stocksearch.service.symbols;
+
+import com.pkin.stocksearch.utilities.ExecutorUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holds the current SymbolIndex and rebuilds it when the symbols file changes.
+ * <p>
+ * A background thread checks the file's modification time and size. When either
+ * changes, a new index is built on that thread and published with a single
+ * reference swap. Readers never lock and always see a complete index, the old one
+ * until the swap and the new one after. A file that fails to parse leaves the
+ * current index in place and is tried again once it changes.
+ */
+public class SymbolIndexReloader {
+
+    private final AtomicReference<SymbolIndex> current;
+    private final Path file;
+    private ScheduledExecutorService scheduler;
+    //Modification time and size of the file the current index was built from.
+    private long loadedModified;
+    private long loadedSize;
+
+    /**
+     * @param file    Symbols CSV to watch, null to keep the initial index
+     * @param initial Index to serve until the file changes
+     */
+    public SymbolIndexReloader(Path file, SymbolIndex initial) {
+        this.current = new AtomicReference<>(initial);
+        this.file = file;
+
+        if (file != null) {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                loadedModified = attributes.lastModifiedTime().toMillis();
+                loadedSize = attributes.size();
+            } catch (IOException e) {
+                //Unreadable for now, the first successful check loads it.
+                loadedModified = -1;
+            }
+        }
+    }
+
+    /**
+     * Return the current index.
+     *
+     * @return Complete index, never null
+     */
+    public SymbolIndex get() {
+        return current.get();
+    }
+
+    /**
+     * Start checking the file on a background thread. Does nothing if already started
+     * or if there is no file to watch.
+     *
+     * @param periodMillis Time between checks
+     */
+    public synchronized void start(long periodMillis) {
+        if (scheduler == null && file != null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(ExecutorUtils.newThreadFactory("symbol-reload"));
+            scheduler.scheduleWithFixedDelay(this::reloadIfChanged, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stop checking the file.
+     */
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Rebuild and publish the index if the file changed since it was last loaded.
+     *
+     * @return True if a new index was published
+     */
+    public synchronized boolean reloadIfChanged() {
+        if (file == null) {
+            return false;
+        }
+
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            long modified = attributes.lastModifiedTime().toMillis();
+            long size = attributes.size();
+
+            if (modified == loadedModified && size == loadedSize) {
+                return false;
+            }
+
+            //Remember the version first, so a file that fails to parse is not retried until it changes again.
+            loadedModified = modified;
+            loadedSize = size;
+
+            SymbolIndex rebuilt = SymbolIndex.load(Files.newBufferedReader(file, StandardCharsets.UTF_8));
+            //A file still being written is picked up on a later check once it settles.
+            BasicFileAttributes after = Files.readAttributes(file, BasicFileAttributes.class);
+            if (after.lastModifiedTime().toMillis() != modified || after.size() != size) {
+                loadedModified = -1;
+                return false;
+            }
+            //An empty list is more likely a broken file than a real universe.
+            if (rebuilt.size() == 0) {
+                return false;
+            }
+
+            current.set(rebuilt);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/**
+ * Copyright 2018 Peter Kinson
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ */
+
+package com.pkin.stocksearch.service.symbols;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable trigram inverted index for typo tolerant matching of company names.
+ * <p>
+ * Every name is split into the distinct three character windows of its normalized
+ * form padded with a space on each side, so word starts and ends count as well.
+ * Each trigram maps to the sorted ids of the names containing it. A query counts
+ * how many of its own trigrams each name shares, touching only the posting lists
+ * of those trigrams. Candidates are ranked by the share of query trigrams found,
+ * which tolerates a misspelled letter inside a long name, then by Dice similarity
+ * so closer lengths win ties.
+ */
+class TrigramIndex {
+
+    //Sorted trigram keys, three chars packed into a long.
+    private final long[] trigrams;
+    //Ids of the names holding each trigram, parallel to trigrams.
+    private final int[][] postings;
+    //Distinct trigram count of each name.
+    private final int[] gramCounts;
+
+    /**
+     * @param names Normalized names, the id of a name is its position
+     */
+    TrigramIndex(List<String> names) {
+        Map<Long, List<Integer>> lists = new HashMap<>();
+        gramCounts = new int[names.size()];
+
+        for (int id = 0; id < names.size(); id++) {
+            long[] grams = trigrams(names.get(id));
+            gramCounts[id] = grams.length;
+
+            for (long gram : grams) {
+                lists.computeIfAbsent(gram, key -> new ArrayList<>()).add(id);
+            }
+        }
+
+        trigrams = new long[lists.size()];
+        int index = 0;
+        for (Long gram : lists.keySet()) {
+            trigrams[index++] = gram;
+        }
+        Arrays.sort(trigrams);
+
+        //Ids were added in order, so every posting list is already sorted.
+        postings = new int[trigrams.length][];
+        for (int i = 0; i < trigrams.length; i++) {
+            List<Integer> ids = lists.get(trigrams[i]);
+            postings[i] = new int[ids.size()];
+            for (int j = 0; j < ids.size(); j++) {
+                postings[i][j] = ids.get(j);
+            }
+        }
+    }
+
+    /**
+     * Return the ids of the names most similar to a query.
+     *
+     * @param query         Normalized query
+     * @param limit         Maximum number of ids
+     * @param minSimilarity Least share of query trigrams a name must contain, 0 to 1
+     * @return Ids, most similar first
+     */
+    int[] search(String query, int limit, double minSimilarity) {
+        long[] grams = trigrams(query);
+        if (grams.length == 0 || limit < 1) {
+            return new int[0];
+        }
+
+        int[] shared = new int[gramCounts.length];
+        int[] touched = new int[gramCounts.length];
+        int touchedCount = 0;
+
+        for (long gram : grams) {
+            int index = Arrays.binarySearch(trigrams, gram);
+            if (index < 0) {
+                continue;
+            }
+            for (int id : postings[index]) {
+                if (shared[id]++ == 0) {
+                    touched[touchedCount++] = id;
+                }
+            }
+        }
+
+        //Keep the best candidates in a small array ordered by score, best first.
+        int minShared = (int) Math.ceil(minSimilarity * grams.length);
+        int[] best = new int[limit];
+        double[] bestScores = new double[limit];
+        int bestCount = 0;
+
+        for (int i = 0; i < touchedCount; i++) {
+            int id = touched[i];
+            if (shared[id] < minShared) {
+                continue;
+            }
+
+            double score = (double) shared[id] / grams.length
+                    + 2.0 * shared[id] / (grams.length + gramCounts[id]) / 1000;
+
+            if (bestCount == limit && score <= bestScores[limit - 1]) {
+                continue;
+            }
+
+            int position = bestCount == limit ? limit - 1 : bestCount++;
+            while (position > 0 && bestScores[position - 1] < score) {
+                best[position] = best[position - 1];
+                bestScores[position] = bestScores[position - 1];
+                position--;
+            }
+            best[position] = id;
+            bestScores[position] = score;
+        }
+
+        return Arrays.copyOf(best, bestCount);
+    }
+
+    /**
+     * Distinct trigrams of " text ", packed three chars to a long.
+     */
+    static long[] trigrams(String text) {
+        if (text.isEmpty()) {
+            return new long[0];
+        }
+
+        String padded = " " + text + " ";
+        long[] grams = new long[padded.length() - 2];
+
+        for (int i = 0; i < grams.length; i++) {
+            grams[i] = ((long) padded.charAt(i) << 32) | ((long) padded.charAt(i + 1) << 16) | padded.charAt(i + 2);
+        }
+
+        //Drop repeats so a name is not favored for repeating a trigram.
+        Arrays.sort(grams);
+        int distinct = 0;
+        for (int i = 0; i < grams.length; i++) {
+            if (i == 0 || grams[i] != grams[i - 1]) {
+                grams[distinct++] = grams[i];
+            }
+        }
+        return Arrays.copyOf(grams, distinct);
+    }
+}
@@ -0,0 +1,388 @@
+/**
+ * Copyright 2018 Peter Kinson
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ */
+
+package com.pkin.stocksearch.servlet;
+
+import com.pkin.stocksearch.model.BarSeries;
+import com.pkin.stocksearch.model.StaleStock;
+import com.pkin.stocksearch.model.SymbolListing;
+import com.pkin.stocksearch.service.ServiceFactory;
+import com.pkin.stocksearch.service.StockService;
+import com.pkin.stocksearch.service.exceptions.StockServiceException;
+import com.pkin.stocksearch.utilities.ConfigUtils;
+import com.pkin.stocksearch.utilities.JsonWriter;
+import com.pkin.stocksearch.utilities.WebUtils;
+import yahoofinance.Stock;
+import yahoofinance.histquotes.Interval;
+import yahoofinance.quotes.stock.StockQuote;
+
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedWriter;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * JSON API for machine clients, skipping the HTML results page.
+ * <p>
+ * Usage:
+ * api/quote/GOOG
+ * api/history/GOOG?start=2018-01-01&amp;end=2018-02-01&amp;interval=DAILY
+ * api/export/GOOG?start=2018-01-01&amp;end=2018-02-01&amp;interval=DAILY
+ * api/symbols?q=goo&amp;limit=10
+ * <p>
+ * Dates are ISO yyyy-MM-dd. The end date defaults to today and the interval to DAILY.
+ * Export returns the same bars as a CSV download. Symbols returns the listed symbols
+ * whose symbol or company name best match q, for autocomplete.
+ * History is returned as one array per bar in the order given by "columns". Responses are
+ * written straight to the response Writer as they are encoded.
+ */
+@WebServlet(value = "/api/*")
+public class ApiServlet extends HttpServlet {
+
+    private static final String UNKNOWN_RESOURCE = "Unknown resource. Use quote/{symbol}, history/{symbol}, export/{symbol} or symbols?q=.";
+    private static final boolean CSV_GZIP = ConfigUtils.getBoolean("stocksearch.export.gzip", true);
+    private static final int CSV_BUFFER_BYTES = ConfigUtils.getInt("stocksearch.export.bufferBytes", 8192);
+    private static final int SYMBOL_LIMIT = ConfigUtils.getInt("stocksearch.symbols.limit", 10);
+    private static final int MAX_SYMBOL_LIMIT = ConfigUtils.getInt("stocksearch.symbols.maxLimit", 50);
+    private static final long SYMBOL_MAX_AGE_SECONDS = ConfigUtils.getLong("stocksearch.symbols.maxAgeSeconds", 3600);
+    private static final String[] HISTORY_COLUMNS = {"date", "open", "high", "low", "close", "adjClose", "volume"};
+
+    @Override
+    protected void doGet(HttpServletRequest httpRequest, HttpServletResponse httpResponse)
+            throws ServletException, IOException {
+
+        //Path is /{resource}/{symbol}
+        String path = httpRequest.getPathInfo();
+        String[] parts = path == null ? new String[0] : path.split("/");
+
+        if (parts.length == 2 && "symbols".equals(parts[1])) {
+            writeSymbols(httpRequest, httpResponse);
+            return;
+        }
+
+        if (parts.length != 3 || !WebUtils.isSymbolSyntax(parts[2])) {
+            writeError(httpResponse, HttpServletResponse.SC_NOT_FOUND, UNKNOWN_RESOURCE);
+            return;
+        }
+
+        String symbol = parts[2].trim().toUpperCase();
+
+        try {
+            if ("quote".equals(parts[1])) {
+                writeQuote(httpResponse, symbol);
+            } else if ("history".equals(parts[1])) {
+                writeHistory(httpRequest, httpResponse, symbol);
+            } else if ("export".equals(parts[1])) {
+                writeCsv(httpRequest, httpResponse, symbol);
+            } else {
+                writeError(httpResponse, HttpServletResponse.SC_NOT_FOUND, UNKNOWN_RESOURCE);
+            }
+        } catch (StockServiceException e) {
+            if (e.getCause() instanceof FileNotFoundException) {
+                writeError(httpResponse, HttpServletResponse.SC_NOT_FOUND, "Unknown symbol " + symbol + ".");
+            } else {
+                writeError(httpResponse, HttpServletResponse.SC_SERVICE_UNAVAILABLE, "The quote service is unavailable. Please try again.");
+            }
+        }
+    }
+
+    /**
+     * Write the listed symbols best matching the q parameter, for autocomplete.
+     * The list only changes with stocks.csv, so browsers may reuse answers for a while.
+     *
+     * @param httpRequest  Current request holding q and optionally limit
+     * @param httpResponse Current response
+     * @throws IOException Thrown if the response cannot be written
+     */
+    private void writeSymbols(HttpServletRequest httpRequest, HttpServletResponse httpResponse) throws IOException {
+        int limit = SYMBOL_LIMIT;
+        try {
+            String requested = httpRequest.getParameter("limit");
+            if (requested != null) {
+                limit = Math.max(1, Math.min(MAX_SYMBOL_LIMIT, Integer.parseInt(requested.trim())));
+            }
+        } catch (NumberFormatException e) {
+            writeError(httpResponse, HttpServletResponse.SC_BAD_REQUEST, "limit must be a number.");
+            return;
+        }
+
+        List<SymbolListing> matches = ServiceFactory.getSymbolIndexInstance().search(httpRequest.getParameter("q"), limit);
+
+        httpResponse.setHeader("Cache-Control", "public, max-age=" + SYMBOL_MAX_AGE_SECONDS);
+        JsonWriter json = startJson(httpResponse, HttpServletResponse.SC_OK);
+
+        json.beginArray();
+        for (SymbolListing match : matches) {
+            json.beginObject().name("symbol").value(match.getSymbol()).name("name").value(match.getName()).endObject();
+        }
+        json.endArray().flush();
+    }
+
+    /**
+     * Write the quick quote of a symbol.
+     *
+     * @param httpResponse Current response
+     * @param symbol       Upper case symbol
+     * @throws StockServiceException Thrown when the quote cannot be retrieved
+     * @throws IOException           Thrown if the response cannot be written
+     */
+    private void writeQuote(HttpServletResponse httpResponse, String symbol) throws StockServiceException, IOException {
+        Stock stock = ServiceFactory.getStockServiceInstance().getQuickQuote(symbol);
+
+        if (stock == null || !stock.isValid()) {
+            writeError(httpResponse, HttpServletResponse.SC_NOT_FOUND, "Unknown symbol " + symbol + ".");
+            return;
+        }
+
+        writeQuote(startJson(httpResponse, HttpServletResponse.SC_OK), stock);
+    }
+
+    /**
+     * Write a quick quote as a JSON object. The fields match the quote events of QuoteStreamServlet.
+     *
+     * @param json  Writer of the response
+     * @param stock Stock holding the quote
+     * @throws IOException Thrown if the response cannot be written
+     */
+    static void writeQuote(JsonWriter json, Stock stock) throws IOException {
+        StockQuote quote = stock.getQuote();
+
+        json.beginObject();
+        writeStockDetails(json, stock);
+        if (quote != null) {
+            json.name("price").value(quote.getPrice());
+            json.name("change").value(quote.getChange());
+            json.name("changePercent").value(WebUtils.getChangeInPercent(quote));
+            json.name("volume").value(quote.getVolume());
+            json.name("time").value(quote.getLastTradeTime() == null ? null : quote.getLastTradeTime().getTimeInMillis());
+        }
+        json.endObject().flush();
+    }
+
+    /**
+     * Retrieve the historical bars requested by start, end and interval. Invalid requests
+     * and unknown symbols are answered with an error here.
+     *
+     * @param httpRequest  Current request holding start, end and interval
+     * @param httpResponse Current response
+     * @param symbol       Upper case symbol
+     * @return The history, or null if an error was written
+     * @throws StockServiceException Thrown when the history cannot be retrieved
+     * @throws IOException           Thrown if the response cannot be written
+     */
+    private History loadHistory(HttpServletRequest httpRequest, HttpServletResponse httpResponse, String symbol)
+            throws StockServiceException, IOException {
+
+        Calendar from;
+        Calendar until;
+        Interval interval;
+
+        try {
+            String end = httpRequest.getParameter("end");
+            String intervalName = httpRequest.getParameter("interval");
+
+            from = toCalendar(LocalDate.parse(httpRequest.getParameter("start")));
+            until = toCalendar(end == null ? LocalDate.now() : LocalDate.parse(end));
+            interval = intervalName == null ? Interval.DAILY : Interval.valueOf(intervalName.trim().toUpperCase());
+        } catch (NullPointerException | DateTimeParseException | IllegalArgumentException e) {
+            writeError(httpResponse, HttpServletResponse.SC_BAD_REQUEST,
+                    "start is required, start and end are yyyy-MM-dd, interval is DAILY, WEEKLY or MONTHLY.");
+            return null;
+        }
+
+        if (until.before(from)) {
+            writeError(httpResponse, HttpServletResponse.SC_BAD_REQUEST, "end is before start.");
+            return null;
+        }
+
+        StockService stockService = ServiceFactory.getStockServiceInstance();
+        Stock stock = stockService.getQuote(symbol, from, until, interval);
+        BarSeries series;
+
+        try {
+            series = stock == null ? null : BarSeries.from(stock);
+        } catch (IOException e) {
+            series = null;
+        }
+
+        if (series == null) {
+            writeError(httpResponse, HttpServletResponse.SC_NOT_FOUND, "No history found for " + symbol + ".");
+            return null;
+        }
+
+        return new History(stock, series, interval);
+    }
+
+    /**
+     * Write the historical bars of a symbol as JSON.
+     *
+     * @param httpRequest  Current request holding start, end and interval
+     * @param httpResponse Current response
+     * @param symbol       Upper case symbol
+     * @throws StockServiceException Thrown when the history cannot be retrieved
+     * @throws IOException           Thrown if the response cannot be written
+     */
+    private void writeHistory(HttpServletRequest httpRequest, HttpServletResponse httpResponse, String symbol)
+            throws StockServiceException, IOException {
+
+        History history = loadHistory(httpRequest, httpResponse, symbol);
+        if (history == null) {
+            return;
+        }
+
+        BarSeries series = history.series;
+        JsonWriter json = startJson(httpResponse, HttpServletResponse.SC_OK);
+
+        json.beginObject();
+        writeStockDetails(json, history.stock);
+        json.name("interval").value(history.interval.name());
+
+        json.name("columns").beginArray();
+        for (String column : HISTORY_COLUMNS) {
+            json.value(column);
+        }
+        json.endArray();
+
+        json.name("bars").beginArray();
+        for (int i = 0; i < series.size(); i++) {
+            long volume = series.getVolume(i);
+
+            json.beginArray()
+                    .value(series.getDate(i))
+                    .scaledValue(series.getOpen(i))
+                    .scaledValue(series.getHigh(i))
+                    .scaledValue(series.getLow(i))
+                    .scaledValue(series.getClose(i))
+                    .scaledValue(series.getAdjClose(i));
+            if (volume == BarSeries.MISSING) {
+                json.nullValue();
+            } else {
+                json.value(volume);
+            }
+            json.endArray();
+        }
+        json.endArray();
+
+        json.endObject().flush();
+    }
+
+    /**
+     * Write the historical bars of a symbol as a CSV download. No length is set, so the
+     * container sends the file chunked as rows are written. The file is gzipped when
+     * the client accepts it.
+     *
+     * @param httpRequest  Current request holding start, end and interval
+     * @param httpResponse Current response
+     * @param symbol       Upper case symbol
+     * @throws StockServiceException Thrown when the history cannot be retrieved
+     * @throws IOException           Thrown if the response cannot be written
+     */
+    private void writeCsv(HttpServletRequest httpRequest, HttpServletResponse httpResponse, String symbol)
+            throws StockServiceException, IOException {
+
+        History history = loadHistory(httpRequest, httpResponse, symbol);
+        if (history == null) {
+            return;
+        }
+
+        String acceptEncoding = httpRequest.getHeader("Accept-Encoding");
+        boolean gzip = CSV_GZIP && acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
+
+        httpResponse.setStatus(HttpServletResponse.SC_OK);
+        httpResponse.setContentType("text/csv");
+        httpResponse.setCharacterEncoding("UTF-8");
+        httpResponse.setHeader("Content-Disposition", "attachment; filename=\"" + symbol + "-"
+                + history.interval.name().toLowerCase() + ".csv\"");
+        httpResponse.setHeader("Vary", "Accept-Encoding");
+
+        OutputStream stream = httpResponse.getOutputStream();
+        if (gzip) {
+            httpResponse.setHeader("Content-Encoding", "gzip");
+            stream = new GZIPOutputStream(stream, CSV_BUFFER_BYTES);
+        }
+
+        Writer writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), CSV_BUFFER_BYTES);
+        WebUtils.writeHistoryCsv(writer, history.series);
+        //Finishes the gzip trailer as well.
+        writer.close();
+    }
+
+    /**
+     * Write the fields shared by quotes and history.
+     */
+    private static void writeStockDetails(JsonWriter json, Stock stock) throws IOException {
+        json.name("symbol").value(stock.getSymbol());
+        json.name("name").value(stock.getName());
+        json.name("exchange").value(stock.getStockExchange());
+        json.name("currency").value(stock.getCurrency());
+        //Served from cache while the quote service is down.
+        json.name("stale").value(stock instanceof StaleStock);
+    }
+
+    /**
+     * Write an error as a JSON object.
+     *
+     * @param httpResponse Current response
+     * @param status       HTTP status
+     * @param message      Message for the client
+     * @throws IOException Thrown if the response cannot be written
+     */
+    private void writeError(HttpServletResponse httpResponse, int status, String message) throws IOException {
+        startJson(httpResponse, status).beginObject().name("error").value(message).endObject().flush();
+    }
+
+    private JsonWriter startJson(HttpServletResponse httpResponse, int status) throws IOException {
+        httpResponse.setStatus(status);
+        httpResponse.setContentType("application/json");
+        httpResponse.setCharacterEncoding("UTF-8");
+        return new JsonWriter(httpResponse.getWriter());
+    }
+
+    private static Calendar toCalendar(LocalDate date) {
+        return GregorianCalendar.from(date.atStartOfDay(ZoneId.systemDefault()));
+    }
+
+    /**
+     * Historical bars retrieved for a request.
+     */
+    private static class History {
+        private final Stock stock;
+        private final BarSeries series;
+        private final Interval interval;
+
+        private History(Stock stock, BarSeries series, Interval interval) {
+            this.stock = stock;
+            this.series = series;
+            this.interval = interval;
+        }
+    }
+}
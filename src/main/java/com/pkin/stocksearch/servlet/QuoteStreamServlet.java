@@ -0,0 +1,206 @@
+/**
+ * Copyright 2018 Peter Kinson
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ */
+
+
+package com.pkin.stocksearch.servlet;
+
+import com.pkin.stocksearch.model.StaleStock;
+import com.pkin.stocksearch.service.ServiceFactory;
+import com.pkin.stocksearch.service.stream.QuoteStreamHub;
+import com.pkin.stocksearch.utilities.ConfigUtils;
+import com.pkin.stocksearch.utilities.JsonWriter;
+import com.pkin.stocksearch.utilities.WebUtils;
+import yahoofinance.Stock;
+import yahoofinance.quotes.stock.StockQuote;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+/**
+ * Streams live quick quotes for one symbol as Server-Sent Events.
+ * <p>
+ * Usage: QuoteStream?symbol=GOOG. Each client is a subscriber of the shared
+ * QuoteStreamHub, so one upstream poll per symbol serves every open stream.
+ * A "quote" event carries the quote as JSON whenever it changes.
+ */
+@WebServlet(value = "/QuoteStream", asyncSupported = true)
+public class QuoteStreamServlet extends HttpServlet {
+
+    private static final long STREAM_TIMEOUT_MILLIS = ConfigUtils.getLong("stocksearch.stream.timeoutMillis", 1800000);
+
+    @Override
+    protected void doGet(HttpServletRequest httpRequest, HttpServletResponse httpResponse)
+            throws ServletException, IOException {
+
+        String symbol = httpRequest.getParameter("symbol");
+
+        if (!WebUtils.isSymbolSyntax(symbol)) {
+            httpResponse.sendError(HttpServletResponse.SC_BAD_REQUEST, "A valid symbol is required.");
+            return;
+        }
+        if (!httpRequest.isAsyncSupported()) {
+            httpResponse.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Streaming is not available.");
+            return;
+        }
+
+        final String upperSymbol = symbol.trim().toUpperCase();
+        final QuoteStreamHub hub = ServiceFactory.getQuoteStreamHubInstance();
+
+        httpResponse.setContentType("text/event-stream");
+        httpResponse.setCharacterEncoding("UTF-8");
+        httpResponse.setHeader("Cache-Control", "no-cache");
+
+        final AsyncContext asyncContext = httpRequest.startAsync(httpRequest, httpResponse);
+        asyncContext.setTimeout(STREAM_TIMEOUT_MILLIS);
+
+        final EventStream stream = new EventStream(asyncContext);
+        asyncContext.addListener(new AsyncListener() {
+            @Override
+            public void onComplete(AsyncEvent event) {
+                hub.unsubscribe(upperSymbol, stream);
+            }
+
+            @Override
+            public void onTimeout(AsyncEvent event) {
+                //The browser's EventSource reconnects by itself.
+                hub.unsubscribe(upperSymbol, stream);
+                stream.close();
+            }
+
+            @Override
+            public void onError(AsyncEvent event) {
+                hub.unsubscribe(upperSymbol, stream);
+                stream.close();
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+            }
+        });
+
+        //Tell the browser how long to wait before reconnecting.
+        if (stream.write("retry: 5000\n\n")) {
+            hub.subscribe(upperSymbol, stream);
+        } else {
+            stream.close();
+        }
+    }
+
+    /**
+     * Build the JSON payload of a quote event.
+     *
+     * @param stock Quote to send
+     * @return JSON object
+     */
+    static String toJson(Stock stock) {
+        StockQuote quote = stock.getQuote();
+        StringWriter out = new StringWriter(160);
+
+        try {
+            JsonWriter json = new JsonWriter(out);
+            json.beginObject().name("symbol").value(stock.getSymbol());
+            if (quote != null) {
+                json.name("price").value(quote.getPrice());
+                json.name("change").value(quote.getChange());
+                json.name("changePercent").value(WebUtils.getChangeInPercent(quote));
+                json.name("volume").value(quote.getVolume());
+                json.name("time").value(quote.getLastTradeTime() == null ? null : quote.getLastTradeTime().getTimeInMillis());
+            }
+            json.name("stale").value(stock instanceof StaleStock).endObject();
+        } catch (IOException e) {
+            //StringWriter never throws.
+            throw new IllegalStateException(e);
+        }
+
+        return out.toString();
+    }
+
+    /**
+     * Subscriber writing events to one suspended response.
+     */
+    private static class EventStream implements QuoteStreamHub.Subscriber {
+
+        private final AsyncContext asyncContext;
+        private boolean closed = false;
+
+        private EventStream(AsyncContext asyncContext) {
+            this.asyncContext = asyncContext;
+        }
+
+        @Override
+        public boolean onQuote(Stock stock) {
+            return write("event: quote\ndata: " + toJson(stock) + "\n\n");
+        }
+
+        @Override
+        public boolean onKeepAlive() {
+            return write(": keep-alive\n\n");
+        }
+
+        /**
+         * Write and flush an event.
+         *
+         * @return False if the client is gone
+         */
+        private synchronized boolean write(String event) {
+            if (closed) {
+                return false;
+            }
+
+            try {
+                PrintWriter writer = asyncContext.getResponse().getWriter();
+                writer.write(event);
+                writer.flush();
+
+                if (writer.checkError()) {
+                    closed = true;
+                }
+            } catch (IOException | IllegalStateException e) {
+                closed = true;
+            }
+
+            //The client went away, release the suspended request.
+            if (closed) {
+                complete();
+            }
+
+            return !closed;
+        }
+
+        private synchronized void close() {
+            closed = true;
+            complete();
+        }
+
+        private void complete() {
+            try {
+                asyncContext.complete();
+            } catch (IllegalStateException e) {
+                //Already completed.
+            }
+        }
+    }
+}
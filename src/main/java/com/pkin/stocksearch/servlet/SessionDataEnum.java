@@ -7,6 +7,7 @@ public enum SessionDataEnum {
     END_PARAMETER_KEY("endDate"),
     INTERVAL_PARAMETER_KEY("interval"),
     QUICKSYMBOL_PARAMETER_KEY("quickSymbol"),
+    QUICKSYMBOLS_PARAMETER_KEY("quickSymbols"),
     USER_AGENT("User-Agent");
 
     private String sessionData;
@@ -0,0 +1,75 @@
+/**
+ * Copyright 2018 Peter Kinson
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ */
+
+
+package com.pkin.stocksearch.servlet;
+
+import com.pkin.stocksearch.service.DatabaseService;
+import com.pkin.stocksearch.service.PrefetchScheduler;
+import com.pkin.stocksearch.service.ServiceFactory;
+import com.pkin.stocksearch.utilities.ConfigUtils;
+import com.pkin.stocksearch.utilities.WebUtils;
+import com.pkin.stocksearch.utilities.exceptions.WebUtilsException;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+/**
+ * Starts and stops the application's background work with the web application.
+ */
+public class StartupListener implements ServletContextListener {
+
+    private PrefetchScheduler prefetchScheduler;
+
+    @Override
+    public void contextInitialized(ServletContextEvent event) {
+        if (ConfigUtils.getBoolean("stocksearch.prefetch.enabled", true)) {
+            int topSymbols = ConfigUtils.getInt("stocksearch.prefetch.topSymbols", 5);
+            int querySize = ConfigUtils.getInt("stocksearch.prefetch.querySize", 100);
+            long period = ConfigUtils.getLong("stocksearch.prefetch.periodMillis", 60000);
+
+            //Warm the same symbols the top searches links on StockSearch.jsp point to.
+            prefetchScheduler = new PrefetchScheduler(
+                    () -> DatabaseService.queryDBForTopSearches("hibernate.cfg.xml", topSymbols, querySize, false),
+                    ServiceFactory.getStockServiceInstance(),
+                    ConfigUtils.getString("stocksearch.prefetch.ranges", "30:DAILY,365:DAILY,1825:WEEKLY"));
+            prefetchScheduler.start(0, period);
+        }
+
+        try {
+            //Compiles the user agent patterns now rather than on the first search.
+            WebUtils.initUserAgentParser();
+        } catch (WebUtilsException e) {
+            //Tried again on the first search.
+        }
+
+        long symbolsReload = ConfigUtils.getLong("stocksearch.symbols.reloadMillis", 30000);
+        if (symbolsReload > 0) {
+            //Loads the symbol list now rather than on the first autocomplete request.
+            ServiceFactory.getSymbolIndexReloaderInstance().start(symbolsReload);
+        }
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent event) {
+        if (prefetchScheduler != null) {
+            prefetchScheduler.stop();
+        }
+        //Write the searches still queued before the database goes away with the application.
+        ServiceFactory.shutdown(ConfigUtils.getLong("stocksearch.searchlog.drainMillis", 5000));
+    }
+}
@@ -17,9 +17,17 @@
 
 package com.pkin.stocksearch.servlet;
 
+import com.pkin.stocksearch.model.BarSeries;
 import com.pkin.stocksearch.model.SearchDAO;
-import com.pkin.stocksearch.service.DatabaseService;
+import com.pkin.stocksearch.model.StaleStock;
+import com.pkin.stocksearch.model.SymbolListing;
+import com.pkin.stocksearch.service.searchlog.SearchLog;
+import com.pkin.stocksearch.service.cache.RenderedFragmentCache;
 import com.pkin.stocksearch.service.exceptions.StockServiceException;
+import com.pkin.stocksearch.utilities.ChartUtils;
+import com.pkin.stocksearch.utilities.ConfigUtils;
+import com.pkin.stocksearch.utilities.ExecutorUtils;
+import com.pkin.stocksearch.utilities.HtmlFragment;
 import com.pkin.stocksearch.utilities.WebUtils;
 import com.pkin.stocksearch.utilities.exceptions.WebUtilsException;
 import com.pkin.stocksearch.service.StockService;
@@ -27,33 +35,77 @@ import com.pkin.stocksearch.service.ServiceFactory;
 
 import ua_parser.Client;
 import yahoofinance.Stock;
-import yahoofinance.YahooFinance;
 import yahoofinance.histquotes.Interval;
 import org.apache.commons.lang3.builder.*;
 
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.RequestDispatcher;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import javax.servlet.http.HttpSession;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import java.sql.Timestamp;
 
 /**
  * Simple servlet to return historical stock quote data using
  * the YahooFinance-API.
+ * <p>
+ * Searches run asynchronously when the container supports it. The container
+ * thread is released straight away while the upstream fetch, rendering and the
+ * dispatch to the results page run on a bounded executor with a per-request timeout.
  */
-@WebServlet("/StockSearch")
+@WebServlet(value = "/StockSearch", asyncSupported = true)
 public class StockSearchServlet extends HttpServlet {
 
     private static final String ERROR_HTML = "<tr><td>An error occurred. Please try again.</td>";
-    private Stock intervalResults; //Hold historical data for queried stock
+    private static final String TIMEOUT_HTML = "<tr><td>The quote service took too long to respond. Please try again.</td></tr>";
+    private static final String RESULTS_PAGE = "/ReturnedResults.jsp";
+    private static final int MAX_BATCH_SYMBOLS = ConfigUtils.getInt("stocksearch.batch.maxSymbols", 25);
+    private static final int MAX_SUGGESTIONS = ConfigUtils.getInt("stocksearch.symbols.suggestions", 3);
+    private static final int MAX_CHART_POINTS = ConfigUtils.getInt("stocksearch.chart.maxPoints", 500);
+    private static final long REQUEST_TIMEOUT_MILLIS = ConfigUtils.getLong("stocksearch.async.timeoutMillis", 30000);
+    private static final int MAX_CACHED_ROWS = ConfigUtils.getInt("stocksearch.render.maxRows", 2000);
+    private static final long OPEN_RANGE_TTL_MILLIS = ConfigUtils.getLong("stocksearch.render.openTtlMillis", 60000);
+    private static final long CLOSED_RANGE_TTL_MILLIS = ConfigUtils.getLong("stocksearch.render.closedTtlMillis", 86400000);
+    private static final long CLOSED_RANGE_MAX_AGE_SECONDS = ConfigUtils.getLong("stocksearch.render.closedMaxAgeSeconds", 3600);
+
+    //Rendered historical results shared by every request.
+    private static final RenderedFragmentCache FRAGMENT_CACHE =
+            new RenderedFragmentCache(ConfigUtils.getLong("stocksearch.render.maxChars", 20000000));
+
+    //Executor for asynchronous searches. Null until init() runs, in which case searches run synchronously.
+    private transient ExecutorService searchExecutor;
+
+    @Override
+    public void init() throws ServletException {
+        searchExecutor = ExecutorUtils.newBoundedExecutor("stock-search",
+                ConfigUtils.getInt("stocksearch.async.threads", 64),
+                ConfigUtils.getInt("stocksearch.async.queueSize", 100));
+    }
+
+    @Override
+    public void destroy() {
+        if (searchExecutor != null) {
+            searchExecutor.shutdownNow();
+        }
+    }
 
     public void doGet(HttpServletRequest httpRequest, HttpServletResponse httpResponse)
             throws IOException, ServletException {
@@ -67,30 +119,45 @@ public class StockSearchServlet extends HttpServlet {
         3 - interval
         4 - quickSymbol
         5 - userAgent
+        6 - quickSymbols
         */
         ArrayList<String> sessionParameters = getSessionParameters(httpRequest);
 
-        //Retrieve current active session for local usage
-        HttpSession session = httpRequest.getSession();
-        //Reset intervalResults
-        clearInterval();
-        //Build a stockquote from session parameters
-        String FORMATTED_HTML_QUERY = buildQuote(sessionParameters);
+        //Repeat views are answered from rendered fragments without fetching or rendering.
+        String fragmentKey = fragmentKey(sessionParameters);
+        RenderedFragmentCache.Fragment cached = fragmentKey == null ? null : FRAGMENT_CACHE.get(fragmentKey);
+        if (cached != null) {
+            writeCacheHeaders(httpResponse, cached, sessionParameters);
+
+            if (matchesETag(httpRequest.getHeader("If-None-Match"), cached.getETag())) {
+                httpResponse.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            } else {
+                storeResults(httpRequest, HtmlFragment.of(cached.getHtml()), cached.getJson());
+                httpRequest.getServletContext().getRequestDispatcher(RESULTS_PAGE).forward(httpRequest, httpResponse);
+            }
 
-        String JSON_CHART_DATA = buildJsonChartData();
+            //Commit client information about search to database
+            commitSearchData(sessionParameters);
+            return;
+        }
 
-        /*
-         * Store formatted query in session data to be accessed by results page.
-         * Nothing will be done to HTML formatted results after it is cast to final string.
-         * All work is done server-side to protect data integrity.
-         *
-         */
-        session.setAttribute("formattedQuote", FORMATTED_HTML_QUERY);
-        session.setAttribute("jsonHistory", JSON_CHART_DATA);
-
-        ServletContext servletContext = session.getServletContext();
+        //Free the container thread while the quote is fetched.
+        if (searchExecutor != null && httpRequest.isAsyncSupported()) {
+            startAsyncSearch(httpRequest, httpResponse, fragmentKey, sessionParameters);
+            return;
+        }
+
+        //Build a stockquote from session parameters
+        SearchResults results = search(sessionParameters);
+        cacheFragment(fragmentKey, sessionParameters, results);
+        if (results.fragment != null) {
+            writeCacheHeaders(httpResponse, results.fragment, sessionParameters);
+        }
+        storeResults(httpRequest, results.formattedQuote, results.jsonHistory);
+
+        ServletContext servletContext = httpRequest.getServletContext();
         RequestDispatcher dispatcher =
-                servletContext.getRequestDispatcher("/ReturnedResults.jsp");
+                servletContext.getRequestDispatcher(RESULTS_PAGE);
         dispatcher.forward(httpRequest, httpResponse);
 
         //Commit client information about search to database
@@ -98,31 +165,256 @@ public class StockSearchServlet extends HttpServlet {
     }
 
     /**
-     * Build a json list of historical prices
+     * Start an asynchronous search on the search executor. Whichever finishes first,
+     * the search or the timeout, dispatches to the results page.
      *
-     * @return
+     * @param httpRequest       Current request
+     * @param httpResponse      Current response
+     * @param fragmentKey       Key to cache the rendered results under, null if they are not cached
+     * @param sessionParameters Parsed search parameters
+     * @throws IOException Thrown when the busy response cannot be sent
      */
-    private String buildJsonChartData() {
-        String JSON_CHART_DATA = "";
-        //Build json list for historical chart
+    private void startAsyncSearch(HttpServletRequest httpRequest, HttpServletResponse httpResponse,
+                                  String fragmentKey, ArrayList<String> sessionParameters) throws IOException {
+
+        final AsyncContext asyncContext = httpRequest.startAsync(httpRequest, httpResponse);
+        final AtomicBoolean finished = new AtomicBoolean(false);
+        final AtomicReference<Future<?>> task = new AtomicReference<>();
+
+        asyncContext.setTimeout(REQUEST_TIMEOUT_MILLIS);
+        asyncContext.addListener(new AsyncListener() {
+            @Override
+            public void onTimeout(AsyncEvent event) {
+                Future<?> running = task.get();
+                if (running != null) {
+                    running.cancel(true);
+                }
+
+                if (finished.compareAndSet(false, true)) {
+                    storeResults(httpRequest, TIMEOUT_HTML, "null");
+                    asyncContext.dispatch(RESULTS_PAGE);
+                }
+            }
+
+            @Override
+            public void onComplete(AsyncEvent event) {
+            }
+
+            @Override
+            public void onError(AsyncEvent event) {
+                //The client is gone, nothing is dispatched. The search still finishes to be logged.
+                finished.set(true);
+                Future<?> running = task.get();
+                if (running != null) {
+                    running.cancel(true);
+                }
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+            }
+        });
+
         try {
-            if (intervalResults != null) {
-                JSON_CHART_DATA = WebUtils.jsonChartData(intervalResults);
-            } else if (intervalResults == null) {
-                JSON_CHART_DATA = "null";
+            task.set(searchExecutor.submit(() -> runAsyncSearch(asyncContext, finished, fragmentKey, sessionParameters)));
+        } catch (RejectedExecutionException e) {
+            //Executor and its queue are full, shed the request instead of queueing without bound.
+            finished.set(true);
+            httpResponse.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+                    "Too many searches in progress. Please try again.");
+            asyncContext.complete();
+        }
+    }
+
+    /**
+     * Body of an asynchronous search, run on the search executor.
+     *
+     * @param asyncContext      Context of the suspended request
+     * @param finished          Set by whichever of the search or the timeout responds first
+     * @param fragmentKey       Key to cache the rendered results under, null if they are not cached
+     * @param sessionParameters Parsed search parameters
+     */
+    private void runAsyncSearch(AsyncContext asyncContext, AtomicBoolean finished, String fragmentKey,
+                                ArrayList<String> sessionParameters) {
+        SearchResults results;
+
+        try {
+            results = search(sessionParameters);
+            cacheFragment(fragmentKey, sessionParameters, results);
+        } catch (IOException | RuntimeException e) {
+            results = new SearchResults();
+            results.formattedQuote = ERROR_HTML;
+        }
+
+        //Only the winner writes to the request, a timed out page has already been dispatched.
+        if (finished.compareAndSet(false, true)) {
+            if (results.fragment != null) {
+                writeCacheHeaders((HttpServletResponse) asyncContext.getResponse(), results.fragment, sessionParameters);
+            }
+            try {
+                storeResults(asyncContext.getRequest(), results.formattedQuote, results.jsonHistory);
+                asyncContext.dispatch(RESULTS_PAGE);
+            } catch (IllegalStateException e) {
+                //The request completed in between, for example after an IO error.
             }
-        } catch (IOException e) {
-            JSON_CHART_DATA = "null";
         }
 
-        return JSON_CHART_DATA;
+        //A timed out search is interrupted, clear the flag so the search can still be logged.
+        Thread.interrupted();
+        //Commit client information about search to database
+        commitSearchData(sessionParameters);
     }
 
     /**
-     * Clear intervalResults
+     * Build the quote and chart data for the results page.
+     *
+     * @param sessionParameters Parsed search parameters
+     * @return Results of the search
+     * @throws IOException Thrown when a quick quote cannot be built
      */
-    private void clearInterval() {
-        intervalResults = null;
+    private SearchResults search(ArrayList<String> sessionParameters) throws IOException {
+        //Results are local to this request, the servlet instance is shared by every request.
+        SearchResults results = new SearchResults();
+        //Build a stockquote from session parameters
+        String FORMATTED_HTML_QUERY = buildQuote(sessionParameters, results);
+
+        //Historical tables are kept as a fragment that the page writes straight to the response.
+        results.formattedQuote = results.table != null ? results.table : FORMATTED_HTML_QUERY;
+        results.jsonHistory = buildJsonChartData(results.series);
+
+        return results;
+    }
+
+    /**
+     * Store results in request scope to be accessed by the results page.
+     * Nothing will be done to HTML formatted results after it is cast to final string.
+     * All work is done server-side to protect data integrity.
+     * Results are dropped with the request, nothing is kept in the HttpSession.
+     *
+     * @param request        Request forwarded or dispatched to the results page
+     * @param formattedQuote HTML String or fragment to show
+     * @param jsonHistory    Chart data, "null" when there is no chart
+     */
+    private static void storeResults(ServletRequest request, Object formattedQuote, String jsonHistory) {
+        request.setAttribute("formattedQuote", formattedQuote);
+        request.setAttribute("jsonHistory", jsonHistory);
+    }
+
+    /**
+     * Cache a complete historical result, so repeat views skip fetching and rendering.
+     * Large ranges are left to stream straight to the response.
+     *
+     * @param fragmentKey       Key to cache the rendered results under, null if they are not cached
+     * @param sessionParameters Parsed search parameters
+     * @param results           Results of the search, switched to the cached rendering
+     */
+    private void cacheFragment(String fragmentKey, ArrayList<String> sessionParameters, SearchResults results) {
+        //Only fresh results are repeatable, stale data and errors are rendered every time.
+        if (fragmentKey == null || results.table == null || results.series == null
+                || results.series.size() < 1 || results.series.size() > MAX_CACHED_ROWS
+                || results.intervalResults instanceof StaleStock) {
+            return;
+        }
+
+        String html = results.table.toString();
+        long ttl = isClosedRange(sessionParameters) ? CLOSED_RANGE_TTL_MILLIS : OPEN_RANGE_TTL_MILLIS;
+        results.fragment = FRAGMENT_CACHE.put(fragmentKey, html, results.jsonHistory, ttl);
+        results.formattedQuote = HtmlFragment.of(html);
+    }
+
+    /**
+     * Send the ETag of a rendered result. Ranges that ended before today never change
+     * and may be reused for a while, ranges that reach today are revalidated every time.
+     * The ETag only covers the rendered result, not the rest of the page around it, so
+     * only the browser may keep the page and shared caches must not.
+     *
+     * @param response          Current response
+     * @param fragment          Rendered result
+     * @param sessionParameters Parsed search parameters
+     */
+    static void writeCacheHeaders(HttpServletResponse response, RenderedFragmentCache.Fragment fragment,
+                                  ArrayList<String> sessionParameters) {
+        response.setHeader("ETag", fragment.getETag());
+        response.setHeader("Cache-Control", isClosedRange(sessionParameters)
+                ? "private, max-age=" + CLOSED_RANGE_MAX_AGE_SECONDS
+                : "private, no-cache");
+    }
+
+    /**
+     * Build the normalized cache key of a historical search.
+     *
+     * @param sessionParameters Parsed search parameters
+     * @return Key of the search, null if it is not a valid historical search
+     */
+    static String fragmentKey(ArrayList<String> sessionParameters) {
+        if (sessionParameters.get(0) == null || sessionParameters.get(4) != null || sessionParameters.get(6) != null) {
+            return null;
+        }
+
+        try {
+            return sessionParameters.get(0).trim().toUpperCase() + '|'
+                    + WebUtils.stringToCalendar(sessionParameters.get(1)).getTimeInMillis() + '|'
+                    + WebUtils.stringToCalendar(sessionParameters.get(2)).getTimeInMillis() + '|'
+                    + Interval.valueOf(sessionParameters.get(3));
+        } catch (WebUtilsException | IllegalArgumentException | NullPointerException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Check whether a historical search ended before today.
+     *
+     * @param sessionParameters Parsed search parameters
+     * @return True if the range cannot change any more
+     */
+    private static boolean isClosedRange(ArrayList<String> sessionParameters) {
+        try {
+            Calendar today = Calendar.getInstance();
+            today.set(Calendar.HOUR_OF_DAY, 0);
+            today.set(Calendar.MINUTE, 0);
+            today.set(Calendar.SECOND, 0);
+            today.set(Calendar.MILLISECOND, 0);
+
+            return WebUtils.stringToCalendar(sessionParameters.get(2)).before(today);
+        } catch (WebUtilsException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Check an If-None-Match header against an ETag.
+     *
+     * @param ifNoneMatch Header value, may be null
+     * @param eTag        Quoted ETag of the current content
+     * @return True if the client already has the current content
+     */
+    static boolean matchesETag(String ifNoneMatch, String eTag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            //Weak comparison is enough for a GET.
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(eTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Build a json list of historical prices
+     *
+     * @param series Historical bars for the queried stock, null if there are none
+     * @return
+     */
+    private String buildJsonChartData(BarSeries series) {
+        //Build json list for historical chart, reduced to what the chart can show.
+        return series == null ? "null" : WebUtils.jsonChartData(ChartUtils.downsample(series, MAX_CHART_POINTS));
     }
 
     /**
@@ -134,6 +426,7 @@ public class StockSearchServlet extends HttpServlet {
      * 3 - interval
      * 4 - quickSymbol
      * 5 - userAgent
+     * 6 - quickSymbols, a comma separated list for a batch quick quote
      *
      * @param request
      * @return An ArrayList of strings containing session parameters.
@@ -147,6 +440,7 @@ public class StockSearchServlet extends HttpServlet {
         final String interval = request.getParameter(SessionDataEnum.INTERVAL_PARAMETER_KEY.getValue());
         final String quickSymbol = request.getParameter(SessionDataEnum.QUICKSYMBOL_PARAMETER_KEY.getValue());
         final String userAgent = request.getHeader(SessionDataEnum.USER_AGENT.getValue());
+        final String quickSymbols = request.getParameter(SessionDataEnum.QUICKSYMBOLS_PARAMETER_KEY.getValue());
 
         sessionParameters.add(symbol);
         sessionParameters.add(start);
@@ -154,63 +448,82 @@ public class StockSearchServlet extends HttpServlet {
         sessionParameters.add(interval);
         sessionParameters.add(quickSymbol);
         sessionParameters.add(userAgent);
+        sessionParameters.add(quickSymbols);
 
         return sessionParameters;
     }
 
     /**
      * Method to commit search data to be stored in the database.
+     * A batch quick quote commits one row per symbol. Rows are recorded in the
+     * SearchLog and written to the database in batches, off the request thread.
      *
      * @param sessionParameters
      */
     private void commitSearchData(ArrayList<String> sessionParameters) {
         Calendar calendar = Calendar.getInstance();
         Timestamp currentTimestamp = new Timestamp(calendar.getTime().getTime());
-        DatabaseService databaseService = ServiceFactory.getDatabaseServiceInstance();
+        SearchLog searchLog = ServiceFactory.getSearchLogInstance();
 
         Client client = null;
-        SearchDAO searchDAO = new SearchDAO();
+        List<String> symbols = new ArrayList<>();
+        int typeOfSearch = 1;
 
         //Check symbol for null
         if (sessionParameters.get(0) != null) {
-            searchDAO.setStockSymbol(sessionParameters.get(0).toUpperCase());
-            searchDAO.setTypeOfSearch(0);
+            symbols.add(sessionParameters.get(0).toUpperCase());
+            typeOfSearch = 0;
+            //Check batch quickSymbols for null
+        } else if (sessionParameters.get(6) != null) {
+            symbols.addAll(parseSymbolList(sessionParameters.get(6)));
             //Check quickSymbol for  null
         } else if (sessionParameters.get(4) != null) {
-            searchDAO.setStockSymbol(sessionParameters.get(4).toUpperCase());
-            searchDAO.setTypeOfSearch(1);
+            symbols.add(sessionParameters.get(4).toUpperCase());
         }
 
-
         //Parse UserAgent string
         String userAgent = sessionParameters.get(5);
         try {
             client = WebUtils.getClientData(userAgent);
 
         } catch (WebUtilsException e) {
-            //Default information in case of error
+            //Default information is filled in below.
+        }
+
+        for (String symbol : symbols) {
+            //A symbol wider than the column cannot be stored and would fail the whole batch it is written in.
+            if (symbol.isEmpty() || symbol.length() > SearchDAO.MAX_STOCK_SYMBOL_LENGTH) {
+                continue;
+            }
+
+            SearchDAO searchDAO = new SearchDAO();
+            searchDAO.setStockSymbol(symbol);
+            searchDAO.setTypeOfSearch(typeOfSearch);
+
+            //Build DAO object
             searchDAO.setTimeStamp(currentTimestamp);
-            searchDAO.setDevice("Unknown");
-            searchDAO.setFamily("Unknown");
-            searchDAO.setFamilyVersion("Unknown");
-            searchDAO.setOs("Unknown");
-            searchDAO.setOsVersion("Unknown");
             searchDAO.setUserId(0);
-        }
 
-        //Build DAO object
-        searchDAO.setTimeStamp(currentTimestamp);
-        searchDAO.setDevice(client.device.family);
-        searchDAO.setFamily(client.userAgent.family);
-        searchDAO.setFamilyVersion(client.userAgent.major + "_" + client.userAgent.minor +
-                "_" + client.userAgent.patch);
-        searchDAO.setOs(client.os.family);
-        searchDAO.setOsVersion(client.os.major + "_" + client.os.minor +
-                "_" + client.os.patch);
-        searchDAO.setUserId(0);
-
-        //Commit Object
-        databaseService.commitObject(searchDAO, "hibernate.cfg.xml");
+            if (client != null) {
+                searchDAO.setDevice(client.device.family);
+                searchDAO.setFamily(client.userAgent.family);
+                searchDAO.setFamilyVersion(client.userAgent.major + "_" + client.userAgent.minor +
+                        "_" + client.userAgent.patch);
+                searchDAO.setOs(client.os.family);
+                searchDAO.setOsVersion(client.os.major + "_" + client.os.minor +
+                        "_" + client.os.patch);
+            } else {
+                //Default information in case of error
+                searchDAO.setDevice("Unknown");
+                searchDAO.setFamily("Unknown");
+                searchDAO.setFamilyVersion("Unknown");
+                searchDAO.setOs("Unknown");
+                searchDAO.setOsVersion("Unknown");
+            }
+
+            //Recorded for the background writer, a full log drops the search rather than wait.
+            searchLog.offer(searchDAO);
+        }
     }
 
     /**
@@ -218,27 +531,41 @@ public class StockSearchServlet extends HttpServlet {
      * session parameters 'symbol' or 'quicksymbol'.
      *
      * @param sessionParameters
+     * @param results           Holder for the historical data of this request
      * @return HTML String
      * @throws IOException
      */
-    private String buildQuote(ArrayList<String> sessionParameters) throws IOException {
+    private String buildQuote(ArrayList<String> sessionParameters, SearchResults results) throws IOException {
         //String to return results with
         String FORMATTED_HTML_QUERY = "";
 
         //Stock object
         Stock stock = null;
 
+        //If quickSymbols isn't null, return a batch of quick quotes.
+        if (sessionParameters.get(6) != null) {
+            FORMATTED_HTML_QUERY = buildBatchQuote(parseSymbolList(sessionParameters.get(6)));
+        }
         //If quicksymbol isn't null, return a quick quote.
-        if (sessionParameters.get(4) != null) {
+        else if (sessionParameters.get(4) != null) {
             int flag = 1;
 
-            try {
-                stock = YahooFinance.get(sessionParameters.get(4));
-                if (!stock.isValid()) {
+            //Company names and other text that can't be a symbol never go upstream.
+            if (!WebUtils.isSymbolSyntax(sessionParameters.get(4))) {
+                flag = 0;
+            } else {
+                try {
+                    //Concurrent requests for the same symbol share one upstream call.
+                    stock = ServiceFactory.getStockServiceInstance().getQuickQuote(sessionParameters.get(4));
+                    if (stock == null || !stock.isValid()) {
+                        flag = 0;
+                    }
+                } catch (StockServiceException e) {
+                    if (!(e.getCause() instanceof FileNotFoundException)) {
+                        return ERROR_HTML;
+                    }
                     flag = 0;
                 }
-            } catch (FileNotFoundException e) {
-                flag = 0;
             }
 
             FORMATTED_HTML_QUERY = checkFlag(flag, stock, sessionParameters);
@@ -247,9 +574,11 @@ public class StockSearchServlet extends HttpServlet {
         else if (sessionParameters.get(0) != null) {
             try {
                 //Get the goods from Yahoo
-                setIntervalResults(sessionParameters);
-                //Finalized HTML formatted String to hold dynamic HTML.
-                FORMATTED_HTML_QUERY = WebUtils.buildTable(intervalResults, 2);
+                results.intervalResults = getIntervalResults(sessionParameters);
+                //Convert once, the table and the chart both render from the series.
+                results.series = toSeries(results.intervalResults);
+                //Rows are rendered when the page is written, not held here as one String.
+                results.table = WebUtils.historicalTable(results.intervalResults, results.series);
 
             } catch (StockServiceException | WebUtilsException e) {
                 FORMATTED_HTML_QUERY = ERROR_HTML;
@@ -261,13 +590,113 @@ public class StockSearchServlet extends HttpServlet {
     }
 
     /**
-     * Method to set Stock results for a class scope variable.
+     * Build quick quote cards for several symbols from a single upstream call.
+     * Symbols that could not be found get an invalid symbol message in their place.
+     *
+     * @param symbols Symbols to quote
+     * @return HTML String
+     */
+    private String buildBatchQuote(List<String> symbols) {
+        if (symbols.isEmpty()) {
+            return WebUtils.buildTable(null, 1);
+        }
+
+        Map<String, Stock> stocks;
+        try {
+            stocks = ServiceFactory.getStockServiceInstance().getQuickQuotes(symbols);
+        } catch (StockServiceException e) {
+            return ERROR_HTML;
+        }
+
+        StringBuilder builder = new StringBuilder();
+        for (String symbol : symbols) {
+            Stock stock = stocks.get(symbol);
+
+            if (stock == null || !stock.isValid()) {
+                builder.append(invalidSymbolHtml(symbol));
+            } else {
+                builder.append(WebUtils.buildTable(stock, 1));
+            }
+        }
+
+        return builder.toString();
+    }
+
+    /**
+     * Split a comma or space separated list of symbols. Duplicates are dropped
+     * and the list is capped at stocksearch.batch.maxSymbols.
+     *
+     * @param rawSymbols Raw form data
+     * @return Upper case symbols in the order given
+     */
+    private List<String> parseSymbolList(String rawSymbols) {
+        LinkedHashSet<String> symbols = new LinkedHashSet<>();
+
+        for (String symbol : rawSymbols.split("[,\\s]+")) {
+            if (!symbol.isEmpty() && symbols.size() < MAX_BATCH_SYMBOLS) {
+                symbols.add(symbol.toUpperCase());
+            }
+        }
+
+        return new ArrayList<>(symbols);
+    }
+
+    /**
+     * HTML message for a symbol that could not be found. Users often type a company name
+     * or a misspelling, so the closest listed companies are offered as quick quote links.
+     *
+     * @param symbol Symbol searched for
+     * @return HTML String
+     */
+    private String invalidSymbolHtml(String symbol) {
+        StringBuilder html = new StringBuilder("<tr><td>")
+                .append(WebUtils.escapeHtml(symbol.toUpperCase()))
+                .append("  is an invalid stock symbol.");
+
+        List<SymbolListing> suggestions = ServiceFactory.getSymbolIndexInstance().search(symbol, MAX_SUGGESTIONS);
+        if (!suggestions.isEmpty()) {
+            html.append(" Did you mean");
+            for (int i = 0; i < suggestions.size(); i++) {
+                SymbolListing suggestion = suggestions.get(i);
+
+                html.append(i == 0 ? " " : ", ")
+                        .append("<a href=\"StockSearchServlet?quickSymbol=")
+                        .append(WebUtils.escapeHtml(suggestion.getSymbol())).append("\">")
+                        .append(WebUtils.escapeHtml(suggestion.toString())).append("</a>");
+            }
+            html.append('?');
+        }
+
+        return html.append("</td></tr>").toString();
+    }
+
+    /**
+     * Convert the history of a Stock into a series.
+     *
+     * @param stock Historical data, may be null
+     * @return Series of the history, or null if there is no history
+     */
+    private BarSeries toSeries(Stock stock) {
+        if (stock == null) {
+            return null;
+        }
+
+        try {
+            return BarSeries.from(stock);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Method to retrieve historical Stock results for the search.
      *
      * @param sessionParameters
+     * @return Stock with history for the requested range
      * @throws WebUtilsException
      * @throws StockServiceException
      */
-    private void setIntervalResults(ArrayList<String> sessionParameters) throws WebUtilsException, StockServiceException {
+    private Stock getIntervalResults(ArrayList<String> sessionParameters) throws WebUtilsException, StockServiceException {
 
         //Start
         Calendar calendarStart = WebUtils.stringToCalendar(sessionParameters.get(1));
@@ -281,7 +710,7 @@ public class StockSearchServlet extends HttpServlet {
         StockService stockService = ServiceFactory.getStockServiceInstance();
 
         //Get the goods from Yahoo
-        intervalResults = stockService.getQuote(sessionParameters.get(0), calendarStart, calendarEnd, finalInterval);
+        return stockService.getQuote(sessionParameters.get(0), calendarStart, calendarEnd, finalInterval);
 
     }
 
@@ -296,7 +725,7 @@ public class StockSearchServlet extends HttpServlet {
      */
     private String checkFlag(int flag, Stock stock, ArrayList<String> sessionParameters) {
         String FORMATTED_HTML_QUERY;
-        final String INVALID_QUERY = "<tr><td>" + sessionParameters.get(4).toUpperCase() + "  is an invalid stock symbol.</td></tr>";
+        final String INVALID_QUERY = invalidSymbolHtml(sessionParameters.get(4));
 
         /*
                Switch statement to let the user know they entered an invalid query,
@@ -320,6 +749,18 @@ public class StockSearchServlet extends HttpServlet {
         return FORMATTED_HTML_QUERY;
     }
 
+    /**
+     * Per-request holder for search results.
+     */
+    private static class SearchResults {
+        private Stock intervalResults; //Hold historical data for queried stock
+        private BarSeries series; //Historical bars of intervalResults
+        private HtmlFragment table; //Historical table, written to the page as it renders
+        private Object formattedQuote; //HTML String or fragment for the results page
+        private String jsonHistory = "null"; //Chart data for the results page
+        private RenderedFragmentCache.Fragment fragment; //Cached rendering with its ETag, if cached
+    }
+
     /**
      * Override inherited equals method.
      *
@@ -0,0 +1,127 @@
+/**
+ * Copyright 2018 Peter Kinson
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ */
+
+
+package com.pkin.stocksearch.utilities;
+
+import com.pkin.stocksearch.model.BarSeries;
+
+/**
+ * Utility methods to prepare historical data for the chart.
+ */
+public class ChartUtils {
+
+    private ChartUtils() {
+        //Hiding constructor.
+    }
+
+    /**
+     * Reduce a series to at most maxPoints bars for charting, keeping the shape of the
+     * closing price line. Uses Largest-Triangle-Three-Buckets: the first and last bars are
+     * always kept and every bucket in between contributes the bar that forms the largest
+     * triangle with the bar picked from the previous bucket and the average of the next.
+     * <p>
+     * Bars without a date or close are left out. A series that already fits is returned as is.
+     *
+     * @param series    Bars to reduce
+     * @param maxPoints Maximum number of bars to return, values below 3 disable downsampling
+     * @return A series of at most maxPoints bars
+     */
+    public static BarSeries downsample(BarSeries series, int maxPoints) {
+        int[] valid = chartableIndices(series);
+
+        if (maxPoints < 3 || valid.length <= maxPoints) {
+            return valid.length == series.size() ? series : series.select(valid);
+        }
+
+        int[] selected = new int[maxPoints];
+        int count = 0;
+        //Buckets between the fixed first and last points.
+        double bucketSize = (double) (valid.length - 2) / (maxPoints - 2);
+        int previous = 0;
+
+        selected[count++] = valid[0];
+
+        for (int bucket = 0; bucket < maxPoints - 2; bucket++) {
+            int start = (int) (bucket * bucketSize) + 1;
+            int end = (int) ((bucket + 1) * bucketSize) + 1;
+
+            //Average of the next bucket, the last point stands in for the final bucket.
+            int nextStart = end;
+            int nextEnd = Math.min((int) ((bucket + 2) * bucketSize) + 1, valid.length);
+            if (nextStart >= nextEnd) {
+                nextStart = valid.length - 1;
+                nextEnd = valid.length;
+            }
+
+            double averageX = 0;
+            double averageY = 0;
+            for (int i = nextStart; i < nextEnd; i++) {
+                averageX += series.getDate(valid[i]);
+                averageY += series.getClose(valid[i]);
+            }
+            averageX /= nextEnd - nextStart;
+            averageY /= nextEnd - nextStart;
+
+            double previousX = series.getDate(valid[previous]);
+            double previousY = series.getClose(valid[previous]);
+            double largestArea = -1;
+            int largest = start;
+
+            for (int i = start; i < end; i++) {
+                double x = series.getDate(valid[i]);
+                double y = series.getClose(valid[i]);
+                //Twice the triangle area, the factor does not change which is largest.
+                double area = Math.abs((previousX - averageX) * (y - previousY) - (previousX - x) * (averageY - previousY));
+
+                if (area > largestArea) {
+                    largestArea = area;
+                    largest = i;
+                }
+            }
+
+            selected[count++] = valid[largest];
+            previous = largest;
+        }
+
+        selected[count] = valid[valid.length - 1];
+
+        return series.select(selected);
+    }
+
+    /**
+     * Return the indices of bars that have both a date and a close.
+     */
+    private static int[] chartableIndices(BarSeries series) {
+        int[] indices = new int[series.size()];
+        int count = 0;
+
+        for (int i = 0; i < series.size(); i++) {
+            if (series.getDate(i) != BarSeries.MISSING && series.getClose(i) != BarSeries.MISSING) {
+                indices[count++] = i;
+            }
+        }
+
+        if (count == indices.length) {
+            return indices;
+        }
+
+        int[] trimmed = new int[count];
+        System.arraycopy(indices, 0, trimmed, 0, count);
+        return trimmed;
+    }
+}
@@ -0,0 +1,122 @@
+/**
+ * Copyright 2018 Peter Kinson
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ */
+
+package com.pkin.stocksearch.utilities;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * Utility class to read application settings.
+ * <p>
+ * Settings are read from the stocksearch.properties file on the classpath.
+ * A JVM system property with the same key takes precedence over the file,
+ * so a value can be changed per deployment with -Dkey=value.
+ */
+public class ConfigUtils {
+
+    private static final String PROPERTIES_FILE = "stocksearch.properties";
+    private static Properties properties;
+
+    private ConfigUtils() {
+        //Hiding constructor.
+    }
+
+    /**
+     * Return a setting as a String.
+     *
+     * @param key          Name of the setting
+     * @param defaultValue Value to return when the setting is missing
+     * @return The setting value or the default
+     */
+    public static String getString(String key, String defaultValue) {
+        String value = System.getProperty(key);
+
+        if (value == null) {
+            value = getProperties().getProperty(key);
+        }
+
+        return value == null || value.trim().isEmpty() ? defaultValue : value.trim();
+    }
+
+    /**
+     * Return a setting as an int. Falls back to the default if the value cannot be parsed.
+     *
+     * @param key          Name of the setting
+     * @param defaultValue Value to return when the setting is missing or malformed
+     * @return The setting value or the default
+     */
+    public static int getInt(String key, int defaultValue) {
+        try {
+            return Integer.parseInt(getString(key, String.valueOf(defaultValue)));
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Return a setting as a long. Falls back to the default if the value cannot be parsed.
+     *
+     * @param key          Name of the setting
+     * @param defaultValue Value to return when the setting is missing or malformed
+     * @return The setting value or the default
+     */
+    public static long getLong(String key, long defaultValue) {
+        try {
+            return Long.parseLong(getString(key, String.valueOf(defaultValue)));
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Return a setting as a boolean.
+     *
+     * @param key          Name of the setting
+     * @param defaultValue Value to return when the setting is missing
+     * @return The setting value or the default
+     */
+    public static boolean getBoolean(String key, boolean defaultValue) {
+        return Boolean.parseBoolean(getString(key, String.valueOf(defaultValue)));
+    }
+
+    /**
+     * Load the properties file once and return it.
+     *
+     * @return Properties read from the classpath. Empty if the file is missing.
+     */
+    private static synchronized Properties getProperties() {
+
+        //Singleton pattern
+        if (properties == null) {
+            Properties loaded = new Properties();
+
+            try (InputStream stream = ConfigUtils.class.getClassLoader().getResourceAsStream(PROPERTIES_FILE)) {
+                if (stream != null) {
+                    loaded.load(stream);
+                }
+            } catch (IOException e) {
+                //Run on defaults if the file cannot be read.
+            }
+
+            properties = loaded;
+        }
+
+        return properties;
+    }
+}
@@ -0,0 +1,100 @@
+/**
+ * Copyright 2018 Peter Kinson
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ */
+
+package com.pkin.stocksearch.utilities;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Utility methods to build the executors used for background and request work.
+ */
+public class ExecutorUtils {
+
+    private ExecutorUtils() {
+        //Hiding constructor.
+    }
+
+    /**
+     * Build a bounded executor. At most maxThreads tasks run at once and at most
+     * queueSize wait for a thread. Anything beyond that is rejected with a
+     * RejectedExecutionException so callers can shed load.
+     * <p>
+     * Threads are virtual threads when the JDK supports them, so tasks blocked on
+     * upstream I/O are cheap. Otherwise daemon platform threads are used.
+     *
+     * @param name       Prefix for thread names
+     * @param maxThreads Maximum number of tasks running at once
+     * @param queueSize  Maximum number of tasks waiting for a thread
+     * @return A bounded ExecutorService
+     */
+    public static ExecutorService newBoundedExecutor(String name, int maxThreads, int queueSize) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(maxThreads, maxThreads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueSize)), newThreadFactory(name));
+        executor.allowCoreThreadTimeOut(true);
+
+        return executor;
+    }
+
+    /**
+     * Build a thread factory that creates virtual threads when available,
+     * or daemon platform threads otherwise.
+     *
+     * @param name Prefix for thread names
+     * @return A ThreadFactory
+     */
+    public static ThreadFactory newThreadFactory(String name) {
+        ThreadFactory virtualFactory = virtualThreadFactory(name);
+
+        if (virtualFactory != null) {
+            return virtualFactory;
+        }
+
+        AtomicLong counter = new AtomicLong();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Thread.ofVirtual().name(name + "-", 1).factory() looked up by reflection,
+     * since the project still compiles for Java 8.
+     *
+     * @return The virtual thread factory, or null if the JDK has no virtual threads
+     */
+    private static ThreadFactory virtualThreadFactory(String name) {
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+
+            Method nameMethod = builderClass.getMethod("name", String.class, long.class);
+            builder = nameMethod.invoke(builder, name + "-", 1L);
+
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            //Java 8 through 20, or virtual threads still in preview.
+            return null;
+        }
+    }
+}
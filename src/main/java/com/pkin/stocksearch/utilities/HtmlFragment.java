@@ -0,0 +1,58 @@
+/**
+ * Copyright 2018 Peter Kinson
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ */
+
+package com.pkin.stocksearch.utilities;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Piece of rendered HTML that writes itself to the response.
+ * <p>
+ * Large results like historical tables are written straight to the page Writer
+ * as they are rendered, so they never need to be held as one String.
+ */
+public interface HtmlFragment {
+
+    /**
+     * Write the HTML to a Writer.
+     *
+     * @param out Target, usually the page Writer
+     * @throws IOException Thrown if the Writer fails
+     */
+    void writeTo(Writer out) throws IOException;
+
+    /**
+     * Wrap HTML that has already been rendered.
+     *
+     * @param html Rendered HTML
+     * @return Fragment writing the given HTML
+     */
+    static HtmlFragment of(String html) {
+        return new HtmlFragment() {
+            @Override
+            public void writeTo(Writer out) throws IOException {
+                out.write(html);
+            }
+
+            @Override
+            public String toString() {
+                return html;
+            }
+        };
+    }
+}
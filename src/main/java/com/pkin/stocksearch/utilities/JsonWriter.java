@@ -0,0 +1,253 @@
+/**
+ * Copyright 2018 Peter Kinson
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ */
+
+package com.pkin.stocksearch.utilities;
+
+import com.pkin.stocksearch.model.BarSeries;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+
+/**
+ * Minimal streaming JSON encoder.
+ * <p>
+ * Tokens are written straight to the underlying Writer as they are added, so a
+ * document of any length is never held in memory. Numbers are written from longs
+ * without boxing, and scaled BarSeries prices without creating a BigDecimal.
+ * Commas are tracked per nesting level, callers only say what comes next.
+ */
+public class JsonWriter {
+
+    private static final int MAX_DEPTH = 32;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final Writer out;
+    //Whether the container at each level already has an element, so the next one needs a comma.
+    private final boolean[] hasElement = new boolean[MAX_DEPTH];
+    private int depth = 0;
+    //A name was just written, the next value belongs to it.
+    private boolean afterName = false;
+
+    /**
+     * @param out Target, usually the response Writer
+     */
+    public JsonWriter(Writer out) {
+        this.out = out;
+    }
+
+    public JsonWriter beginObject() throws IOException {
+        return open('{');
+    }
+
+    public JsonWriter endObject() throws IOException {
+        return close('}');
+    }
+
+    public JsonWriter beginArray() throws IOException {
+        return open('[');
+    }
+
+    public JsonWriter endArray() throws IOException {
+        return close(']');
+    }
+
+    /**
+     * Write the name of the next member of an object.
+     *
+     * @param name Member name
+     * @return This writer
+     * @throws IOException Thrown if the Writer fails
+     */
+    public JsonWriter name(String name) throws IOException {
+        separate();
+        writeString(name);
+        out.write(':');
+        afterName = true;
+        return this;
+    }
+
+    public JsonWriter value(String value) throws IOException {
+        if (value == null) {
+            return nullValue();
+        }
+        separate();
+        writeString(value);
+        return this;
+    }
+
+    public JsonWriter value(long value) throws IOException {
+        separate();
+        out.write(Long.toString(value));
+        return this;
+    }
+
+    public JsonWriter value(Long value) throws IOException {
+        return value == null ? nullValue() : value(value.longValue());
+    }
+
+    public JsonWriter value(boolean value) throws IOException {
+        separate();
+        out.write(value ? "true" : "false");
+        return this;
+    }
+
+    public JsonWriter value(BigDecimal value) throws IOException {
+        if (value == null) {
+            return nullValue();
+        }
+        separate();
+        out.write(value.toPlainString());
+        return this;
+    }
+
+    public JsonWriter nullValue() throws IOException {
+        separate();
+        out.write("null");
+        return this;
+    }
+
+    /**
+     * Write a price scaled by BarSeries.PRICE_SCALE as a plain number with trailing zeros removed.
+     *
+     * @param scaled Scaled price, or BarSeries.MISSING for null
+     * @return This writer
+     * @throws IOException Thrown if the Writer fails
+     */
+    public JsonWriter scaledValue(long scaled) throws IOException {
+        if (scaled == BarSeries.MISSING) {
+            return nullValue();
+        }
+        separate();
+
+        if (scaled < 0) {
+            out.write('-');
+            scaled = -scaled;
+        }
+
+        out.write(Long.toString(scaled / 10000));
+        long fraction = scaled % 10000;
+        if (fraction != 0) {
+            int digits = BarSeries.PRICE_SCALE;
+            while (fraction % 10 == 0) {
+                fraction /= 10;
+                digits--;
+            }
+
+            String text = Long.toString(fraction);
+            out.write('.');
+            for (int i = text.length(); i < digits; i++) {
+                out.write('0');
+            }
+            out.write(text);
+        }
+        return this;
+    }
+
+    /**
+     * Flush the underlying Writer.
+     *
+     * @throws IOException Thrown if the Writer fails
+     */
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    private JsonWriter open(char bracket) throws IOException {
+        if (depth == MAX_DEPTH) {
+            throw new IllegalStateException("JSON nested deeper than " + MAX_DEPTH + " levels.");
+        }
+        separate();
+        out.write(bracket);
+        hasElement[depth++] = false;
+        return this;
+    }
+
+    private JsonWriter close(char bracket) throws IOException {
+        if (depth == 0) {
+            throw new IllegalStateException("No open JSON object or array to close.");
+        }
+        depth--;
+        out.write(bracket);
+        return this;
+    }
+
+    /**
+     * Write the comma before an element, unless it is the first in its container
+     * or the value of a name that was just written.
+     */
+    private void separate() throws IOException {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+        if (depth > 0) {
+            if (hasElement[depth - 1]) {
+                out.write(',');
+            }
+            hasElement[depth - 1] = true;
+        }
+    }
+
+    /**
+     * Write a quoted string, escaping what JSON requires and the characters that
+     * would let a value close a script block.
+     */
+    private void writeString(String value) throws IOException {
+        out.write('"');
+
+        int start = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+
+            if (c >= 0x20 && c != '"' && c != '\\' && c != '<' && c != '>' && c != '&'
+                    && c != '\u2028' && c != '\u2029') {
+                continue;
+            }
+
+            out.write(value, start, i - start);
+            switch (c) {
+                case '"':
+                    out.write("\\\"");
+                    break;
+                case '\\':
+                    out.write("\\\\");
+                    break;
+                case '\n':
+                    out.write("\\n");
+                    break;
+                case '\r':
+                    out.write("\\r");
+                    break;
+                case '\t':
+                    out.write("\\t");
+                    break;
+                default:
+                    out.write("\\u");
+                    out.write(HEX[(c >> 12) & 0xF]);
+                    out.write(HEX[(c >> 8) & 0xF]);
+                    out.write(HEX[(c >> 4) & 0xF]);
+                    out.write(HEX[c & 0xF]);
+                    break;
+            }
+            start = i + 1;
+        }
+
+        out.write(value, start, value.length() - start);
+        out.write('"');
+    }
+}
@@ -0,0 +1,66 @@
+/**
+ * Copyright 2018 Peter Kinson
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ */
+
+package com.pkin.stocksearch.utilities;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+/**
+ * Regular session hours of the US market. Holidays are not known here.
+ */
+public class MarketHours {
+
+    public static final ZoneId ZONE = ZoneId.of("America/New_York");
+    public static final LocalTime OPEN = LocalTime.of(9, 30);
+    public static final LocalTime CLOSE = LocalTime.of(16, 0);
+
+    private MarketHours() {
+        //Hiding constructor.
+    }
+
+    /**
+     * Check whether the US market is in its regular session.
+     *
+     * @param now Current time, in any zone
+     * @return True between 9:30 and 16:00 New York time on weekdays
+     */
+    public static boolean isOpen(ZonedDateTime now) {
+        ZonedDateTime market = now.withZoneSameInstant(ZONE);
+        DayOfWeek day = market.getDayOfWeek();
+        LocalTime time = market.toLocalTime();
+
+        return day != DayOfWeek.SATURDAY && day != DayOfWeek.SUNDAY
+                && !time.isBefore(OPEN) && time.isBefore(CLOSE);
+    }
+
+    /**
+     * Return the last New York trading day whose session has closed, so its bars are final.
+     * Before 16:00 New York time that is the previous day, wherever the server is.
+     *
+     * @param now Current time, in any zone
+     * @return New York date on or before which bars no longer change
+     */
+    public static LocalDate lastClosedDay(ZonedDateTime now) {
+        ZonedDateTime market = now.withZoneSameInstant(ZONE);
+
+        return market.toLocalTime().isBefore(CLOSE) ? market.toLocalDate().minusDays(1) : market.toLocalDate();
+    }
+}
@@ -17,6 +17,8 @@
 
 package com.pkin.stocksearch.utilities;
 
+import com.pkin.stocksearch.model.BarSeries;
+import com.pkin.stocksearch.model.StaleStock;
 import com.pkin.stocksearch.utilities.exceptions.WebUtilsException;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
@@ -25,20 +27,25 @@ import ua_parser.Parser;
 import ua_parser.UserAgent;
 import ua_parser.UserAgentParser;
 import yahoofinance.Stock;
-import yahoofinance.histquotes.HistoricalQuote;
+import yahoofinance.quotes.stock.StockQuote;
 
 import javax.servlet.http.HttpServlet;
 import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.math.BigDecimal;
-import java.math.RoundingMode;
+import java.text.DecimalFormatSymbols;
 import java.text.SimpleDateFormat;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
-import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
-import java.util.List;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
 
 public class WebUtils extends HttpServlet {
 
@@ -59,6 +66,84 @@ public class WebUtils extends HttpServlet {
     //Final string holding html tags to close table.
     private final static String CLOSING_TAGS = "</tbody></table>\n</div> <!--End Card-Body-->";
     private final static String BREAK = "<br>";
+    //Rows formatted before they are handed to the Writer.
+    private final static int ROWS_PER_CHUNK = 64;
+    //Characters a ticker symbol may contain.
+    private final static Pattern SYMBOL_PATTERN = Pattern.compile("[A-Za-z0-9.^=\\-]{1,12}");
+    //Longest user agent kept in the cache, longer ones are parsed every time.
+    private final static int MAX_USER_AGENT_LENGTH = 512;
+    //Most parsed user agents kept. Real traffic has few distinct ones.
+    private final static int MAX_USER_AGENTS = ConfigUtils.getInt("stocksearch.useragents.maxEntries", 1000);
+    //Parsed user agents, read without locking on every search. A full cache drops an arbitrary entry.
+    private final static ConcurrentHashMap<String, Client> USER_AGENTS = new ConcurrentHashMap<>();
+    //Shared parser, loading and compiling its patterns costs far more than a parse.
+    private static volatile Parser userAgentParser;
+
+    /**
+     * Check that a symbol has the shape of a ticker, before it is used in a request
+     * upstream or echoed back to a client.
+     *
+     * @param symbol Symbol supplied by the user
+     * @return True if the symbol is 1 to 12 letters, digits or . ^ = -
+     */
+    public static boolean isSymbolSyntax(String symbol) {
+        return symbol != null && SYMBOL_PATTERN.matcher(symbol.trim()).matches();
+    }
+
+    /**
+     * Return the day's change in percent, or null when the quote cannot support one.
+     * StockQuote.getChangeInPercent reports 0 rather than null when the change or the
+     * previous close is missing, which reads as an unchanged price.
+     *
+     * @param quote Quote of a stock
+     * @return Change in percent, null if the change or previous close is missing
+     */
+    public static BigDecimal getChangeInPercent(StockQuote quote) {
+        if (quote == null || quote.getChange() == null || quote.getPreviousClose() == null) {
+            return null;
+        }
+        return quote.getChangeInPercent();
+    }
+
+    /**
+     * Escape text for use in HTML content or a quoted attribute value.
+     *
+     * @param text Text to escape
+     * @return Text with &amp; &lt; &gt; &quot; and &#39; escaped, empty for null
+     */
+    public static String escapeHtml(String text) {
+        if (text == null) {
+            return "";
+        }
+
+        StringBuilder escaped = null;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            String replacement = null;
+            if (c == '&') {
+                replacement = "&amp;";
+            } else if (c == '<') {
+                replacement = "&lt;";
+            } else if (c == '>') {
+                replacement = "&gt;";
+            } else if (c == '"') {
+                replacement = "&quot;";
+            } else if (c == '\'') {
+                replacement = "&#39;";
+            }
+
+            if (replacement != null) {
+                if (escaped == null) {
+                    escaped = new StringBuilder(text.length() + 16).append(text, 0, i);
+                }
+                escaped.append(replacement);
+            } else if (escaped != null) {
+                escaped.append(c);
+            }
+        }
+
+        return escaped == null ? text : escaped.toString();
+    }
 
     /**
      * Utility method to convert a string representation of a date
@@ -142,11 +227,29 @@ public class WebUtils extends HttpServlet {
             }
         }
 
+        //Let the user know the quote service is down and this is older data.
+        if (data instanceof StaleStock) {
+            toPrintLocal = staleNotice((StaleStock) data) + toPrintLocal;
+        }
+
         toPrint = toPrintLocal;
         return toPrint;
 
     }
 
+    /**
+     * Build the notice shown above data served while upstream is unavailable.
+     *
+     * @param stock Stale stock
+     * @return HTML notice with the time the data was fetched
+     */
+    private static String staleNotice(StaleStock stock) {
+        SimpleDateFormat format = new SimpleDateFormat("MM/dd/yyyy hh:mm a");
+
+        return "<div class=\"alert alert-warning\">The quote service is currently unavailable. " +
+                "Showing data last updated " + format.format(new Date(stock.getFetchedAt())) + ".</div>";
+    }
+
     /**
      * Utility method to build an HTML table for a quick quote.  Method will return
      * an HTML formatted error, "No results found", string if list is null.
@@ -203,6 +306,29 @@ public class WebUtils extends HttpServlet {
     }
 
 
+    /**
+     * Build the historical table from a series that was already converted from the
+     * provider result, so the caller can reuse it for the chart.
+     *
+     * @param stock  Stock with name and exchange details
+     * @param series Bars to render, null if the history could not be retrieved
+     * @return final String representing the dynamic HTML.
+     */
+    public static String buildTable(Stock stock, BarSeries series) {
+        if (stock == null) {
+            return NO_RESULTS;
+        }
+
+        String table = buildHistoricalTable(stock, series);
+
+        //Let the user know the quote service is down and this is older data.
+        if (stock instanceof StaleStock) {
+            table = staleNotice((StaleStock) stock) + table;
+        }
+
+        return table;
+    }
+
     /**
      * Method to build the main body for a historical quote query.
      * The dynamic results are recursively built into the body
@@ -212,15 +338,112 @@ public class WebUtils extends HttpServlet {
      * @return Returns a string with the fully formed html table.
      */
     private static String buildHistoricalTable(Stock stock) {
+        BarSeries series;
+
+        //Retrieve history from stock arg
+        try {
+            series = BarSeries.from(stock);
+        } catch (IOException e) {
+            series = null;
+        }
+
+        return buildHistoricalTable(stock, series);
+    }
+
+    /**
+     * Build the historical table from a series. Prices are formatted straight from the
+     * scaled longs, no BigDecimal or Calendar is created per bar.
+     *
+     * @param stock  Yahoo-Finance API object, type Stock.
+     * @param series Bars to render, null if the history could not be retrieved
+     * @return Returns a string with the fully formed html table.
+     */
+    private static String buildHistoricalTable(Stock stock, BarSeries series) {
+        StringWriter writer = new StringWriter(series == null ? 256 : 512 + series.size() * 160);
+
+        try {
+            writeHistoricalTable(writer, stock, series);
+        } catch (IOException e) {
+            //StringWriter never throws.
+            return ERROR_MESSAGE;
+        }
+
+        return writer.toString();
+    }
+
+    /**
+     * Return a fragment that renders the historical table straight to a Writer when
+     * the page is written, instead of building the whole table up front.
+     *
+     * @param stock  Stock with name and exchange details
+     * @param series Bars to render, null if the history could not be retrieved
+     * @return Fragment to write into the response
+     */
+    public static HtmlFragment historicalTable(Stock stock, BarSeries series) {
+        if (stock == null) {
+            return HtmlFragment.of(NO_RESULTS);
+        }
+
+        return new HtmlFragment() {
+            @Override
+            public void writeTo(Writer out) throws IOException {
+                //Let the user know the quote service is down and this is older data.
+                if (stock instanceof StaleStock) {
+                    out.write(staleNotice((StaleStock) stock));
+                }
+                writeHistoricalTable(out, stock, series);
+            }
+
+            @Override
+            public String toString() {
+                return buildTable(stock, series);
+            }
+        };
+    }
+
+    /**
+     * Write the historical table to a Writer. Rows are built into a small buffer that is
+     * handed to the Writer every ROWS_PER_CHUNK rows, so memory does not grow with the
+     * length of the range and a servlet Writer can send the first rows right away.
+     *
+     * @param out    Target, usually the response Writer
+     * @param stock  Yahoo-Finance API object, type Stock.
+     * @param series Bars to render, null if the history could not be retrieved
+     * @throws IOException Thrown if the Writer fails
+     */
+    public static void writeHistoricalTable(Writer out, Stock stock, BarSeries series) throws IOException {
 
-        //Final string to return content with
-        final String table;
-        //Local string to handle dynamic content.
-        String toPrintLocal = "";
-        //Local list of HistoricalQuotes
-        List<HistoricalQuote> historicalQuote = new ArrayList<>();
         //Flag for error
-        int flag = 0;
+        int flag = series == null ? 1 : 0;
+
+        if (series == null || series.size() < 1) {
+            //Check for an IOException being thrown with the next switch
+            switch (flag) {
+                //There was no error, but the series didn't have any results. Return no results.
+                case (0): {
+                    out.write(NO_RESULTS);
+                    break;
+                }
+                //There was an IOException, return error message.
+                case (1): {
+                    out.write(ERROR_MESSAGE);
+                    break;
+                }
+                default: {
+                    out.write(ERROR_MESSAGE);
+                    break;
+                }
+            }
+            return;
+        }
+
+        //Rows can't be taken back once written, so check the dates before anything goes out.
+        for (int i = 0; i < series.size(); i++) {
+            if (series.getDate(i) == BarSeries.MISSING) {
+                out.write("<tr><td>There was an error retrieving historical data.</td></tr>" + ERROR_TABLE);
+                return;
+            }
+        }
 
         final String STOCK_NAME_HEADER =
                 "<div class=\"card card-header\">" +
@@ -238,129 +461,205 @@ public class WebUtils extends HttpServlet {
                         "</thead>" +
                         "<tbody>";
 
-        //Build the user's results table.
-        SimpleDateFormat usDateFormat = new SimpleDateFormat("MM/dd/yyyy");
-        //Using builder since there could be a lot of string concatenation
-        StringBuilder builder = new StringBuilder();
-
-        //Create header for table
-        builder.append(HISTORICAL_TABLE_HEADER);
-
-        //Retrieve history from stock arg
-        try {
-            historicalQuote.addAll(stock.getHistory());
-        } catch (IOException e) {
-            //Use flag to handle IOException
-            flag = 1;
+        //Separators used by String.format("%,.2f") for the current locale.
+        DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance(Locale.getDefault(Locale.Category.FORMAT));
+        char grouping = symbols.getGroupingSeparator();
+        char decimal = symbols.getDecimalSeparator();
+        //Reused to split each date into fields in the default time zone.
+        Calendar calendar = Calendar.getInstance();
+
+        //Buffer for one chunk of rows, rows are roughly 150 chars.
+        StringBuilder builder = new StringBuilder(ROWS_PER_CHUNK * 160);
+
+        //Header goes out before any rows are formatted, so the page starts rendering early.
+        out.write(HISTORICAL_TABLE_HEADER);
+        out.flush();
+
+        for (int i = 0; i < series.size(); i++) {
+            //Build table
+            builder.append("<tr class=\"results-table\" ><td>");
+            appendDate(builder, calendar, series.getDate(i));
+            builder.append("</td><td>$ ");
+            appendPrice(builder, series.getOpen(i), grouping, decimal);
+            builder.append("</td><td>$ ");
+            appendPrice(builder, series.getHigh(i), grouping, decimal);
+            builder.append("</td><td>$ ");
+            appendPrice(builder, series.getLow(i), grouping, decimal);
+            builder.append("</td><td>$ ");
+            appendPrice(builder, series.getClose(i), grouping, decimal);
+            builder.append("</td><td>");
+            appendGrouped(builder, series.getVolume(i) == BarSeries.MISSING ? 0 : series.getVolume(i), grouping);
+            builder.append("</td></tr></th>");
+
+            if ((i + 1) % ROWS_PER_CHUNK == 0) {
+                writeChunk(out, builder);
+            }
         }
-        if (historicalQuote.size() < 1 || historicalQuote == null) {
-            //Check for an IOException being thrown with the next switch
-            switch (flag) {
-                //There was no error, but historicalQuote didn't have any results. Return no results.
-                case (0): {
-                    toPrintLocal = NO_RESULTS;
-                }
-                //There was an IOException, return error message.
-                case (1): {
-                    toPrintLocal = ERROR_MESSAGE;
-                    break;
-                }
-                default: {
-                    toPrintLocal = ERROR_MESSAGE;
-                    break;
-                }
+        //Append closing tags for table
+        builder.append(CLOSING_TAGS + BREAK);
+        writeChunk(out, builder);
+    }
+
+    /**
+     * Write historical bars as CSV with a header row. Like the HTML table, rows are
+     * formatted into a small buffer and handed to the Writer every ROWS_PER_CHUNK rows,
+     * so the file is never held in memory. Missing values are left empty.
+     *
+     * @param out    Target, usually wrapping the response stream
+     * @param series Bars to write
+     * @throws IOException Thrown if the Writer fails
+     */
+    public static void writeHistoryCsv(Writer out, BarSeries series) throws IOException {
+        //Reused to split each date into fields in the default time zone.
+        Calendar calendar = Calendar.getInstance();
+        StringBuilder builder = new StringBuilder(ROWS_PER_CHUNK * 80);
+
+        builder.append("Date,Open,High,Low,Close,Adj Close,Volume\r\n");
+
+        for (int i = 0; i < series.size(); i++) {
+            if (series.getDate(i) != BarSeries.MISSING) {
+                calendar.setTimeInMillis(series.getDate(i));
+                int month = calendar.get(Calendar.MONTH) + 1;
+                int day = calendar.get(Calendar.DAY_OF_MONTH);
+
+                builder.append(calendar.get(Calendar.YEAR)).append('-')
+                        .append(month < 10 ? "0" : "").append(month).append('-')
+                        .append(day < 10 ? "0" : "").append(day);
             }
-            //Cast finalized table String to error message
-            table = toPrintLocal;
-        } else {
-            for (HistoricalQuote hq : historicalQuote) {
-
-                try {
-                    //Convert Calendar instance to a formatted date string representation.
-                    String formattedDate = usDateFormat.format(Date.from(hq.getDate().toInstant()));
-
-                    BigDecimal open = handleNull(hq, 4);
-                    BigDecimal high = handleNull(hq, 2);
-                    BigDecimal low = handleNull(hq, 3);
-                    BigDecimal close = handleNull(hq, 1);
-                    BigDecimal volume = handleNull(hq, 6);
-
-                    //Build table
-                    builder.append("<tr class=\"results-table\" >");
-                    builder.append("<td>" + formattedDate + "</td>");
-
-                    builder.append("<td>$ " + String.format("%,.2f", open) + "</td>");
-                    builder.append("<td>$ " + String.format("%,.2f", high) + "</td>");
-                    builder.append("<td>$ " + String.format("%,.2f", low) + "</td>");
-                    builder.append("<td>$ " + String.format("%,.2f", close) + "</td>");
-                    builder.append("<td>" + String.format("%,.0f", volume) + "</td></tr></th>");
-                } catch (Throwable e) {
-                    String nullError = "<tr><td>There was an error retrieving historical data.</td></tr>" + ERROR_TABLE;
-                    return nullError;
-                }
+            appendCsvPrice(builder, series.getOpen(i));
+            appendCsvPrice(builder, series.getHigh(i));
+            appendCsvPrice(builder, series.getLow(i));
+            appendCsvPrice(builder, series.getClose(i));
+            appendCsvPrice(builder, series.getAdjClose(i));
+            builder.append(',');
+            if (series.getVolume(i) != BarSeries.MISSING) {
+                builder.append(series.getVolume(i));
+            }
+            builder.append("\r\n");
+
+            if ((i + 1) % ROWS_PER_CHUNK == 0) {
+                writeChunk(out, builder);
             }
-            //Append closing tags for table
-            builder.append(CLOSING_TAGS + BREAK);
-            //Cast finalized table String to dynamic html
-            table = builder.toString();
         }
+        writeChunk(out, builder);
+    }
 
-        return table;
+    /**
+     * Append a comma and a scaled price as a plain number, nothing if it is missing.
+     */
+    private static void appendCsvPrice(StringBuilder builder, long scaled) {
+        builder.append(',');
+        if (scaled != BarSeries.MISSING) {
+            appendJsonNumber(builder, scaled);
+        }
     }
 
     /**
-     * Nullpointers get thrown when retrieving data from very old dates. This fills in a default value of
-     * zero when a null value is found.
-     * <p>
-     * 1 - Get the closing value.
-     * 2 - Get the day high.
-     * 3 - Get the day low.
-     * 4 - Get the day open.
-     * 5 - Get the adjusted close.
-     * 6 - Get the day's volume.
+     * Hand a chunk of rows to the Writer and reset the buffer for the next one.
      *
-     * @param quote  HistoricalQuote to check
-     * @param number Data value to check
-     * @return
+     * @param out     Target
+     * @param builder Rows to write
+     * @throws IOException Thrown if the Writer fails
      */
-    private static BigDecimal handleNull(HistoricalQuote quote, int number) {
-        BigDecimal data;
-        try {
-            switch (number) {
-                case (1): {
-                    data = quote.getClose().setScale(2, RoundingMode.CEILING);
-                    break;
-                }
-                case (2): {
-                    data = quote.getHigh().setScale(2, RoundingMode.CEILING);
-                    break;
-                }
-                case (3): {
-                    data = quote.getLow().setScale(2, RoundingMode.CEILING);
-                    break;
-                }
-                case (4): {
-                    data = quote.getOpen().setScale(2, RoundingMode.CEILING);
-                    break;
-                }
-                case (5): {
-                    data = quote.getAdjClose().setScale(2, RoundingMode.CEILING);
-                    break;
-                }
-                case (6): {
-                    data = new BigDecimal(quote.getVolume());
-                    break;
-                }
-                default: {
-                    data = new BigDecimal(0);
-                    break;
-                }
+    private static void writeChunk(Writer out, StringBuilder builder) throws IOException {
+        out.append(builder);
+        builder.setLength(0);
+    }
 
+    /**
+     * Append a date as MM/dd/yyyy in the default time zone.
+     *
+     * @param builder  Target
+     * @param calendar Calendar reused for each date
+     * @param millis   Date in epoch millis
+     */
+    private static void appendDate(StringBuilder builder, Calendar calendar, long millis) {
+        calendar.setTimeInMillis(millis);
+        int month = calendar.get(Calendar.MONTH) + 1;
+        int day = calendar.get(Calendar.DAY_OF_MONTH);
+
+        builder.append(month < 10 ? "0" : "").append(month).append('/')
+                .append(day < 10 ? "0" : "").append(day).append('/')
+                .append(calendar.get(Calendar.YEAR));
+    }
+
+    /**
+     * Append a scaled price the way String.format("%,.2f") formats it after rounding up
+     * to two decimal places. Missing prices are shown as zero, as they always have been.
+     *
+     * @param builder  Target
+     * @param scaled   Price scaled by BarSeries.PRICE_SCALE
+     * @param grouping Thousands separator
+     * @param decimal  Decimal separator
+     */
+    private static void appendPrice(StringBuilder builder, long scaled, char grouping, char decimal) {
+        //Round up from four decimal places to two.
+        long cents = scaled == BarSeries.MISSING ? 0 : Math.floorDiv(scaled + 99, 100);
+
+        if (cents < 0) {
+            builder.append('-');
+            cents = -cents;
+        }
+
+        appendGrouped(builder, cents / 100, grouping);
+        long fraction = cents % 100;
+        builder.append(decimal).append(fraction < 10 ? "0" : "").append(fraction);
+    }
+
+    /**
+     * Append a whole number with thousands separators, like String.format("%,.0f").
+     *
+     * @param builder  Target
+     * @param value    Number to append
+     * @param grouping Thousands separator
+     */
+    private static void appendGrouped(StringBuilder builder, long value, char grouping) {
+        String digits = Long.toString(Math.abs(value));
+
+        if (value < 0) {
+            builder.append('-');
+        }
+
+        int lead = digits.length() % 3 == 0 ? 3 : digits.length() % 3;
+        builder.append(digits, 0, lead);
+        for (int i = lead; i < digits.length(); i += 3) {
+            builder.append(grouping).append(digits, i, i + 3);
+        }
+    }
+
+    /**
+     * Append a scaled price as a plain JSON number with trailing zeros removed.
+     *
+     * @param builder Target
+     * @param scaled  Price scaled by BarSeries.PRICE_SCALE, or MISSING for null
+     */
+    private static void appendJsonNumber(StringBuilder builder, long scaled) {
+        if (scaled == BarSeries.MISSING) {
+            builder.append("null");
+            return;
+        }
+
+        if (scaled < 0) {
+            builder.append('-');
+            scaled = -scaled;
+        }
+
+        builder.append(scaled / 10000);
+        long fraction = scaled % 10000;
+        if (fraction != 0) {
+            int digits = BarSeries.PRICE_SCALE;
+            while (fraction % 10 == 0) {
+                fraction /= 10;
+                digits--;
             }
-        } catch (NullPointerException e) {
-            data = new BigDecimal(0);
+
+            String text = Long.toString(fraction);
+            builder.append('.');
+            for (int i = text.length(); i < digits; i++) {
+                builder.append('0');
+            }
+            builder.append(text);
         }
-        return data;
     }
 
     /**
@@ -372,24 +671,35 @@ public class WebUtils extends HttpServlet {
      * @throws IOException
      */
     public static String jsonChartData(Stock stock) throws IOException {
-        StringBuilder jsonString = new StringBuilder();
-        List<HistoricalQuote> stockHistory = stock.getHistory();
+        return jsonChartData(BarSeries.from(stock));
+    }
 
-        int totalStocks = stockHistory.size();
-        int counter = 0;
+    /**
+     * Turn a series into a JSON table of [date, close] pairs for the historical chart.
+     * Bars without a date are left out.
+     *
+     * @param series Bars to chart
+     * @return JSON format string
+     */
+    public static String jsonChartData(BarSeries series) {
+        //Each point is roughly 30 chars.
+        StringBuilder jsonString = new StringBuilder(series.size() * 32 + 2);
+        boolean first = true;
 
         //Setup Json
         jsonString.append("[");
-        for (HistoricalQuote record : stockHistory) {
-            Long date = record.getDate().getTimeInMillis();
-            BigDecimal close = record.getClose();
-
-            if (counter <= (totalStocks - 2)) {
-                jsonString.append("[" + date + ", " + close + "], ");
-            } else if (counter <= totalStocks) {
-                jsonString.append("[" + date + ", " + close + "]");
+        for (int i = 0; i < series.size(); i++) {
+            if (series.getDate(i) == BarSeries.MISSING) {
+                continue;
             }
-            counter++;
+
+            if (!first) {
+                jsonString.append(", ");
+            }
+            jsonString.append('[').append(series.getDate(i)).append(", ");
+            appendJsonNumber(jsonString, series.getClose(i));
+            jsonString.append(']');
+            first = false;
         }
         //Close Json
         jsonString.append("]");
@@ -397,34 +707,72 @@ public class WebUtils extends HttpServlet {
         return jsonString.toString();
     }
 
+    /**
+     * Load the shared user agent parser if it is not loaded yet. Called at startup so
+     * the first search does not pay for compiling the patterns.
+     *
+     * @throws WebUtilsException Thrown if the user agent patterns could not be loaded.
+     */
+    public static void initUserAgentParser() throws WebUtilsException {
+        getUserAgentParser();
+    }
+
     /**
      * Method to parse the UserAgent information from session data.
+     * Results are cached, so a user agent seen before is a lookup rather than a parse.
      *
      * @param uaString The user agent string to parse
      * @return ua-parse concrete Client object
-     * @throws WebUtilsException Thrown if the arg string is null or if an IOException is thrown.
+     * @throws WebUtilsException Thrown if the arg string is null or if the parser could not be loaded.
      */
     public static Client getClientData(String uaString) throws WebUtilsException {
 
-        Parser uaParser = null;
-        Client client = null;
+        if (uaString == null) {
+            throw new WebUtilsException("The string passed to getUserAgent() was null.");
+        }
 
-        try {
-            uaParser = new Parser();
+        Client client = USER_AGENTS.get(uaString);
 
-            if (uaString != null) {
-                client = uaParser.parse(uaString);
-            } else {
-                throw new WebUtilsException("The string passed to getUserAgent() was null.");
-            }
+        if (client == null) {
+            //Parser and Client are safe to share between threads.
+            client = getUserAgentParser().parse(uaString);
 
-        } catch (IOException e) {
-            throw new WebUtilsException("Failed to parse UserAgent string.", e.getCause());
+            if (uaString.length() <= MAX_USER_AGENT_LENGTH) {
+                //The bound is approximate, racing misses may each add an entry before one is dropped.
+                if (USER_AGENTS.size() >= MAX_USER_AGENTS) {
+                    Iterator<String> iterator = USER_AGENTS.keySet().iterator();
+                    if (iterator.hasNext()) {
+                        iterator.next();
+                        iterator.remove();
+                    }
+                }
+                USER_AGENTS.put(uaString, client);
+            }
         }
 
         return client;
     }
 
+    private static Parser getUserAgentParser() throws WebUtilsException {
+        Parser parser = userAgentParser;
+
+        if (parser == null) {
+            synchronized (WebUtils.class) {
+                parser = userAgentParser;
+                if (parser == null) {
+                    try {
+                        parser = new Parser();
+                    } catch (IOException e) {
+                        throw new WebUtilsException("Failed to load the UserAgent patterns.", e);
+                    }
+                    userAgentParser = parser;
+                }
+            }
+        }
+
+        return parser;
+    }
+
     /**
      * Override inherited equals method.
      *
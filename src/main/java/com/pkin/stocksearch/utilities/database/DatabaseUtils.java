@@ -162,6 +162,30 @@ public class DatabaseUtils {
         return configuration;
     }
 
+    /**
+     * Whether a failure was caused by the data itself, such as a value too long for its
+     * column or a violated constraint. Writing the same rows again fails the same way,
+     * unlike a lost connection or a timeout.
+     *
+     * @param e The failure, the SQLException may be wrapped in other exceptions
+     *
+     * @return True if a SQLState of class 22 (data exception) or 23 (integrity constraint violation) was found
+     */
+    public static boolean isDataError(Throwable e) {
+
+        //Bound the walk in case a driver chains exceptions into a loop.
+        for (int depth = 0; e != null && depth < 20; depth++) {
+            if (e instanceof SQLException) {
+                for (SQLException sql = (SQLException) e; sql != null && depth < 20; sql = sql.getNextException(), depth++) {
+                    String state = sql.getSQLState();
+                    if (state != null && (state.startsWith("22") || state.startsWith("23"))) {
+                        return true;
+                    }
+                }
+            }
+            e = e.getCause();
+        }
 
+        return false;
+    }
 }
-
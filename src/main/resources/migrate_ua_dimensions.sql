@@ -0,0 +1,40 @@
+-- Moves the user agent columns of searches into ua_dimensions (PostgreSQL).
+-- kind: 1 family, 2 family_version, 3 os, 4 os_version, 5 device. See UserAgentDimensions.Kind.
+
+CREATE TABLE ua_dimensions (
+  id             INT GENERATED ALWAYS AS IDENTITY PRIMARY KEY,
+  kind           SMALLINT NOT NULL,
+  name           VARCHAR(64) NOT NULL,
+  UNIQUE (kind, name)
+);
+
+INSERT INTO ua_dimensions (kind, name)
+SELECT DISTINCT kind, name FROM (
+  SELECT 1 AS kind, left(trim(family), 64) AS name FROM searches
+  UNION SELECT 2, left(trim(family_version), 64) FROM searches
+  UNION SELECT 3, left(trim(os), 64) FROM searches
+  UNION SELECT 4, left(trim(os_version), 64) FROM searches
+  UNION SELECT 5, left(trim(device), 64) FROM searches
+) dimensions
+WHERE name IS NOT NULL;
+
+ALTER TABLE searches
+  ADD COLUMN family_id int,
+  ADD COLUMN family_version_id int,
+  ADD COLUMN os_id int,
+  ADD COLUMN os_version_id int,
+  ADD COLUMN device_id int;
+
+UPDATE searches SET
+  family_id = (SELECT id FROM ua_dimensions WHERE kind = 1 AND name = left(trim(searches.family), 64)),
+  family_version_id = (SELECT id FROM ua_dimensions WHERE kind = 2 AND name = left(trim(searches.family_version), 64)),
+  os_id = (SELECT id FROM ua_dimensions WHERE kind = 3 AND name = left(trim(searches.os), 64)),
+  os_version_id = (SELECT id FROM ua_dimensions WHERE kind = 4 AND name = left(trim(searches.os_version), 64)),
+  device_id = (SELECT id FROM ua_dimensions WHERE kind = 5 AND name = left(trim(searches.device), 64));
+
+ALTER TABLE searches
+  DROP COLUMN family,
+  DROP COLUMN family_version,
+  DROP COLUMN os,
+  DROP COLUMN os_version,
+  DROP COLUMN device;
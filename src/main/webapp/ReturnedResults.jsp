@@ -1,16 +1,17 @@
 <%@ page language="java" contentType="text/html; charset=UTF-8"
-         pageEncoding="UTF-8" session="true" %>
+         pageEncoding="UTF-8" session="false" %>
 <%@ taglib uri="http://java.sun.com/jsp/jstl/core" prefix="c" %>
 
 <!DOCTYPE html PUBLIC "-//W3C//DTD HTML 4.01 Transitional//EN" "http://www.w3.org/TR/html4/loose.dtd">
 
-<%@page import='com.pkin.stocksearch.utilities.database.FileUtils' %>
+<%@page import='com.pkin.stocksearch.utilities.HtmlFragment' %>
 
 
 <!-- Retrieve quick quote and historical quote query symbol.
 Set the title of the page to whichever one is not null. -->
 <c:set var="quick" value="${paramValues['quickSymbol']}" scope="page"/>
 <c:set var="historical" value="${paramValues['stockSymbol']}" scope="page"/>
+<c:set var="batch" value="${paramValues['quickSymbols']}" scope="page"/>
 <c:set var="jsonHistory" value="${param['jsonHistory']}" scope="page"/>
 
 <c:choose>
@@ -20,6 +21,9 @@ Set the title of the page to whichever one is not null. -->
     <c:when test="${historical != null}">
         <c:set var="titleSymbol" value="${param['stockSymbol']}" scope="page"/>
     </c:when>
+    <c:when test="${batch != null}">
+        <c:set var="titleSymbol" value="${param['quickSymbols']}" scope="page"/>
+    </c:when>
 </c:choose>
 
 <html>
@@ -55,11 +59,18 @@ Set the title of the page to whichever one is not null. -->
         AutoComplete for stock symbols
          */
 
-        <c:set var='stocksList' value='${FileUtils.getCSVFile("stocks.csv")}' scope='page'/>
-
         $(document).ready(function () {
             $('.bs-autocomplete').autocomplete({
-                source: [${stocksList}],
+                //Matches come from the symbol index on the server instead of a list inlined in the page.
+                source: function (request, response) {
+                    $.getJSON('api/symbols', {q: request.term}, function (matches) {
+                        response($.map(matches, function (match) {
+                            return match.symbol + ' ( ' + match.name + ' )';
+                        }));
+                    }).fail(function () {
+                        response([]);
+                    });
+                },
                 minLength: [2]
             }).bind('focusin focusout change', function () {
                 var pattern = '^[a-zA-Z]+';
@@ -81,8 +92,18 @@ Set the title of the page to whichever one is not null. -->
     <div class="row">
         <div class="col-sm-1 hide"></div>
         <div class="col-sm-10">
-            <!--Results-->
-            ${formattedQuote}
+            <!--Results, historical tables are written to the response as they are rendered-->
+            <%
+                Object formattedQuote = pageContext.findAttribute("formattedQuote");
+                if (formattedQuote instanceof HtmlFragment) {
+                    ((HtmlFragment) formattedQuote).writeTo(out);
+                } else if (formattedQuote != null) {
+                    out.write(formattedQuote.toString());
+                }
+            %>
+
+            <!--Live price for quick quotes, filled in by the quote stream-->
+            <div id="live-quote" class="text-muted"></div>
 
         </div>
         <div class="col-sm-1 hide"></div>
@@ -167,6 +188,36 @@ Set the title of the page to whichever one is not null. -->
 
 </script>
 
+<c:if test="${quick != null}">
+    <script>
+        /*
+        Stream live price updates for a quick quote instead of resubmitting the form
+         */
+        $(document).ready(function () {
+            if (!window.EventSource) {
+                return;
+            }
+
+            var source = new EventSource('QuoteStream?symbol=' + encodeURIComponent('<c:out value="${param['quickSymbol']}"/>'));
+            source.addEventListener('quote', function (event) {
+                var quote = JSON.parse(event.data);
+                if (quote.price === null) {
+                    return;
+                }
+
+                var text = 'Live: $' + Number(quote.price).toLocaleString('en-US', {minimumFractionDigits: 2, maximumFractionDigits: 2});
+                if (quote.changePercent !== null) {
+                    text += ' (' + (quote.changePercent > 0 ? '+' : '') + Number(quote.changePercent).toFixed(2) + '%)';
+                }
+                if (quote.stale) {
+                    text += ' - quote service unavailable, last known price';
+                }
+                $('#live-quote').text(text);
+            });
+        });
+    </script>
+</c:if>
+
 <div class="row row-spacer"></div>
 
 </body>
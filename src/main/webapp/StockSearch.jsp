@@ -1,11 +1,10 @@
 <%@ page language="java" contentType="text/html; charset=UTF-8"
-         pageEncoding="UTF-8" session="true" %>
+         pageEncoding="UTF-8" session="false" %>
 
 <%@ taglib uri="http://java.sun.com/jsp/jstl/functions" prefix="fn" %>
 <%@ taglib uri="http://java.sun.com/jsp/jstl/core" prefix="c" %>
 
 <%@page import='com.pkin.stocksearch.service.DatabaseService' %>
-<%@page import='com.pkin.stocksearch.utilities.database.FileUtils' %>
 
 <jsp:useBean id="formData" class="com.pkin.stocksearch.servlet.StockSearchServlet" scope="request"/>
 <jsp:setProperty name="formData" property="*"/>
@@ -108,11 +107,18 @@
         AutoComplete for stock symbols
          */
 
-        <c:set var='stocksList' value='${FileUtils.getCSVFile("stocks.csv")}' scope='page'/>
-
         $(document).ready(function () {
             $('.bs-autocomplete').autocomplete({
-                source: [${stocksList}],
+                //Matches come from the symbol index on the server instead of a list inlined in the page.
+                source: function (request, response) {
+                    $.getJSON('api/symbols', {q: request.term}, function (matches) {
+                        response($.map(matches, function (match) {
+                            return match.symbol + ' ( ' + match.name + ' )';
+                        }));
+                    }).fail(function () {
+                        response([]);
+                    });
+                },
                 minLength: [2]
             }).bind('focusin focusout change', function () {
                 var pattern = '^[a-zA-Z]+';
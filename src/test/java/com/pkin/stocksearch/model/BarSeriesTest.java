@@ -0,0 +1,37 @@
+package com.pkin.stocksearch.model;
+
+import org.junit.Test;
+import yahoofinance.histquotes.HistoricalQuote;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BarSeriesTest {
+
+    @Test
+    public void historyIsConvertedToColumns() {
+        Calendar date = Calendar.getInstance();
+        date.clear();
+        date.set(2015, Calendar.SEPTEMBER, 1);
+
+        List<HistoricalQuote> history = new ArrayList<>();
+        history.add(new HistoricalQuote("APPL", date, new BigDecimal("100.5"), new BigDecimal("99"),
+                new BigDecimal("101.123456"), null, new BigDecimal("100"), 5999L));
+        history.add(new HistoricalQuote());
+
+        BarSeries series = BarSeries.from(history);
+
+        assertEquals("One entry per bar", 2, series.size());
+        assertEquals("Date should be epoch millis", date.getTimeInMillis(), series.getDate(0));
+        assertEquals("Prices should be scaled", 1005000, series.getOpen(0));
+        assertEquals("Prices should round up to the scale", 1011235, series.getHigh(0));
+        assertEquals("Missing price should be marked", BarSeries.MISSING, series.getClose(0));
+        assertEquals("Volume should be kept", 5999, series.getVolume(0));
+        assertEquals("Missing date should be marked", BarSeries.MISSING, series.getDate(1));
+        assertEquals("Missing volume should be marked", BarSeries.MISSING, series.getVolume(1));
+    }
+}
@@ -0,0 +1,90 @@
+package com.pkin.stocksearch.service;
+
+import com.pkin.stocksearch.service.exceptions.StockServiceException;
+import org.junit.Before;
+import org.junit.Test;
+import yahoofinance.Stock;
+import yahoofinance.histquotes.Interval;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class PrefetchSchedulerTest {
+
+    private List<String> quoteRequests;
+    private List<String> historyRequests;
+    private StockService recordingService;
+
+    @Before
+    public void setUp() {
+        quoteRequests = new ArrayList<>();
+        historyRequests = new ArrayList<>();
+
+        recordingService = new StockService() {
+            @Override
+            public Map<String, Stock> refreshQuickQuotes(List<String> symbols) {
+                quoteRequests.addAll(symbols);
+                return Collections.emptyMap();
+            }
+
+            @Override
+            public Stock getQuote(String symbol, Calendar from, Calendar until, Interval interval)
+                    throws StockServiceException {
+                historyRequests.add(symbol + "|" + interval);
+                if ("FAIL".equals(symbol)) {
+                    throw new StockServiceException("Upstream failed");
+                }
+                return null;
+            }
+        };
+    }
+
+    @Test
+    public void topSymbolsAreWarmed() {
+        PrefetchScheduler scheduler = new PrefetchScheduler(() -> Arrays.asList("goog", "AAPL"),
+                recordingService, "30:DAILY, 1825:weekly");
+
+        assertEquals("Both symbols should be warmed", 2, scheduler.prefetch());
+        assertEquals("Quick quotes should be refreshed in one batch", Arrays.asList("GOOG", "AAPL"), quoteRequests);
+        assertEquals("Each symbol should be warmed for each range",
+                Arrays.asList("GOOG|DAILY", "GOOG|WEEKLY", "AAPL|DAILY", "AAPL|WEEKLY"), historyRequests);
+    }
+
+    @Test
+    public void failuresDoNotStopTheRound() {
+        PrefetchScheduler scheduler = new PrefetchScheduler(() -> Arrays.asList("FAIL", "GOOG"),
+                recordingService, "30:DAILY,bad,10:NOPE");
+
+        assertEquals("Both symbols should be attempted", 2, scheduler.prefetch());
+        assertEquals("Malformed ranges should be ignored", Arrays.asList("FAIL|DAILY", "GOOG|DAILY"), historyRequests);
+    }
+
+    @Test
+    public void closedMarketIsSkipped() {
+        PrefetchScheduler scheduler = new PrefetchScheduler(() -> Collections.singletonList("GOOG"),
+                recordingService, "30:DAILY");
+        ZonedDateTime open = ZonedDateTime.of(2018, 3, 7, 11, 0, 0, 0, ZoneId.of("America/New_York"));
+
+        assertEquals("Nothing should be fetched at night", 0, scheduler.tick(open.withHour(22)));
+        assertEquals("Nothing should be fetched at the weekend", 0, scheduler.tick(open.plusDays(3)));
+        assertTrue("Upstream should not be called", quoteRequests.isEmpty() && historyRequests.isEmpty());
+        assertEquals("Open market should be warmed", 1, scheduler.tick(open));
+    }
+
+    @Test
+    public void topSearchErrorIsSkipped() {
+        PrefetchScheduler scheduler = new PrefetchScheduler(() -> Collections.singletonList("Error"),
+                recordingService, "30:DAILY");
+
+        assertEquals("Nothing to warm", 0, scheduler.prefetch());
+        assertTrue("Upstream should not be called", quoteRequests.isEmpty());
+    }
+}
@@ -1,8 +1,10 @@
 package com.pkin.stocksearch.service;
 
+import com.pkin.stocksearch.service.provider.QuoteProvider;
 import org.junit.Test;
 
 import static com.pkin.stocksearch.service.ServiceFactory.getDatabaseServiceInstance;
+import static com.pkin.stocksearch.service.ServiceFactory.getQuoteProviderInstance;
 import static com.pkin.stocksearch.service.ServiceFactory.getStockServiceInstance;
 import static org.junit.Assert.*;
 
@@ -25,4 +27,12 @@ public class ServiceFactoryTest {
         assertNotNull("Verify factory returns an instance of DatabaseService", service);
         assertNull("Verify DatabaseService returns null", badService);
     }
+
+    @Test
+    public void getQuoteProviderInstanceTest() {
+        QuoteProvider provider = getQuoteProviderInstance();
+
+        assertNotNull("Verify factory returns an instance of QuoteProvider", provider);
+        assertSame("Verify factory returns the shared QuoteProvider", provider, getQuoteProviderInstance());
+    }
 }
\ No newline at end of file
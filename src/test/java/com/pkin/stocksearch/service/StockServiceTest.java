@@ -1,13 +1,16 @@
 package com.pkin.stocksearch.service;
 
+import com.pkin.stocksearch.service.exceptions.InvalidSymbolException;
 import com.pkin.stocksearch.service.exceptions.StockServiceException;
 import org.junit.Test;
 import yahoofinance.Stock;
 import yahoofinance.histquotes.Interval;
 
+import java.io.FileNotFoundException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.time.LocalDate;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
 
@@ -66,6 +69,32 @@ public class StockServiceTest {
         service.getQuote(symbol, from, until, interval);
     }
 
+    @Test
+    public void unlistedSymbolIsRejectedLocally() {
+        try {
+            StockService.checkSymbol("ZZZZQ", true);
+            fail("Unlisted symbol should be rejected");
+        } catch (InvalidSymbolException e) {
+            assertEquals("Rejected symbol should be reported", "ZZZZQ", e.getSymbol());
+            assertTrue("Cause should match an unknown symbol from upstream", e.getCause() instanceof FileNotFoundException);
+        }
+    }
+
+    @Test
+    public void unlistedSymbolIsAllowedByDefault() throws InvalidSymbolException {
+        //Listed symbols missing from stocks.csv, such as SPY, must still reach upstream.
+        StockService.checkSymbol("SPY", false);
+        StockService.checkSymbol("ZZZZQ", false);
+    }
+
+    @Test
+    public void invalidSymbolIsLeftOutOfBatch() throws StockServiceException {
+        StockService service = getStockService();
+
+        assertTrue("Nothing should be fetched for rejected symbols",
+                service.getQuickQuotes(Arrays.asList("<b>", "*1")).isEmpty());
+    }
+
     @Test
     public void checkOverrides() {
         StockService service = new StockService();
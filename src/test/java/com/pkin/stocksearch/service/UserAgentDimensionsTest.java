@@ -0,0 +1,126 @@
+package com.pkin.stocksearch.service;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Scanner;
+
+import static org.junit.Assert.*;
+
+public class UserAgentDimensionsTest {
+
+    private static final String DB_URL = "jdbc:derby:memory:ua_dimensions";
+
+    private Connection connection;
+
+    @Before
+    public void setUp() throws SQLException, IOException {
+        connection = DriverManager.getConnection(DB_URL + ";create=true");
+        runScript("set_up_test_tables.sql");
+        runScript("add_search_data.sql");
+        connection.setAutoCommit(false);
+    }
+
+    @After
+    public void tearDown() {
+        try {
+            connection.rollback();
+            connection.close();
+            DriverManager.getConnection(DB_URL + ";drop=true");
+        } catch (SQLException e) {
+            //Derby reports a successful drop as an exception.
+        }
+    }
+
+    @Test
+    public void existingValuesAreLoaded() throws SQLException {
+        UserAgentDimensions dimensions = new UserAgentDimensions(100);
+        Map<String, Integer> inserted = new HashMap<>();
+
+        assertEquals(Integer.valueOf(1), dimensions.resolve(connection, UserAgentDimensions.Kind.FAMILY, "Mobile Safari", inserted));
+        assertEquals(Integer.valueOf(5), dimensions.resolve(connection, UserAgentDimensions.Kind.DEVICE, "iPhone", inserted));
+        assertNull(dimensions.resolve(connection, UserAgentDimensions.Kind.OS, null, inserted));
+
+        assertEquals("Whole table should be loaded", 5, dimensions.size());
+        assertTrue("Nothing should be inserted", inserted.isEmpty());
+    }
+
+    @Test
+    public void sameNameIsKeptPerKind() throws SQLException {
+        UserAgentDimensions dimensions = new UserAgentDimensions(100);
+        Map<String, Integer> inserted = new HashMap<>();
+
+        assertEquals(Integer.valueOf(2), dimensions.resolve(connection, UserAgentDimensions.Kind.FAMILY_VERSION, "5_1", inserted));
+        assertEquals(Integer.valueOf(4), dimensions.resolve(connection, UserAgentDimensions.Kind.OS_VERSION, "5_1", inserted));
+    }
+
+    @Test
+    public void newValueIsRememberedOnlyAfterPublish() throws SQLException {
+        UserAgentDimensions dimensions = new UserAgentDimensions(100);
+        Map<String, Integer> inserted = new HashMap<>();
+
+        Integer id = dimensions.resolve(connection, UserAgentDimensions.Kind.FAMILY, "Chrome", inserted);
+        assertNotNull(id);
+        assertEquals("Repeat lookup should reuse the pending id", id,
+                dimensions.resolve(connection, UserAgentDimensions.Kind.FAMILY, "Chrome", inserted));
+        assertEquals(1, inserted.size());
+        assertEquals(5, dimensions.size());
+
+        connection.commit();
+        dimensions.publish(inserted);
+
+        assertEquals(6, dimensions.size());
+        assertEquals(id, dimensions.resolve(connection, UserAgentDimensions.Kind.FAMILY, "Chrome", new HashMap<>()));
+    }
+
+    @Test
+    public void valueAddedElsewhereIsFound() throws SQLException {
+        UserAgentDimensions dimensions = new UserAgentDimensions(100);
+        dimensions.resolve(connection, UserAgentDimensions.Kind.FAMILY, "Mobile Safari", new HashMap<>());
+
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("INSERT INTO ua_dimensions (kind, name) VALUES (3, 'Android')");
+        }
+        connection.commit();
+
+        Map<String, Integer> inserted = new HashMap<>();
+        Integer id = dimensions.resolve(connection, UserAgentDimensions.Kind.OS, "Android", inserted);
+
+        assertEquals(Integer.valueOf(6), id);
+        assertTrue("Existing value should not be inserted again", inserted.isEmpty());
+        assertEquals(1, count("SELECT COUNT(*) FROM ua_dimensions WHERE name = 'Android'"));
+    }
+
+    private int count(String sql) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(sql)) {
+            resultSet.next();
+            return resultSet.getInt(1);
+        }
+    }
+
+    private void runScript(String script) throws SQLException, IOException {
+        try (InputStream in = getClass().getClassLoader().getResourceAsStream(script);
+             Scanner scanner = new Scanner(in, StandardCharsets.UTF_8.name()).useDelimiter(";");
+             Statement statement = connection.createStatement()) {
+
+            while (scanner.hasNext()) {
+                String sql = scanner.next().trim();
+                if (!sql.isEmpty()) {
+                    statement.execute(sql);
+                }
+            }
+        }
+    }
+}
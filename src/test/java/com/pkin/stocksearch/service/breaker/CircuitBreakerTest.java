@@ -0,0 +1,110 @@
+package com.pkin.stocksearch.service.breaker;
+
+import com.pkin.stocksearch.service.exceptions.UpstreamUnavailableException;
+import com.pkin.stocksearch.utilities.ExecutorUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class CircuitBreakerTest {
+
+    private ExecutorService executor;
+    private AtomicInteger calls;
+
+    @Before
+    public void setUp() {
+        executor = ExecutorUtils.newBoundedExecutor("breaker-test", 4, 4);
+        calls = new AtomicInteger();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void opensAfterThresholdAndFailsFast() {
+        CircuitBreaker breaker = new CircuitBreaker("test", 2, 60000, 1000, executor);
+
+        failOnce(breaker);
+        assertEquals("One failure should not open the breaker", CircuitBreaker.State.CLOSED, breaker.getState());
+        failOnce(breaker);
+        assertEquals("Breaker should open at the threshold", CircuitBreaker.State.OPEN, breaker.getState());
+
+        try {
+            breaker.execute(() -> calls.incrementAndGet());
+            fail("Open breaker should fail fast");
+        } catch (UpstreamUnavailableException e) {
+            assertEquals("Open breaker should not call upstream", 2, calls.get());
+        } catch (IOException e) {
+            fail("Expected UpstreamUnavailableException");
+        }
+    }
+
+    @Test
+    public void successfulProbeClosesBreaker() throws IOException, InterruptedException {
+        CircuitBreaker breaker = new CircuitBreaker("test", 1, 50, 1000, executor);
+
+        failOnce(breaker);
+        Thread.sleep(100);
+
+        assertEquals("Probe should reach upstream", "ok", breaker.execute(() -> "ok"));
+        assertEquals("Successful probe should close the breaker", CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void slowCallRunsOutOfBudget() {
+        CircuitBreaker breaker = new CircuitBreaker("test", 1, 60000, 50, executor);
+
+        try {
+            breaker.execute(() -> {
+                try {
+                    Thread.sleep(5000);
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+                return "late";
+            });
+            fail("Slow call should time out");
+        } catch (UpstreamUnavailableException e) {
+            assertEquals("Timeout should count as a failure", CircuitBreaker.State.OPEN, breaker.getState());
+        } catch (IOException e) {
+            fail("Expected UpstreamUnavailableException");
+        }
+    }
+
+    @Test
+    public void unknownSymbolDoesNotOpenBreaker() {
+        CircuitBreaker breaker = new CircuitBreaker("test", 1, 60000, 1000, executor);
+
+        try {
+            breaker.execute(() -> {
+                throw new FileNotFoundException("NOPE");
+            });
+            fail("FileNotFoundException should be passed on");
+        } catch (FileNotFoundException e) {
+            assertEquals("Unknown symbol is a valid answer from upstream", CircuitBreaker.State.CLOSED, breaker.getState());
+        } catch (IOException e) {
+            fail("Expected FileNotFoundException");
+        }
+    }
+
+    private void failOnce(CircuitBreaker breaker) {
+        try {
+            breaker.execute(() -> {
+                calls.incrementAndGet();
+                throw new IOException("Upstream failed");
+            });
+        } catch (IOException e) {
+            //Expected
+        }
+    }
+}
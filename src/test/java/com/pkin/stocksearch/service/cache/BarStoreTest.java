@@ -0,0 +1,126 @@
+package com.pkin.stocksearch.service.cache;
+
+import com.pkin.stocksearch.service.exceptions.StockServiceException;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import yahoofinance.Stock;
+import yahoofinance.histquotes.HistoricalQuote;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+public class BarStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private List<Calendar[]> fetchedRanges;
+
+    @Before
+    public void setUp() {
+        fetchedRanges = new ArrayList<>();
+    }
+
+    @Test
+    public void storedBarsSurviveRestart() throws StockServiceException, IOException {
+        File directory = folder.newFolder("bars");
+
+        new BarStore(directory, 10).get("GOOG", day(2015, 1, 1), day(2015, 1, 11), this::fakeFetch);
+        Stock stock = new BarStore(directory, 10).get("GOOG", day(2015, 1, 1), day(2015, 1, 11), this::fakeFetch);
+
+        assertEquals("Second store should read from disk", 1, fetchedRanges.size());
+        assertEquals("Stored name should be kept", "Alphabet Inc.", stock.getName());
+        assertEquals("Range should hold one bar per day", 10, stock.getHistory().size());
+
+        HistoricalQuote quote = stock.getHistory().get(0);
+        assertEquals("Prices should round trip", 0, new BigDecimal("100.1234").compareTo(quote.getClose()));
+        assertNull("Missing values should stay missing", quote.getOpen());
+        assertEquals("Volume should round trip", Long.valueOf(1000), quote.getVolume());
+
+        BarStore restarted = new BarStore(directory, 10);
+        assertEquals("Stored range should be covered", 5, restarted.getCovered("GOOG", day(2015, 1, 2), day(2015, 1, 7)).getHistory().size());
+        assertNull("Range past the stored one is not covered", restarted.getCovered("GOOG", day(2015, 1, 2), day(2015, 1, 12)));
+    }
+
+    @Test
+    public void onlyNewDaysAreFetched() throws StockServiceException, IOException {
+        BarStore store = new BarStore(folder.newFolder("bars"), 10);
+
+        store.get("GOOG", day(2015, 1, 1), day(2015, 1, 11), this::fakeFetch);
+        Stock stock = store.get("GOOG", day(2015, 1, 5), day(2015, 1, 21), this::fakeFetch);
+
+        assertEquals("Only the days after the stored range should be fetched",
+                day(2015, 1, 11).getTimeInMillis(), fetchedRanges.get(1)[0].getTimeInMillis());
+        assertEquals("Merged history should cover the whole range", 16, stock.getHistory().size());
+
+        store.get("GOOG", day(2015, 1, 1), day(2015, 1, 21), this::fakeFetch);
+        assertEquals("Extended range should be read from disk", 2, fetchedRanges.size());
+    }
+
+    @Test
+    public void earlierDaysAreMergedIn() throws StockServiceException, IOException {
+        BarStore store = new BarStore(folder.newFolder("bars"), 10);
+
+        store.get("GOOG", day(2015, 1, 10), day(2015, 1, 21), this::fakeFetch);
+        Stock stock = store.get("GOOG", day(2015, 1, 1), day(2015, 1, 16), this::fakeFetch);
+
+        assertEquals("Only the days before the stored range should be fetched",
+                day(2015, 1, 10).getTimeInMillis(), fetchedRanges.get(1)[1].getTimeInMillis());
+        assertEquals("Merged history should cover the whole range", 15, stock.getHistory().size());
+
+        store.get("GOOG", day(2015, 1, 1), day(2015, 1, 21), this::fakeFetch);
+        assertEquals("Rewritten range should be read from disk", 2, fetchedRanges.size());
+    }
+
+    @Test
+    public void unknownSymbolIsNotStored() throws StockServiceException, IOException {
+        File directory = folder.newFolder("bars");
+
+        Stock stock = new BarStore(directory, 10).get("NOPE", day(2015, 1, 1), day(2015, 1, 10), (from, until) -> null);
+
+        assertNull("Unknown symbol should return null", stock);
+        assertEquals("Nothing should be written", 0, directory.list().length);
+    }
+
+    /**
+     * Fake upstream that returns one bar per day in [from, until).
+     */
+    private Stock fakeFetch(Calendar from, Calendar until) {
+        fetchedRanges.add(new Calendar[]{from, until});
+
+        List<HistoricalQuote> history = new ArrayList<>();
+        Calendar date = (Calendar) from.clone();
+
+        while (date.before(until)) {
+            history.add(new HistoricalQuote("GOOG", (Calendar) date.clone(), null, new BigDecimal("99.5"),
+                    new BigDecimal("101"), new BigDecimal("100.1234"), new BigDecimal("100.1234"), 1000L));
+            date.add(Calendar.DAY_OF_MONTH, 1);
+        }
+
+        Stock stock = new Stock("GOOG");
+        stock.setName("Alphabet Inc.");
+        stock.setStockExchange("NMS");
+        stock.setHistory(history);
+
+        return stock;
+    }
+
+    /**
+     * Start of a New York day, the days the store keys bars by.
+     */
+    private static Calendar day(int year, int month, int day) {
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("America/New_York"));
+        calendar.clear();
+        calendar.set(year, month - 1, day);
+        return calendar;
+    }
+}
@@ -0,0 +1,197 @@
+package com.pkin.stocksearch.service.cache;
+
+import com.pkin.stocksearch.model.StaleStock;
+import com.pkin.stocksearch.service.exceptions.StockServiceException;
+import org.junit.Before;
+import org.junit.Test;
+import yahoofinance.Stock;
+import yahoofinance.histquotes.HistoricalQuote;
+import yahoofinance.histquotes.Interval;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+public class HistoricalBarCacheTest {
+
+    private List<Calendar[]> fetchedRanges;
+
+    @Before
+    public void setUp() {
+        fetchedRanges = new ArrayList<>();
+    }
+
+    @Test
+    public void repeatRequestIsServedFromCache() throws StockServiceException, IOException {
+        HistoricalBarCache cache = new HistoricalBarCache(1000);
+
+        Stock first = cache.get("GOOG", day(2015, 1, 1), day(2015, 1, 10), Interval.DAILY, this::fakeFetch);
+        Stock second = cache.get("goog", day(2015, 1, 1), day(2015, 1, 10), Interval.DAILY, this::fakeFetch);
+
+        assertEquals("Only the first request should go upstream", 1, fetchedRanges.size());
+        assertEquals("Cached history should match the fetched history", first.getHistory().size(), second.getHistory().size());
+        assertEquals("Range should hold one bar per day", 10, second.getHistory().size());
+    }
+
+    @Test
+    public void overlappingRequestOnlyFetchesMissingRange() throws StockServiceException, IOException {
+        HistoricalBarCache cache = new HistoricalBarCache(1000);
+
+        cache.get("GOOG", day(2015, 1, 5), day(2015, 1, 10), Interval.DAILY, this::fakeFetch);
+        Stock stock = cache.get("GOOG", day(2015, 1, 1), day(2015, 1, 15), Interval.DAILY, this::fakeFetch);
+
+        assertEquals("Expected the initial fetch plus one for each side", 3, fetchedRanges.size());
+        assertEquals("Missing range before cached data",
+                day(2015, 1, 1).getTimeInMillis(), fetchedRanges.get(1)[0].getTimeInMillis());
+        assertEquals("Missing range before cached data ends at the cached start",
+                day(2015, 1, 5).getTimeInMillis(), fetchedRanges.get(1)[1].getTimeInMillis());
+        assertEquals("Missing range after cached data",
+                day(2015, 1, 11).getTimeInMillis(), fetchedRanges.get(2)[0].getTimeInMillis());
+        assertEquals("Merged history should cover the whole range", 15, stock.getHistory().size());
+    }
+
+    @Test
+    public void intervalsAreCachedSeparately() throws StockServiceException {
+        HistoricalBarCache cache = new HistoricalBarCache(1000);
+
+        cache.get("GOOG", day(2015, 1, 1), day(2015, 1, 10), Interval.DAILY, this::fakeFetch);
+        cache.get("GOOG", day(2015, 1, 1), day(2015, 1, 10), Interval.WEEKLY, this::fakeFetch);
+
+        assertEquals("Each interval needs its own fetch", 2, fetchedRanges.size());
+    }
+
+    @Test
+    public void leastRecentlyUsedSymbolIsEvicted() throws StockServiceException {
+        HistoricalBarCache cache = new HistoricalBarCache(15);
+
+        cache.get("GOOG", day(2015, 1, 1), day(2015, 1, 10), Interval.DAILY, this::fakeFetch);
+        cache.get("AAPL", day(2015, 1, 1), day(2015, 1, 10), Interval.DAILY, this::fakeFetch);
+
+        assertEquals("Cache should stay within its bound", 10, cache.size());
+
+        cache.get("GOOG", day(2015, 1, 1), day(2015, 1, 10), Interval.DAILY, this::fakeFetch);
+        assertEquals("Evicted symbol should be fetched again", 3, fetchedRanges.size());
+    }
+
+    @Test
+    public void unknownSymbolIsNotCached() throws StockServiceException {
+        HistoricalBarCache cache = new HistoricalBarCache(1000);
+
+        Stock stock = cache.get("NOPE", day(2015, 1, 1), day(2015, 1, 10), Interval.DAILY, (from, until) -> null);
+
+        assertNull("Unknown symbol should return null", stock);
+        assertEquals("Nothing should be cached for an unknown symbol", 0, cache.size());
+    }
+
+    @Test(expected = StockServiceException.class)
+    public void upstreamErrorIsPropagated() throws StockServiceException {
+        HistoricalBarCache cache = new HistoricalBarCache(1000);
+
+        cache.get("GOOG", day(2015, 1, 1), day(2015, 1, 10), Interval.DAILY, (from, until) -> {
+            throw new StockServiceException("Upstream failed");
+        });
+    }
+
+    @Test
+    public void coveredRangeIsServedWithoutFetching() throws StockServiceException, IOException {
+        HistoricalBarCache cache = new HistoricalBarCache(1000);
+
+        cache.get("GOOG", day(2015, 1, 1), day(2015, 1, 10), Interval.DAILY, this::fakeFetch);
+
+        Stock covered = cache.getCovered("GOOG", day(2015, 1, 2), day(2015, 1, 9), Interval.DAILY);
+        assertNotNull("Range inside the cached one should be covered", covered);
+        assertEquals("Covered range should hold one bar per day", 8, covered.getHistory().size());
+        assertNull("Range past the cached one is not covered", cache.getCovered("GOOG", day(2015, 1, 2), day(2015, 1, 11), Interval.DAILY));
+        assertNull("Other intervals are not covered", cache.getCovered("GOOG", day(2015, 1, 2), day(2015, 1, 9), Interval.WEEKLY));
+        assertEquals("Coverage checks should not go upstream", 1, fetchedRanges.size());
+    }
+
+    @Test
+    public void staleDataIsServedFromCachedBars() throws StockServiceException, IOException {
+        HistoricalBarCache cache = new HistoricalBarCache(1000);
+
+        assertNull("Nothing cached yet", cache.getStale("GOOG", day(2015, 1, 1), day(2015, 1, 10), Interval.DAILY));
+
+        cache.get("GOOG", day(2015, 1, 1), day(2015, 1, 10), Interval.DAILY, this::fakeFetch);
+        StaleStock stale = cache.getStale("GOOG", day(2015, 1, 5), day(2015, 1, 20), Interval.DAILY);
+
+        assertNotNull("Cached bars should be served as stale data", stale);
+        assertEquals("Only the cached part of the range is available", 6, stale.getHistory().size());
+        assertTrue("Stale data should record when it was fetched", stale.getFetchedAt() > 0);
+    }
+
+    @Test
+    public void extendedWeeklyRangeIsFetchedWhole() throws StockServiceException, IOException {
+        HistoricalBarCache cache = new HistoricalBarCache(1000);
+
+        cache.get("GOOG", day(2015, 1, 1), day(2015, 1, 28), Interval.WEEKLY, this::fakeWeeklyFetch);
+        Stock repeat = cache.get("GOOG", day(2015, 1, 1), day(2015, 1, 28), Interval.WEEKLY, this::fakeWeeklyFetch);
+        assertEquals("Covered weekly range should not go upstream", 1, fetchedRanges.size());
+        assertEquals("Cached range should hold one bar per week", 4, repeat.getHistory().size());
+
+        Stock extended = cache.get("GOOG", day(2015, 1, 1), day(2015, 2, 3), Interval.WEEKLY, this::fakeWeeklyFetch);
+
+        assertEquals("Extended weekly range should be fetched again", 2, fetchedRanges.size());
+        assertEquals("Weekly range should be fetched from its start",
+                day(2015, 1, 1).getTimeInMillis(), fetchedRanges.get(1)[0].getTimeInMillis());
+        assertEquals("Extended range should hold one bar per week, without partial weeks", 5, extended.getHistory().size());
+        assertEquals("Replaced bars should not be counted twice", 5, cache.size());
+    }
+
+    /**
+     * Fake upstream that returns one bar per day in [from, until).
+     */
+    private Stock fakeFetch(Calendar from, Calendar until) {
+        fetchedRanges.add(new Calendar[]{from, until});
+
+        List<HistoricalQuote> history = new ArrayList<>();
+        Calendar date = (Calendar) from.clone();
+
+        while (date.before(until)) {
+            HistoricalQuote quote = new HistoricalQuote();
+            quote.setDate((Calendar) date.clone());
+            quote.setClose(new BigDecimal(100));
+            history.add(quote);
+            date.add(Calendar.DAY_OF_MONTH, 1);
+        }
+
+        Stock stock = new Stock("GOOG");
+        stock.setName("Alphabet Inc.");
+        stock.setHistory(history);
+
+        return stock;
+    }
+
+    /**
+     * Fake upstream that returns one bar per week in [from, until), each dated by the
+     * start of its week counted from the start of the range.
+     */
+    private Stock fakeWeeklyFetch(Calendar from, Calendar until) {
+        Stock stock = fakeFetch(from, until);
+        List<HistoricalQuote> weekly = new ArrayList<>();
+
+        try {
+            List<HistoricalQuote> daily = stock.getHistory();
+            for (int i = 0; i < daily.size(); i += 7) {
+                weekly.add(daily.get(i));
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+
+        stock.setHistory(weekly);
+        return stock;
+    }
+
+    private static Calendar day(int year, int month, int day) {
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("America/New_York"));
+        calendar.clear();
+        calendar.set(year, month - 1, day);
+        return calendar;
+    }
+}
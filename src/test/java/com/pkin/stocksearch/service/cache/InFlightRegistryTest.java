@@ -0,0 +1,108 @@
+package com.pkin.stocksearch.service.cache;
+
+import com.pkin.stocksearch.service.exceptions.StockServiceException;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class InFlightRegistryTest {
+
+    @Test
+    public void concurrentCallersShareOneLoad() throws Exception {
+        InFlightRegistry<String, String> registry = new InFlightRegistry<>();
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(5);
+
+        InFlightRegistry.Loader<String> loader = () -> {
+            loads.incrementAndGet();
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "GOOG";
+        };
+
+        List<Future<String>> results = new ArrayList<>();
+        results.add(executor.submit(() -> registry.execute("GOOG", loader)));
+        started.await();
+
+        for (int i = 0; i < 4; i++) {
+            results.add(executor.submit(() -> registry.execute("GOOG", loader)));
+        }
+
+        //Give the waiting callers time to join the in flight request.
+        Thread.sleep(200);
+        release.countDown();
+
+        for (Future<String> result : results) {
+            assertEquals("Every caller should get the shared result", "GOOG", result.get(5, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+
+        assertEquals("Loader should only run once", 1, loads.get());
+        assertEquals("Key should be released after completion", 0, registry.size());
+    }
+
+    @Test
+    public void keyIsReleasedAfterFailure() throws StockServiceException {
+        InFlightRegistry<String, String> registry = new InFlightRegistry<>();
+
+        try {
+            registry.execute("GOOG", () -> {
+                throw new StockServiceException("Upstream failed");
+            });
+            fail("Expected the loader failure to be thrown");
+        } catch (StockServiceException e) {
+            assertEquals("Original exception should be thrown", "Upstream failed", e.getMessage());
+        }
+
+        assertEquals("A new request should run after a failure", "AAPL", registry.execute("GOOG", () -> "AAPL"));
+    }
+
+    @Test(timeout = 10000)
+    public void waitingCallerIsReleasedWhenLoaderThrowsError() throws Exception {
+        InFlightRegistry<String, String> registry = new InFlightRegistry<>();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        Future<String> first = executor.submit(() -> registry.execute("GOOG", () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            throw new StackOverflowError("Loader failed");
+        }));
+        started.await();
+
+        Future<String> second = executor.submit(() -> registry.execute("GOOG", () -> "AAPL"));
+
+        //Give the second caller time to join the in flight request.
+        Thread.sleep(200);
+        release.countDown();
+
+        for (Future<String> result : Arrays.asList(first, second)) {
+            try {
+                result.get(5, TimeUnit.SECONDS);
+                fail("Expected the loader error to be thrown");
+            } catch (ExecutionException e) {
+                assertTrue("Original error should be thrown", e.getCause() instanceof StackOverflowError);
+            }
+        }
+        executor.shutdown();
+
+        assertEquals("Key should be released after an error", 0, registry.size());
+    }
+}
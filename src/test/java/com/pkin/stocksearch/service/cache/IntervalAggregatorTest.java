@@ -0,0 +1,66 @@
+package com.pkin.stocksearch.service.cache;
+
+import org.junit.Test;
+import yahoofinance.histquotes.HistoricalQuote;
+import yahoofinance.histquotes.Interval;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class IntervalAggregatorTest {
+
+    @Test
+    public void weeklyBarsAreBuiltFromDailyBars() {
+        List<HistoricalQuote> daily = new ArrayList<>();
+        //Wednesday 2015-01-07 through Tuesday 2015-01-13, two weeks.
+        for (int day = 7; day <= 13; day++) {
+            daily.add(bar(2015, 1, day, 10 + day, 20 + day, day, 15 + day, 100L));
+        }
+
+        List<HistoricalQuote> weekly = IntervalAggregator.aggregate(daily, Interval.WEEKLY);
+
+        assertEquals("Days should be grouped into two weeks", 2, weekly.size());
+
+        HistoricalQuote first = weekly.get(0);
+        assertEquals("Weekly bar should be dated on Monday", day(2015, 1, 5).getTimeInMillis(), first.getDate().getTimeInMillis());
+        assertEquals("Open should be the first open of the week", new BigDecimal(17), first.getOpen());
+        assertEquals("High should be the highest high of the week", new BigDecimal(31), first.getHigh());
+        assertEquals("Low should be the lowest low of the week", new BigDecimal(7), first.getLow());
+        assertEquals("Close should be the last close of the week", new BigDecimal(26), first.getClose());
+        assertEquals("Volume should be summed", Long.valueOf(500), first.getVolume());
+
+        assertEquals("Second week should hold Monday and Tuesday", Long.valueOf(200), weekly.get(1).getVolume());
+    }
+
+    @Test
+    public void monthlyBarsAreBuiltFromDailyBars() {
+        List<HistoricalQuote> daily = new ArrayList<>();
+        daily.add(bar(2015, 1, 30, 10, 12, 9, 11, 100L));
+        daily.add(bar(2015, 2, 2, 11, 14, 10, 13, null));
+        daily.add(bar(2015, 2, 3, 13, 15, 8, 14, 50L));
+
+        List<HistoricalQuote> monthly = IntervalAggregator.aggregate(daily, Interval.MONTHLY);
+
+        assertEquals("Days should be grouped into two months", 2, monthly.size());
+        assertEquals("Monthly bar should be dated on the first", day(2015, 2, 1).getTimeInMillis(),
+                monthly.get(1).getDate().getTimeInMillis());
+        assertEquals("Low should be the lowest low of the month", new BigDecimal(8), monthly.get(1).getLow());
+        assertEquals("Missing volume should be skipped", Long.valueOf(50), monthly.get(1).getVolume());
+    }
+
+    private static HistoricalQuote bar(int year, int month, int day, int open, int high, int low, int close, Long volume) {
+        return new HistoricalQuote("GOOG", day(year, month, day), new BigDecimal(open), new BigDecimal(low),
+                new BigDecimal(high), new BigDecimal(close), new BigDecimal(close), volume);
+    }
+
+    private static Calendar day(int year, int month, int day) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(year, month - 1, day);
+        return calendar;
+    }
+}
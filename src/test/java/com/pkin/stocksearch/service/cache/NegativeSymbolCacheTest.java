@@ -0,0 +1,53 @@
+package com.pkin.stocksearch.service.cache;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class NegativeSymbolCacheTest {
+
+    @Test
+    public void rejectedSymbolIsRemembered() {
+        NegativeSymbolCache cache = new NegativeSymbolCache(10, 60000);
+
+        cache.reject("zzzz");
+
+        assertTrue("Rejected symbol should be remembered in any case", cache.isRejected("ZZZZ "));
+        assertFalse("Other symbols are not rejected", cache.isRejected("GOOG"));
+    }
+
+    @Test
+    public void rejectionExpires() {
+        NegativeSymbolCache cache = new NegativeSymbolCache(10, 1);
+
+        cache.reject("ZZZZ");
+        long start = System.currentTimeMillis();
+        while (System.currentTimeMillis() - start < 5) {
+            Thread.yield();
+        }
+
+        assertFalse("Expired rejection should be dropped", cache.isRejected("ZZZZ"));
+        assertEquals("Expired rejection should be removed", 0, cache.size());
+    }
+
+    @Test
+    public void cacheIsBounded() {
+        NegativeSymbolCache cache = new NegativeSymbolCache(2, 60000);
+
+        cache.reject("A1");
+        cache.reject("A2");
+        cache.reject("A3");
+
+        assertEquals("Cache should stay within its bound", 2, cache.size());
+        assertFalse("Eldest rejection should be dropped", cache.isRejected("A1"));
+    }
+
+    @Test
+    public void zeroTimeToLiveDisablesCache() {
+        NegativeSymbolCache cache = new NegativeSymbolCache(2, 0);
+
+        cache.reject("ZZZZ");
+
+        assertFalse("Nothing should be rejected", cache.isRejected("ZZZZ"));
+    }
+}
@@ -0,0 +1,36 @@
+package com.pkin.stocksearch.service.cache;
+
+import com.pkin.stocksearch.model.StaleStock;
+import org.junit.Test;
+import yahoofinance.Stock;
+
+import static org.junit.Assert.*;
+
+public class QuoteCacheTest {
+
+    @Test
+    public void freshQuoteIsServedUntilItExpires() throws InterruptedException {
+        QuoteCache cache = new QuoteCache(10, 50);
+        Stock stock = new Stock("GOOG");
+        cache.put(stock);
+
+        assertSame("Fresh quote should be served", stock, cache.getFresh("goog"));
+
+        Thread.sleep(100);
+        assertNull("Expired quote should not be served as fresh", cache.getFresh("GOOG"));
+
+        StaleStock stale = cache.getStale("GOOG");
+        assertNotNull("Expired quote should still be available as stale data", stale);
+        assertEquals("Stale quote should keep the symbol", "GOOG", stale.getSymbol());
+    }
+
+    @Test
+    public void leastRecentlyUsedSymbolIsDropped() {
+        QuoteCache cache = new QuoteCache(1, 60000);
+        cache.put(new Stock("GOOG"));
+        cache.put(new Stock("AAPL"));
+
+        assertNull("Oldest symbol should be dropped", cache.getStale("GOOG"));
+        assertNotNull("Newest symbol should be kept", cache.getFresh("AAPL"));
+    }
+}
@@ -0,0 +1,56 @@
+package com.pkin.stocksearch.service.cache;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RenderedFragmentCacheTest {
+
+    @Test
+    public void sameContentHasSameETag() {
+        RenderedFragmentCache cache = new RenderedFragmentCache(1000);
+
+        RenderedFragmentCache.Fragment first = cache.put("A", "<tr></tr>", "[[1, 2]]", 60000);
+        RenderedFragmentCache.Fragment second = cache.put("B", "<tr></tr>", "[[1, 2]]", 60000);
+        RenderedFragmentCache.Fragment changed = cache.put("C", "<tr></tr>", "[[1, 3]]", 60000);
+
+        assertEquals("Identical renderings should share an ETag", first.getETag(), second.getETag());
+        assertNotEquals("Different chart data should change the ETag", first.getETag(), changed.getETag());
+        assertTrue("ETag should be quoted", first.getETag().startsWith("\"") && first.getETag().endsWith("\""));
+        assertSame("Cached fragment should be returned", first, cache.get("A"));
+    }
+
+    @Test
+    public void expiredFragmentIsDropped() {
+        RenderedFragmentCache cache = new RenderedFragmentCache(1000);
+
+        cache.put("A", "<tr></tr>", "null", -1);
+
+        assertNull("Expired fragment should not be served", cache.get("A"));
+        assertEquals("Expired fragment should be removed", 0, cache.size());
+    }
+
+    @Test
+    public void leastRecentlyUsedFragmentIsEvicted() {
+        RenderedFragmentCache cache = new RenderedFragmentCache(20);
+
+        cache.put("A", "0123456789", "", 60000);
+        cache.put("B", "0123456789", "", 60000);
+        cache.get("A");
+        cache.put("C", "0123456789", "", 60000);
+
+        assertNotNull("Recently used fragment should be kept", cache.get("A"));
+        assertNull("Least recently used fragment should be evicted", cache.get("B"));
+        assertNotNull("Newest fragment should be kept", cache.get("C"));
+    }
+
+    @Test
+    public void oversizedFragmentIsNotKept() {
+        RenderedFragmentCache cache = new RenderedFragmentCache(5);
+
+        RenderedFragmentCache.Fragment fragment = cache.put("A", "0123456789", "", 60000);
+
+        assertNotNull("Oversized fragment should still get an ETag", fragment.getETag());
+        assertEquals("Oversized fragment should not be cached", 0, cache.size());
+    }
+}
@@ -0,0 +1,119 @@
+package com.pkin.stocksearch.service.provider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import yahoofinance.Stock;
+import yahoofinance.histquotes.HistoricalQuote;
+import yahoofinance.histquotes.Interval;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ReplayQuoteProviderTest {
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("replay").toFile();
+        Files.write(new File(directory, "GOOG.csv").toPath(), Arrays.asList(
+                "Date,Open,High,Low,Close,Adj Close,Volume",
+                "2018-01-02,100.00,110.00,90.00,105.00,105.00,1000",
+                "2018-01-03,105.00,120.00,100.00,115.00,115.00,2000",
+                "2018-01-04,null,null,null,null,null,null"), StandardCharsets.UTF_8);
+    }
+
+    @After
+    public void tearDown() {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void recordedHistoryIsReplayed() throws IOException {
+        ReplayQuoteProvider provider = new ReplayQuoteProvider(directory, false, 0, 0);
+
+        Stock stock = provider.getHistory("goog", day(2018, 1, 1), day(2018, 1, 3), Interval.DAILY);
+        List<HistoricalQuote> history = stock.getHistory();
+
+        assertEquals("Only bars inside the range should be returned", 2, history.size());
+        assertEquals("Open should be read from the file", new BigDecimal("100.00"), history.get(0).getOpen());
+        assertEquals("Low should be read from the file", new BigDecimal("90.00"), history.get(0).getLow());
+        assertEquals("Volume should be read from the file", Long.valueOf(2000), history.get(1).getVolume());
+    }
+
+    @Test
+    public void quickQuoteIsDerivedFromRecordedHistory() throws IOException {
+        ReplayQuoteProvider provider = new ReplayQuoteProvider(directory, false, 0, 0);
+
+        Stock stock = provider.getStock("GOOG");
+
+        assertTrue("Replayed stock should be valid", stock.isValid());
+        assertNull("Missing values should stay null", stock.getQuote().getPrice());
+        assertEquals("Previous close should come from the prior bar", new BigDecimal("115.00"),
+                stock.getQuote().getPreviousClose());
+        assertEquals("Year high should cover the recorded bars", new BigDecimal("120.00"), stock.getQuote().getYearHigh());
+    }
+
+    @Test
+    public void batchLeavesOutUnknownSymbols() throws IOException {
+        ReplayQuoteProvider provider = new ReplayQuoteProvider(directory, false, 0, 0);
+
+        Map<String, Stock> stocks = provider.getStocks(new String[]{"goog", "AAPL"});
+
+        assertEquals("Only the recorded symbol should be returned", 1, stocks.size());
+        assertTrue("Stocks should be keyed by upper case symbol", stocks.containsKey("GOOG"));
+    }
+
+    @Test(expected = FileNotFoundException.class)
+    public void unknownSymbolWithoutSyntheticData() throws IOException {
+        new ReplayQuoteProvider(directory, false, 0, 0).getStock("AAPL");
+    }
+
+    @Test
+    public void syntheticDataIsDeterministic() throws IOException {
+        ReplayQuoteProvider provider = new ReplayQuoteProvider(directory, true, 0, 0);
+
+        List<HistoricalQuote> wide = provider.getHistory("AAPL", day(2018, 1, 1), day(2018, 3, 1), Interval.DAILY).getHistory();
+        List<HistoricalQuote> narrow = provider.getHistory("AAPL", day(2018, 2, 1), day(2018, 2, 2), Interval.DAILY).getHistory();
+
+        assertEquals("Synthetic range should only hold weekdays", 2, narrow.size());
+        for (HistoricalQuote quote : wide) {
+            if (quote.getDate().getTimeInMillis() == narrow.get(0).getDate().getTimeInMillis()) {
+                assertEquals("Same day should have the same price", narrow.get(0).getClose(), quote.getClose());
+            }
+        }
+        assertNotNull("Synthetic quick quote should have a price", provider.getStock("AAPL").getQuote().getPrice());
+    }
+
+    @Test
+    public void latencyIsInjected() throws IOException {
+        ReplayQuoteProvider provider = new ReplayQuoteProvider(directory, true, 50, 0);
+
+        long start = System.nanoTime();
+        provider.getStock("GOOG");
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+
+        assertTrue("Call should take at least the configured latency", elapsedMillis >= 50);
+    }
+
+    private static Calendar day(int year, int month, int day) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(year, month - 1, day);
+        return calendar;
+    }
+}
@@ -0,0 +1,226 @@
+package com.pkin.stocksearch.service.searchlog;
+
+import com.pkin.stocksearch.model.SearchDAO;
+import com.pkin.stocksearch.service.exceptions.DatabaseServiceException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLDataException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class SearchJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void appendedSearchesAreShipped() throws Exception {
+        List<SearchDAO> shipped = new ArrayList<>();
+        SearchJournal journal = open(shipped::addAll, 1 << 20, 10);
+
+        SearchDAO search = search("AAPL");
+        search.setTypeOfSearch(0);
+        search.setTimeStamp(Timestamp.valueOf("2018-11-24 03:36:53.364"));
+        assertTrue(journal.offer(search));
+        assertTrue(journal.offer(search("GOOG")));
+
+        assertEquals(2, journal.ship());
+        assertEquals(0, journal.ship());
+        journal.stop(0);
+
+        assertEquals(2, shipped.size());
+        assertEquals("AAPL", shipped.get(0).getStockSymbol());
+        assertEquals(Integer.valueOf(0), shipped.get(0).getTypeOfSearch());
+        assertNull(shipped.get(0).getUserId());
+        assertEquals(search.getTimeStamp(), shipped.get(0).getTimeStamp());
+        assertEquals("GOOG", shipped.get(1).getStockSymbol());
+    }
+
+    @Test
+    public void failedBatchIsShippedAgain() throws Exception {
+        List<SearchDAO> shipped = new ArrayList<>();
+        boolean[] down = {true};
+        SearchJournal journal = open(batch -> {
+            if (down[0]) {
+                throw new IllegalStateException("Database down");
+            }
+            shipped.addAll(batch);
+        }, 1 << 20, 10);
+
+        journal.offer(search("AAPL"));
+        try {
+            journal.ship();
+            fail("Sink failure should be reported");
+        } catch (IllegalStateException e) {
+            //Expected
+        }
+        assertEquals(1, journal.getShipFailures());
+
+        down[0] = false;
+        assertEquals(1, journal.ship());
+        assertEquals("AAPL", shipped.get(0).getStockSymbol());
+        journal.stop(0);
+    }
+
+    @Test
+    public void rejectedSearchIsSkipped() throws Exception {
+        List<SearchDAO> shipped = new ArrayList<>();
+        SearchLog.BatchSink sink = batch -> {
+            for (SearchDAO search : batch) {
+                if (search.getStockSymbol().length() > 6) {
+                    throw new DatabaseServiceException("Could not add a batch",
+                            new SQLDataException("A truncation error was encountered", "22001"));
+                }
+            }
+            shipped.addAll(batch);
+        };
+        SearchJournal journal = open(sink, 1 << 20, 10);
+
+        journal.offer(search("AAPL"));
+        journal.offer(search("TOOLONGSYMBOL"));
+        journal.offer(search("GOOG"));
+
+        assertEquals(3, journal.ship());
+        assertEquals(0, journal.ship());
+        journal.stop(0);
+
+        assertEquals(2, journal.getShipped());
+        assertEquals(1, journal.getRejected());
+        assertEquals(0, journal.getShipFailures());
+        assertEquals("AAPL", shipped.get(0).getStockSymbol());
+        assertEquals("GOOG", shipped.get(1).getStockSymbol());
+
+        //The checkpoint moved past the rejected search, so it is not shipped again.
+        journal = open(sink, 1 << 20, 10);
+        assertEquals(0, journal.ship());
+        journal.stop(0);
+        assertEquals(2, shipped.size());
+    }
+
+    @Test
+    public void reopenedJournalResumesFromCheckpoint() throws Exception {
+        List<SearchDAO> shipped = new ArrayList<>();
+        SearchJournal journal = open(shipped::addAll, 1 << 20, 2);
+        for (int i = 0; i < 5; i++) {
+            journal.offer(search("S" + i));
+        }
+        assertEquals(2, journal.ship());
+        //Simulates a crash, nothing more is shipped on the way down.
+        journal.stop(-1);
+
+        journal = open(shipped::addAll, 1 << 20, 10);
+        journal.offer(search("S5"));
+        assertEquals(4, journal.ship());
+        journal.stop(0);
+
+        assertEquals(6, shipped.size());
+        for (int i = 0; i < 6; i++) {
+            assertEquals("S" + i, shipped.get(i).getStockSymbol());
+        }
+    }
+
+    @Test
+    public void tornRecordIsCutOff() throws Exception {
+        SearchJournal journal = open(batch -> {
+        }, 1 << 20, 10);
+        journal.offer(search("AAPL"));
+        journal.stop(-1);
+
+        Path segment = segments().get(0);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(new byte[]{0, 0, 0, 40, 1, 2}));
+        }
+
+        List<SearchDAO> shipped = new ArrayList<>();
+        journal = open(shipped::addAll, 1 << 20, 10);
+        journal.offer(search("GOOG"));
+        assertEquals(2, journal.ship());
+        journal.stop(0);
+
+        assertEquals("AAPL", shipped.get(0).getStockSymbol());
+        assertEquals("GOOG", shipped.get(1).getStockSymbol());
+    }
+
+    @Test
+    public void shippedSegmentsAreDeleted() throws Exception {
+        List<SearchDAO> shipped = new ArrayList<>();
+        //The smallest segment still holds a few thousand of these records.
+        SearchJournal journal = open(shipped::addAll, 1 << 20, 1000);
+        for (int i = 0; i < 5000; i++) {
+            assertTrue(journal.offer(search("S" + i)));
+        }
+        assertTrue("Segments should roll", segments().size() > 1);
+
+        while (journal.ship() > 0) {
+            //Ship everything.
+        }
+
+        assertEquals(5000, shipped.size());
+        assertEquals("Only the current segment should be left", 1, segments().size());
+        journal.stop(0);
+    }
+
+    @Test
+    public void fullJournalDropsSearches() throws Exception {
+        SearchJournal journal = open(batch -> {
+        }, 0, 1000);
+
+        int accepted = 0;
+        while (journal.offer(search("S" + accepted)) && accepted < 100000) {
+            accepted++;
+        }
+        assertTrue("Journal should fill up", accepted < 100000);
+        assertEquals(accepted, journal.getAppended());
+        assertEquals(1, journal.getDropped());
+
+        while (journal.ship() > 0) {
+            //Ship everything.
+        }
+        assertTrue("Shipping should make room", journal.offer(search("AAPL")));
+        journal.stop(0);
+    }
+
+    @Test(expected = IOException.class)
+    public void journalCannotBeOpenedTwice() throws Exception {
+        SearchJournal journal = open(batch -> {
+        }, 1 << 20, 10);
+        try {
+            open(batch -> {
+            }, 1 << 20, 10);
+        } finally {
+            journal.stop(0);
+        }
+    }
+
+    private SearchJournal open(SearchLog.BatchSink sink, long maxBytes, int batchSize) throws IOException {
+        return new SearchJournal(folder.getRoot().toPath(), sink, 0, maxBytes, batchSize);
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(folder.getRoot().toPath())) {
+            return files.filter(path -> path.getFileName().toString().startsWith("segment-"))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static SearchDAO search(String symbol) {
+        SearchDAO search = new SearchDAO();
+        search.setStockSymbol(symbol);
+        search.setDevice("iPhone");
+        return search;
+    }
+}
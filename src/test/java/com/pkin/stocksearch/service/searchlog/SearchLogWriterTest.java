@@ -0,0 +1,131 @@
+package com.pkin.stocksearch.service.searchlog;
+
+import com.pkin.stocksearch.model.SearchDAO;
+import com.pkin.stocksearch.service.exceptions.DatabaseServiceException;
+import org.junit.Test;
+
+import java.sql.SQLDataException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class SearchLogWriterTest {
+
+    @Test
+    public void fullQueueDropsSearches() {
+        SearchLogWriter writer = new SearchLogWriter(batch -> {
+        }, 2, 10, 1000, 1);
+
+        assertTrue(writer.offer(search("AAPL")));
+        assertTrue(writer.offer(search("GOOG")));
+        assertFalse("Full queue should drop the search", writer.offer(search("F")));
+
+        assertEquals(2, writer.getAccepted());
+        assertEquals(1, writer.getDropped());
+        assertEquals(2, writer.getQueued());
+        assertTrue("Logged summary should show the drops", writer.toString().contains("dropped=1"));
+    }
+
+    @Test
+    public void flushWritesInBatches() {
+        List<Integer> sizes = new ArrayList<>();
+        SearchLogWriter writer = new SearchLogWriter(batch -> sizes.add(batch.size()), 10, 3, 1000, 1);
+
+        for (int i = 0; i < 7; i++) {
+            writer.offer(search("S" + i));
+        }
+        writer.flush();
+
+        assertEquals(Arrays.asList(3, 3, 1), sizes);
+        assertEquals(7, writer.getWritten());
+        assertEquals(0, writer.getQueued());
+    }
+
+    @Test
+    public void partialBatchIsWrittenAfterFlushTime() throws InterruptedException {
+        CountDownLatch written = new CountDownLatch(1);
+        List<String> symbols = Collections.synchronizedList(new ArrayList<>());
+        SearchLogWriter writer = new SearchLogWriter(batch -> {
+            batch.forEach(search -> symbols.add(search.getStockSymbol()));
+            written.countDown();
+        }, 10, 100, 20, 1);
+
+        writer.start();
+        try {
+            writer.offer(search("AAPL"));
+            writer.offer(search("GOOG"));
+
+            assertTrue("Partial batch should be written", written.await(5, TimeUnit.SECONDS));
+        } finally {
+            writer.stop(1000);
+        }
+
+        assertEquals(2, writer.getWritten());
+        assertTrue(symbols.contains("AAPL") && symbols.contains("GOOG"));
+    }
+
+    @Test
+    public void stopDrainsQueue() {
+        List<String> symbols = Collections.synchronizedList(new ArrayList<>());
+        SearchLogWriter writer = new SearchLogWriter(batch -> batch.forEach(search -> symbols.add(search.getStockSymbol())),
+                100, 10, 60000, 2);
+
+        for (int i = 0; i < 25; i++) {
+            writer.offer(search("S" + i));
+        }
+        writer.start();
+        writer.stop(5000);
+
+        assertEquals(25, symbols.size());
+        assertEquals(25, writer.getWritten());
+    }
+
+    @Test
+    public void failedBatchIsCounted() {
+        SearchLogWriter writer = new SearchLogWriter(batch -> {
+            throw new IllegalStateException("Database down");
+        }, 10, 10, 1000, 1);
+
+        writer.offer(search("AAPL"));
+        writer.offer(search("GOOG"));
+        writer.flush();
+
+        assertEquals(0, writer.getWritten());
+        assertEquals(2, writer.getFailed());
+    }
+
+    @Test
+    public void rejectedSearchDoesNotLoseItsBatch() {
+        List<String> symbols = new ArrayList<>();
+        SearchLogWriter writer = new SearchLogWriter(batch -> {
+            for (SearchDAO search : batch) {
+                if (search.getStockSymbol().length() > 6) {
+                    throw new DatabaseServiceException("Could not add a batch",
+                            new SQLDataException("A truncation error was encountered", "22001"));
+                }
+            }
+            batch.forEach(search -> symbols.add(search.getStockSymbol()));
+        }, 10, 10, 1000, 1);
+
+        writer.offer(search("AAPL"));
+        writer.offer(search("TOOLONGSYMBOL"));
+        writer.offer(search("GOOG"));
+        writer.flush();
+
+        assertEquals(Arrays.asList("AAPL", "GOOG"), symbols);
+        assertEquals(2, writer.getWritten());
+        assertEquals(1, writer.getRejected());
+        assertEquals(0, writer.getFailed());
+    }
+
+    private static SearchDAO search(String symbol) {
+        SearchDAO search = new SearchDAO();
+        search.setStockSymbol(symbol);
+        return search;
+    }
+}
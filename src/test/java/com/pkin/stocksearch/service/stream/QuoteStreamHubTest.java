@@ -0,0 +1,106 @@
+package com.pkin.stocksearch.service.stream;
+
+import org.junit.After;
+import org.junit.Test;
+import yahoofinance.Stock;
+import yahoofinance.quotes.stock.StockQuote;
+
+import java.math.BigDecimal;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class QuoteStreamHubTest {
+
+    private final AtomicInteger polls = new AtomicInteger();
+    private QuoteStreamHub hub;
+
+    @After
+    public void tearDown() {
+        if (hub != null) {
+            hub.shutdown();
+        }
+    }
+
+    @Test
+    public void oneLoopServesEverySubscriber() throws InterruptedException {
+        hub = new QuoteStreamHub(this::fakePoll, 20, 20, 20, 2);
+        RecordingSubscriber first = new RecordingSubscriber(true);
+        RecordingSubscriber second = new RecordingSubscriber(true);
+
+        hub.subscribe("goog", first);
+        hub.subscribe("GOOG", second);
+        Thread.sleep(200);
+
+        assertEquals("Both clients should share one loop", 1, hub.getPolledSymbolCount());
+        assertFalse("Quotes should reach the first client", first.quotes.isEmpty());
+        assertFalse("Quotes should reach the second client", second.quotes.isEmpty());
+
+        //A poll may be in progress when sampling, hence the slack of one.
+        assertTrue("Upstream should be polled once per update, not once per client",
+                polls.get() <= first.quotes.size() + 1);
+    }
+
+    @Test
+    public void loopStopsWithLastSubscriber() throws InterruptedException {
+        hub = new QuoteStreamHub(this::fakePoll, 20, 20, 20, 2);
+        RecordingSubscriber gone = new RecordingSubscriber(false);
+
+        hub.subscribe("GOOG", gone);
+        Thread.sleep(200);
+
+        assertEquals("Disconnected client should stop the loop", 0, hub.getPolledSymbolCount());
+        int stoppedAt = polls.get();
+        Thread.sleep(100);
+        assertEquals("Stopped loop should not poll", stoppedAt, polls.get());
+    }
+
+    @Test
+    public void pollIntervalAdapts() {
+        hub = new QuoteStreamHub(this::fakePoll, 8000, 1000, 60000, 1);
+        ZonedDateTime open = ZonedDateTime.of(2018, 3, 7, 11, 0, 0, 0, ZoneId.of("America/New_York"));
+        ZonedDateTime weekend = ZonedDateTime.of(2018, 3, 10, 11, 0, 0, 0, ZoneId.of("America/New_York"));
+
+        assertEquals("Single client while open", 8000, hub.nextDelay(1, open));
+        assertEquals("More clients should poll faster", 4000, hub.nextDelay(2, open));
+        assertEquals("Interval should not drop below the minimum", 1000, hub.nextDelay(1000, open));
+        assertEquals("Closed market should poll slowly", 60000, hub.nextDelay(1000, weekend));
+        assertFalse("Market is closed after 16:00", QuoteStreamHub.isMarketOpen(open.withHour(16)));
+    }
+
+    /**
+     * Fake upstream whose price moves on every poll.
+     */
+    private Stock fakePoll(String symbol) {
+        StockQuote quote = new StockQuote(symbol);
+        quote.setPrice(new BigDecimal(polls.incrementAndGet()));
+
+        Stock stock = new Stock(symbol);
+        stock.setQuote(quote);
+        return stock;
+    }
+
+    private static class RecordingSubscriber implements QuoteStreamHub.Subscriber {
+        private final boolean alive;
+        private final List<Stock> quotes = new CopyOnWriteArrayList<>();
+
+        private RecordingSubscriber(boolean alive) {
+            this.alive = alive;
+        }
+
+        @Override
+        public boolean onQuote(Stock stock) {
+            quotes.add(stock);
+            return alive;
+        }
+
+        @Override
+        public boolean onKeepAlive() {
+            return alive;
+        }
+    }
+}
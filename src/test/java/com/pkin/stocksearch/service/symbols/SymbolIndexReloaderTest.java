@@ -0,0 +1,66 @@
+package com.pkin.stocksearch.service.symbols;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.Assert.*;
+
+public class SymbolIndexReloaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void changedFileIsSwappedIn() throws IOException {
+        Path file = write(folder.newFile("stocks.csv").toPath(), "AAPL,Apple Inc.\n", 1000);
+        SymbolIndexReloader reloader = new SymbolIndexReloader(file, load("AAPL,Apple Inc.\n"));
+        SymbolIndex before = reloader.get();
+
+        assertFalse("Unchanged file should not be reloaded", reloader.reloadIfChanged());
+        assertSame("Index should be kept", before, reloader.get());
+
+        write(file, "AAPL,Apple Inc.\nGOOG,Alphabet Inc.\n", 2000);
+
+        assertTrue("Changed file should be reloaded", reloader.reloadIfChanged());
+        assertNotNull("New symbol should be listed", reloader.get().get("GOOG"));
+        assertNull("Old index should be untouched", before.get("GOOG"));
+    }
+
+    @Test
+    public void emptyFileKeepsCurrentIndex() throws IOException {
+        Path file = write(folder.newFile("stocks.csv").toPath(), "AAPL,Apple Inc.\n", 1000);
+        SymbolIndexReloader reloader = new SymbolIndexReloader(file, load("AAPL,Apple Inc.\n"));
+
+        write(file, "", 2000);
+
+        assertFalse("Empty file should not be published", reloader.reloadIfChanged());
+        assertNotNull("Current index should be kept", reloader.get().get("AAPL"));
+    }
+
+    @Test
+    public void missingFileKeepsCurrentIndex() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("missing.csv");
+        SymbolIndexReloader reloader = new SymbolIndexReloader(file, load("AAPL,Apple Inc.\n"));
+
+        assertFalse("Missing file should not be published", reloader.reloadIfChanged());
+        assertNotNull("Current index should be kept", reloader.get().get("AAPL"));
+    }
+
+    private static SymbolIndex load(String csv) throws IOException {
+        return SymbolIndex.load(new StringReader(csv));
+    }
+
+    private static Path write(Path file, String csv, long modified) throws IOException {
+        Files.write(file, csv.getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(file, FileTime.fromMillis(modified));
+        return file;
+    }
+}
@@ -0,0 +1,88 @@
+package com.pkin.stocksearch.service.symbols;
+
+import com.pkin.stocksearch.model.SymbolListing;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SymbolIndexTest {
+
+    private SymbolIndex index;
+
+    @Before
+    public void setUp() throws IOException {
+        index = SymbolIndex.load(new StringReader(
+                "AAL,\"American Airlines Group, Inc.\"\n" +
+                        "AA,Alcoa Corporation\n" +
+                        "AAPL,Apple Inc.\n" +
+                        "GOOG,Alphabet Inc.\n" +
+                        "GOOGL,Alphabet Inc.\n" +
+                        "AIR,AAR Corp.\n" +
+                        "AAPL,Duplicate Apple\n"));
+    }
+
+    @Test
+    public void symbolsAreRankedExactThenShortest() {
+        List<SymbolListing> matches = index.search("aa", 10);
+
+        assertEquals("Exact symbol should come first", "AA", matches.get(0).getSymbol());
+        assertEquals("Shorter symbols before longer ones", "AAL", matches.get(1).getSymbol());
+        assertEquals("Longer symbol after", "AAPL", matches.get(2).getSymbol());
+        assertEquals("Name starting with the query comes after symbols", "AIR", matches.get(3).getSymbol());
+    }
+
+    @Test
+    public void namesMatchFromAnyWord() {
+        List<SymbolListing> matches = index.search("airlines gr", 10);
+
+        assertEquals("Only one name has those words", 1, matches.size());
+        assertEquals("American Airlines Group should match", "AAL", matches.get(0).getSymbol());
+    }
+
+    @Test
+    public void nameStartRanksBeforeLaterWord() {
+        List<SymbolListing> matches = index.search("air", 10);
+
+        assertEquals("Exact symbol first", "AIR", matches.get(0).getSymbol());
+        assertEquals("Later word match after", "AAL", matches.get(1).getSymbol());
+    }
+
+    @Test
+    public void limitAndDuplicatesAreRespected() {
+        assertEquals("Duplicate symbol should keep its first listing", 6, index.size());
+        assertEquals("First listing should be kept", "Apple Inc.", index.get("aapl").getName());
+        assertEquals("Limit should cap the matches", 2, index.search("a", 2).size());
+        assertTrue("Blank query finds nothing", index.search("  ", 10).isEmpty());
+        assertNull("Unlisted symbol", index.get("ZZZZ"));
+    }
+
+    @Test
+    public void bundledListIsIndexed() throws IOException {
+        SymbolIndex bundled = SymbolIndex.fromResource("stocks.csv");
+
+        assertTrue("Bundled list should hold thousands of symbols", bundled.size() > 1000);
+        assertEquals("Agilent should be listed", "A", bundled.search("agilent", 5).get(0).getSymbol());
+    }
+
+    @Test
+    public void misspelledNameIsMatched() throws IOException {
+        SymbolIndex bundled = SymbolIndex.fromResource("stocks.csv");
+
+        assertEquals("Misspelled name should find the company", "A", bundled.fuzzySearch("Agilant", 3).get(0).getSymbol());
+        assertTrue("Autocomplete should fall back to similar names",
+                bundled.search("agilant tech", 10).stream().anyMatch(match -> "A".equals(match.getSymbol())));
+        assertTrue("Unrelated text should not match", bundled.fuzzySearch("qqqqxz", 3).isEmpty());
+        assertTrue("Short queries are not matched fuzzily", bundled.fuzzySearch("agi", 3).isEmpty());
+    }
+
+    @Test
+    public void trigramsArePaddedAndDistinct() {
+        assertEquals("\" aaa \" has \" aa\", \"aaa\" and \"aa \"", 3, TrigramIndex.trigrams("aaa").length);
+        assertEquals("\"ab\" has \" ab\" and \"ab \"", 2, TrigramIndex.trigrams("ab").length);
+    }
+}
@@ -0,0 +1,117 @@
+package com.pkin.stocksearch.servlet;
+
+import com.pkin.stocksearch.utilities.JsonWriter;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import yahoofinance.Stock;
+import yahoofinance.quotes.stock.StockQuote;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class ApiServletTest {
+
+    @Mock
+    HttpServletRequest request;
+    @Mock
+    HttpServletResponse response;
+
+    private StringWriter body;
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        body = new StringWriter();
+        when(response.getWriter()).thenReturn(new PrintWriter(body));
+    }
+
+    @Test
+    public void unknownResourceIsNotFound() throws Exception {
+        when(request.getPathInfo()).thenReturn("/chart/GOOG");
+
+        new ApiServlet().doGet(request, response);
+
+        verify(response).setStatus(HttpServletResponse.SC_NOT_FOUND);
+        verify(response).setContentType("application/json");
+        assertTrue("Error should be JSON", body.toString().startsWith("{\"error\":"));
+    }
+
+    @Test
+    public void invalidSymbolIsNotFound() throws Exception {
+        when(request.getPathInfo()).thenReturn("/quote/<script>");
+
+        new ApiServlet().doGet(request, response);
+
+        verify(response).setStatus(HttpServletResponse.SC_NOT_FOUND);
+    }
+
+    @Test
+    public void malformedHistoryRequestIsRejected() throws Exception {
+        when(request.getPathInfo()).thenReturn("/history/GOOG");
+        when(request.getParameter("start")).thenReturn("01/01/2018");
+
+        new ApiServlet().doGet(request, response);
+
+        verify(response).setStatus(HttpServletResponse.SC_BAD_REQUEST);
+    }
+
+    @Test
+    public void reversedRangeIsRejected() throws Exception {
+        when(request.getPathInfo()).thenReturn("/history/GOOG");
+        when(request.getParameter("start")).thenReturn("2018-02-01");
+        when(request.getParameter("end")).thenReturn("2018-01-01");
+
+        new ApiServlet().doGet(request, response);
+
+        verify(response).setStatus(HttpServletResponse.SC_BAD_REQUEST);
+        assertTrue("Error should explain the range", body.toString().contains("end is before start"));
+    }
+
+    @Test
+    public void malformedExportRequestIsRejected() throws Exception {
+        when(request.getPathInfo()).thenReturn("/export/GOOG");
+        when(request.getParameter("start")).thenReturn("2018-01-01");
+        when(request.getParameter("interval")).thenReturn("HOURLY");
+
+        new ApiServlet().doGet(request, response);
+
+        verify(response).setStatus(HttpServletResponse.SC_BAD_REQUEST);
+        verify(response, never()).getOutputStream();
+    }
+
+    @Test
+    public void symbolsAreSuggested() throws Exception {
+        when(request.getPathInfo()).thenReturn("/symbols");
+        when(request.getParameter("q")).thenReturn("agilent");
+        when(request.getParameter("limit")).thenReturn("1");
+
+        new ApiServlet().doGet(request, response);
+
+        verify(response).setStatus(HttpServletResponse.SC_OK);
+        assertEquals("[{\"symbol\":\"A\",\"name\":\"Agilent Technologies, Inc.\"}]", body.toString());
+    }
+
+    @Test
+    public void quoteWithoutPreviousCloseHasNoChangePercent() throws Exception {
+        StockQuote quote = new StockQuote("GOOG");
+        quote.setPrice(new BigDecimal("1234.50"));
+        quote.setVolume(100L);
+
+        Stock stock = new Stock("GOOG");
+        stock.setQuote(quote);
+
+        StringWriter out = new StringWriter();
+        ApiServlet.writeQuote(new JsonWriter(out), stock);
+
+        assertTrue("Missing previous close should not read as an unchanged price",
+                out.toString().contains("\"change\":null,\"changePercent\":null,"));
+    }
+}
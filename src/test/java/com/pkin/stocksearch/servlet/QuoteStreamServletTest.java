@@ -0,0 +1,56 @@
+package com.pkin.stocksearch.servlet;
+
+import com.pkin.stocksearch.model.StaleStock;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import yahoofinance.Stock;
+import yahoofinance.quotes.stock.StockQuote;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.math.BigDecimal;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+public class QuoteStreamServletTest {
+
+    @Mock
+    HttpServletRequest request;
+    @Mock
+    HttpServletResponse response;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+    }
+
+    @Test
+    public void invalidSymbolIsRejected() throws Exception {
+        when(request.getParameter("symbol")).thenReturn("<script>");
+
+        new QuoteStreamServlet().doGet(request, response);
+
+        verify(response).sendError(eq(HttpServletResponse.SC_BAD_REQUEST), anyString());
+        verify(request, never()).startAsync(request, response);
+    }
+
+    @Test
+    public void quoteIsSerializedAsJson() {
+        StockQuote quote = new StockQuote("GOOG");
+        quote.setPrice(new BigDecimal("1234.50"));
+        quote.setVolume(100L);
+
+        Stock stock = new Stock("GOOG");
+        stock.setQuote(quote);
+
+        assertEquals("{\"symbol\":\"GOOG\",\"price\":1234.50,\"change\":null,\"changePercent\":null," +
+                "\"volume\":100,\"time\":null,\"stale\":false}", QuoteStreamServlet.toJson(stock));
+        assertTrue("Stale quotes should be flagged",
+                QuoteStreamServlet.toJson(StaleStock.of(stock, 0)).endsWith("\"stale\":true}"));
+    }
+}
@@ -1,5 +1,6 @@
 package com.pkin.stocksearch.servlet;
 
+import com.pkin.stocksearch.service.cache.RenderedFragmentCache;
 import com.pkin.stocksearch.utilities.WebUtils;
 import org.junit.Before;
 import org.junit.Test;
@@ -8,12 +9,15 @@ import org.mockito.*;
 import javax.servlet.*;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import javax.servlet.http.HttpSession;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
 
 import static org.junit.Assert.*;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.startsWith;
 import static org.mockito.Mockito.*;
 
 public class StockSearchServletTest {
@@ -25,8 +29,6 @@ public class StockSearchServletTest {
     @Mock
     HttpServletResponse response;
     @Mock
-    HttpSession session;
-    @Mock
     RequestDispatcher requestDispatcherMock;
     @Mock
     ServletConfig servletConfigMock;
@@ -49,8 +51,7 @@ public class StockSearchServletTest {
         when(request.getParameter("interval")).thenReturn("DAILY");
         when(request.getHeader("User-Agent")).thenReturn(userAgent);
 
-        when(request.getSession()).thenReturn(session);
-        when(session.getServletContext()).thenReturn(servletContextMock);
+        when(request.getServletContext()).thenReturn(servletContextMock);
         when(servletContextMock.getRequestDispatcher("/ReturnedResults.jsp")).thenReturn(requestDispatcherMock);
 
         StringWriter sw = new StringWriter();
@@ -63,7 +64,7 @@ public class StockSearchServletTest {
         servlet.init(servletConfigMock);
         servlet.doGet(request, response);
 
-        verify(session).getServletContext();
+        verify(request).getServletContext();
         verify(requestDispatcherMock).forward(request, response);
 
     }
@@ -80,8 +81,7 @@ public class StockSearchServletTest {
         when(request.getParameter("interval")).thenReturn("DAILY");
         when(request.getHeader("User-Agent")).thenReturn(userAgent);
 
-        when(request.getSession()).thenReturn(session);
-        when(session.getServletContext()).thenReturn(servletContextMock);
+        when(request.getServletContext()).thenReturn(servletContextMock);
         when(servletContextMock.getRequestDispatcher("/ReturnedResults.jsp")).thenReturn(requestDispatcherMock);
 
         StringWriter sw = new StringWriter();
@@ -93,7 +93,7 @@ public class StockSearchServletTest {
         servlet.init(servletConfigMock);
         servlet.doGet(request, response);
 
-        verify(session).getServletContext();
+        verify(request).getServletContext();
         verify(requestDispatcherMock).forward(request, response);
 
     }
@@ -110,8 +110,33 @@ public class StockSearchServletTest {
         when(request.getParameter("interval")).thenReturn("DAILY");
         when(request.getHeader("User-Agent")).thenReturn(userAgent);
 
-        when(request.getSession()).thenReturn(session);
-        when(session.getServletContext()).thenReturn(servletContextMock);
+        when(request.getServletContext()).thenReturn(servletContextMock);
+        when(servletContextMock.getRequestDispatcher("/ReturnedResults.jsp")).thenReturn(requestDispatcherMock);
+
+        StringWriter sw = new StringWriter();
+        PrintWriter pw = new PrintWriter(sw);
+
+        when(response.getWriter()).thenReturn(pw);
+
+        StockSearchServlet servlet = new StockSearchServlet();
+        servlet.init(servletConfigMock);
+        servlet.doGet(request, response);
+
+        verify(request).getServletContext();
+        verify(requestDispatcherMock).forward(request, response);
+
+    }
+
+
+    @Test
+    public void StockSearchServletBatchQuickQuote() throws Exception {
+        String userAgent = "Mozilla/5.0 (iPhone; CPU iPhone OS 5_1_1 like Mac OS X) AppleWebKit/534.46 " +
+                "(KHTML, like Gecko) Version/5.1 Mobile/9B206 Safari/7534.48.3";
+
+        when(request.getParameter("quickSymbols")).thenReturn("PDS, AAPL,F**");
+        when(request.getHeader("User-Agent")).thenReturn(userAgent);
+
+        when(request.getServletContext()).thenReturn(servletContextMock);
         when(servletContextMock.getRequestDispatcher("/ReturnedResults.jsp")).thenReturn(requestDispatcherMock);
 
         StringWriter sw = new StringWriter();
@@ -123,7 +148,9 @@ public class StockSearchServletTest {
         servlet.init(servletConfigMock);
         servlet.doGet(request, response);
 
-        verify(session).getServletContext();
+        verify(request).getServletContext();
+        verify(request).setAttribute(eq("formattedQuote"), anyString());
+        verify(request, never()).getSession();
         verify(requestDispatcherMock).forward(request, response);
 
     }
@@ -145,4 +172,37 @@ public class StockSearchServletTest {
         assertNotEquals("Overriden hashCode() matches false", 1, 2);
 
     }
-}
\ No newline at end of file
+
+    @Test
+    public void ifNoneMatchIsCompared() {
+        assertTrue("Matching ETag", StockSearchServlet.matchesETag("\"abc\"", "\"abc\""));
+        assertTrue("ETag in a list", StockSearchServlet.matchesETag("\"x\", W/\"abc\"", "\"abc\""));
+        assertTrue("Wildcard", StockSearchServlet.matchesETag("*", "\"abc\""));
+        assertFalse("Different ETag", StockSearchServlet.matchesETag("\"abd\"", "\"abc\""));
+        assertFalse("Missing header", StockSearchServlet.matchesETag(null, "\"abc\""));
+    }
+
+    @Test
+    public void fragmentKeyIsNormalized() {
+        ArrayList<String> lower = new ArrayList<>(Arrays.asList("aapl ", "01/01/2018", "02/01/2018", "DAILY", null, null, null));
+        ArrayList<String> upper = new ArrayList<>(Arrays.asList("AAPL", "01/01/2018", "02/01/2018", "DAILY", null, null, null));
+        ArrayList<String> quick = new ArrayList<>(Arrays.asList(null, null, null, null, "AAPL", null, null));
+        ArrayList<String> badDate = new ArrayList<>(Arrays.asList("AAPL", "2018-01-01", "02/01/2018", "DAILY", null, null, null));
+
+        assertNotNull("Historical search should have a key", StockSearchServlet.fragmentKey(upper));
+        assertEquals("Symbol case and spacing should not matter", StockSearchServlet.fragmentKey(upper), StockSearchServlet.fragmentKey(lower));
+        assertNull("Quick quotes are not cached", StockSearchServlet.fragmentKey(quick));
+        assertNull("Invalid dates are not cached", StockSearchServlet.fragmentKey(badDate));
+    }
+
+    @Test
+    public void renderedResultsAreNotCachedByProxies() {
+        RenderedFragmentCache.Fragment fragment = new RenderedFragmentCache(1000).put("AAPL", "<table></table>", "[]", 60000);
+        ArrayList<String> closed = new ArrayList<>(Arrays.asList("AAPL", "01/01/2018", "02/01/2018", "DAILY", null, null, null));
+
+        StockSearchServlet.writeCacheHeaders(response, fragment, closed);
+
+        verify(response).setHeader("ETag", fragment.getETag());
+        verify(response).setHeader(eq("Cache-Control"), startsWith("private, max-age="));
+    }
+}
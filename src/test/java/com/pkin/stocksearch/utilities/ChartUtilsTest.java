@@ -0,0 +1,74 @@
+package com.pkin.stocksearch.utilities;
+
+import com.pkin.stocksearch.model.BarSeries;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ChartUtilsTest {
+
+    @Test
+    public void longSeriesIsReducedToTarget() {
+        BarSeries series = buildSeries(5000);
+        BarSeries reduced = ChartUtils.downsample(series, 500);
+
+        assertEquals("Series should be reduced to the target", 500, reduced.size());
+        assertEquals("First bar should be kept", series.getDate(0), reduced.getDate(0));
+        assertEquals("Last bar should be kept", series.getDate(4999), reduced.getDate(499));
+
+        for (int i = 1; i < reduced.size(); i++) {
+            assertTrue("Bars should stay in date order", reduced.getDate(i) > reduced.getDate(i - 1));
+        }
+    }
+
+    @Test
+    public void spikeIsKept() {
+        BarSeries series = buildSeries(1000);
+        long spikeDate = series.getDate(600);
+
+        //Flat line with a single spike.
+        long[] dates = new long[1000];
+        long[] close = new long[1000];
+        for (int i = 0; i < 1000; i++) {
+            dates[i] = series.getDate(i);
+            close[i] = i == 600 ? 5000000 : 1000000;
+        }
+        BarSeries flat = new BarSeries(dates, close, close, close, close, close, new long[1000]);
+
+        BarSeries reduced = ChartUtils.downsample(flat, 50);
+        boolean found = false;
+        for (int i = 0; i < reduced.size(); i++) {
+            found |= reduced.getDate(i) == spikeDate;
+        }
+
+        assertTrue("Downsampling should keep the spike", found);
+    }
+
+    @Test
+    public void shortSeriesIsUnchanged() {
+        BarSeries series = buildSeries(100);
+
+        assertSame("Series within the target should be returned as is", series, ChartUtils.downsample(series, 500));
+    }
+
+    @Test
+    public void missingClosesAreLeftOut() {
+        long[] dates = {1, 2, 3};
+        long[] close = {100, BarSeries.MISSING, 300};
+        BarSeries series = new BarSeries(dates, close, close, close, close, close, new long[3]);
+
+        assertEquals("Bars without a close cannot be charted", 2, ChartUtils.downsample(series, 500).size());
+    }
+
+    private static BarSeries buildSeries(int size) {
+        long[] dates = new long[size];
+        long[] close = new long[size];
+
+        for (int i = 0; i < size; i++) {
+            dates[i] = 1420070400000L + i * 86400000L;
+            close[i] = 1000000 + (long) (Math.sin(i / 20.0) * 100000);
+        }
+
+        return new BarSeries(dates, close, close, close, close, close, new long[size]);
+    }
+}
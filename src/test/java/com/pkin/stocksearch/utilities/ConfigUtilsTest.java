@@ -0,0 +1,42 @@
+package com.pkin.stocksearch.utilities;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ConfigUtilsTest {
+
+    @After
+    public void tearDown() {
+        System.clearProperty("stocksearch.test.value");
+    }
+
+    @Test
+    public void defaultsAreUsedForMissingKeys() {
+        assertEquals("Missing string should use default", "fallback", ConfigUtils.getString("stocksearch.test.missing", "fallback"));
+        assertEquals("Missing int should use default", 42, ConfigUtils.getInt("stocksearch.test.missing", 42));
+        assertTrue("Missing boolean should use default", ConfigUtils.getBoolean("stocksearch.test.missing", true));
+    }
+
+    @Test
+    public void systemPropertyOverridesFile() {
+        System.setProperty("stocksearch.test.value", "25");
+
+        assertEquals("System property should be read", 25, ConfigUtils.getInt("stocksearch.test.value", 1));
+        assertEquals("System property should be read as long", 25L, ConfigUtils.getLong("stocksearch.test.value", 1L));
+    }
+
+    @Test
+    public void malformedNumberFallsBackToDefault() {
+        System.setProperty("stocksearch.test.value", "abc");
+
+        assertEquals("Malformed int should use default", 7, ConfigUtils.getInt("stocksearch.test.value", 7));
+    }
+
+    @Test
+    public void propertiesFileIsRead() {
+        assertEquals("Value should be read from stocksearch.properties", 100000,
+                ConfigUtils.getInt("stocksearch.cache.maxBars", 1));
+    }
+}
@@ -0,0 +1,49 @@
+package com.pkin.stocksearch.utilities;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ExecutorUtilsTest {
+
+    @Test
+    public void boundedExecutorRejectsWhenFull() throws InterruptedException {
+        ExecutorService executor = ExecutorUtils.newBoundedExecutor("executor-test", 1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+
+        try {
+            executor.submit(() -> {
+                started.countDown();
+                release.await();
+                return null;
+            });
+            assertTrue("First task should start", started.await(5, TimeUnit.SECONDS));
+
+            //One queued task fits, the next one does not.
+            executor.submit(() -> null);
+            try {
+                executor.submit(() -> null);
+                fail("Executor should reject tasks beyond its queue");
+            } catch (RejectedExecutionException e) {
+                //Expected
+            }
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void threadFactoryNamesThreads() {
+        Thread thread = ExecutorUtils.newThreadFactory("named").newThread(() -> {
+        });
+
+        assertTrue("Thread name should use the prefix", thread.getName().startsWith("named-"));
+    }
+}
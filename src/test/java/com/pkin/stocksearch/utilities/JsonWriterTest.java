@@ -0,0 +1,55 @@
+package com.pkin.stocksearch.utilities;
+
+import com.pkin.stocksearch.model.BarSeries;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+
+import static org.junit.Assert.*;
+
+public class JsonWriterTest {
+
+    @Test
+    public void nestedDocumentIsSeparated() throws IOException {
+        StringWriter out = new StringWriter();
+
+        new JsonWriter(out).beginObject()
+                .name("symbol").value("GOOG")
+                .name("price").value(new BigDecimal("1234.50"))
+                .name("volume").value((Long) null)
+                .name("bars").beginArray()
+                .beginArray().value(1L).scaledValue(1234500).endArray()
+                .beginArray().value(2L).scaledValue(BarSeries.MISSING).endArray()
+                .endArray()
+                .name("stale").value(false)
+                .endObject();
+
+        assertEquals("{\"symbol\":\"GOOG\",\"price\":1234.50,\"volume\":null," +
+                "\"bars\":[[1,123.45],[2,null]],\"stale\":false}", out.toString());
+    }
+
+    @Test
+    public void scaledValuesDropTrailingZeros() throws IOException {
+        StringWriter out = new StringWriter();
+
+        new JsonWriter(out).beginArray().scaledValue(2000000).scaledValue(5).scaledValue(-12345).endArray();
+
+        assertEquals("[200,0.0005,-1.2345]", out.toString());
+    }
+
+    @Test
+    public void stringsAreEscaped() throws IOException {
+        StringWriter out = new StringWriter();
+
+        new JsonWriter(out).value("a\"b\\c\n</script>\u0001");
+
+        assertEquals("\"a\\\"b\\\\c\\n\\u003c/script\\u003e\\u0001\"", out.toString());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void unbalancedCloseIsRejected() throws IOException {
+        new JsonWriter(new StringWriter()).endObject();
+    }
+}
@@ -0,0 +1,38 @@
+package com.pkin.stocksearch.utilities;
+
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+import static org.junit.Assert.*;
+
+public class MarketHoursTest {
+
+    private static final ZoneId NEW_YORK = ZoneId.of("America/New_York");
+
+    @Test
+    public void isOpenTest() {
+        ZonedDateTime wednesday = ZonedDateTime.of(2018, 3, 7, 11, 0, 0, 0, NEW_YORK);
+
+        assertTrue(MarketHours.isOpen(wednesday));
+        assertFalse("Closed before 9:30", MarketHours.isOpen(wednesday.withHour(9)));
+        assertFalse("Closed from 16:00", MarketHours.isOpen(wednesday.withHour(16)));
+        assertFalse("Closed at the weekend", MarketHours.isOpen(wednesday.plusDays(3)));
+        assertTrue("Any zone is converted", MarketHours.isOpen(wednesday.withZoneSameInstant(ZoneId.of("Asia/Tokyo"))));
+    }
+
+    @Test
+    public void lastClosedDayTest() {
+        ZonedDateTime wednesday = ZonedDateTime.of(2018, 3, 7, 11, 0, 0, 0, NEW_YORK);
+
+        assertEquals("Open session is not closed", LocalDate.of(2018, 3, 6), MarketHours.lastClosedDay(wednesday));
+        assertEquals("Session closes at 16:00", LocalDate.of(2018, 3, 7), MarketHours.lastClosedDay(wednesday.withHour(16)));
+
+        //Thursday morning in Tokyo is still Wednesday's session in New York.
+        ZonedDateTime tokyo = wednesday.withZoneSameInstant(ZoneId.of("Asia/Tokyo"));
+        assertEquals(LocalDate.of(2018, 3, 8), tokyo.toLocalDate());
+        assertEquals("Zone of the server does not matter", LocalDate.of(2018, 3, 6), MarketHours.lastClosedDay(tokyo));
+    }
+}
@@ -1,5 +1,6 @@
 package com.pkin.stocksearch.utilities;
 
+import com.pkin.stocksearch.model.BarSeries;
 import com.pkin.stocksearch.servlet.StockSearchServlet;
 import com.pkin.stocksearch.utilities.exceptions.WebUtilsException;
 import org.junit.Before;
@@ -11,13 +12,18 @@ import yahoofinance.quotes.stock.StockDividend;
 import yahoofinance.quotes.stock.StockQuote;
 import yahoofinance.quotes.stock.StockStats;
 
+import java.io.IOException;
+import java.io.StringWriter;
 import java.math.BigDecimal;
 import java.sql.Date;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.GregorianCalendar;
 import java.util.HashMap;
+import java.util.List;
 
 import static org.junit.Assert.*;
 
@@ -169,6 +175,107 @@ public class WebUtilsTest {
 
     }
 
+    @Test
+    public void seriesRenderingMatchesFormat() {
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(2015, 8, 1);
+
+        //Values that need rounding up, grouping and zero filling.
+        HistoricalQuote bar = new HistoricalQuote("APPL", calendar, new BigDecimal("1234.001"),
+                new BigDecimal("0.5"), new BigDecimal("1234567.899"), new BigDecimal("7.1"), null, 1234567L);
+        ArrayList<HistoricalQuote> bars = new ArrayList<>();
+        bars.add(bar);
+        stock.setHistory(bars);
+
+        String table = WebUtils.buildTable(stock, 2);
+
+        assertTrue("Open should round up", table.contains("<td>$ " + String.format("%,.2f", new BigDecimal("1234.01")) + "</td>"));
+        assertTrue("High should be grouped", table.contains("<td>$ " + String.format("%,.2f", new BigDecimal("1234567.90")) + "</td>"));
+        assertTrue("Low should keep a leading zero", table.contains("<td>$ " + String.format("%,.2f", new BigDecimal("0.50")) + "</td>"));
+        assertTrue("Volume should be grouped", table.contains("<td>" + String.format("%,.0f", new BigDecimal(1234567)) + "</td>"));
+    }
+
+    @Test
+    public void streamedTableMatchesBuiltTable() throws IOException {
+        ArrayList<HistoricalQuote> bars = new ArrayList<>();
+        Calendar date = Calendar.getInstance();
+        date.set(2015, 0, 1);
+
+        for (int i = 0; i < 300; i++) {
+            bars.add(new HistoricalQuote("APPL", (Calendar) date.clone(), new BigDecimal(100 + i),
+                    new BigDecimal(90), new BigDecimal(110 + i), new BigDecimal(95), null, 1000L + i));
+            date.add(Calendar.DAY_OF_MONTH, 1);
+        }
+        stock.setHistory(bars);
+        BarSeries series = BarSeries.from(stock);
+
+        List<Integer> writes = new ArrayList<>();
+        StringWriter out = new StringWriter() {
+            @Override
+            public StringWriter append(CharSequence csq) {
+                writes.add(csq.length());
+                return super.append(csq);
+            }
+        };
+        WebUtils.historicalTable(stock, series).writeTo(out);
+
+        assertEquals("Streamed table should match the built table", WebUtils.buildTable(stock, series), out.toString());
+        assertTrue("Rows should be written in several chunks", writes.size() > 1);
+    }
+
+    @Test
+    public void streamedTableWithMissingDateWritesOnlyTheError() throws IOException {
+        BarSeries series = BarSeries.from(Arrays.asList(new HistoricalQuote(), historicalQuote));
+        StringWriter out = new StringWriter();
+
+        WebUtils.writeHistoricalTable(out, stock, series);
+
+        assertTrue("No rows should be written before the error", out.toString().startsWith("<tr><td>There was an error"));
+    }
+
+    @Test
+    public void emptySeriesWritesOnlyNoResults() throws IOException {
+        BarSeries series = BarSeries.from(new ArrayList<>());
+        StringWriter out = new StringWriter();
+
+        WebUtils.writeHistoricalTable(out, stock, series);
+
+        assertTrue("Empty series should report no results", out.toString().contains("No results were found"));
+        assertFalse("Empty series is not an error", out.toString().contains("An error occurred"));
+    }
+
+    @Test
+    public void escapeHtmlTest() {
+        assertEquals("&lt;script&gt;alert(&quot;x&quot; &amp; &#39;y&#39;)&lt;/script&gt;",
+                WebUtils.escapeHtml("<script>alert(\"x\" & 'y')</script>"));
+        assertEquals("AAPL", WebUtils.escapeHtml("AAPL"));
+        assertEquals("", WebUtils.escapeHtml(null));
+    }
+
+    @Test
+    public void historyIsWrittenAsCsv() throws IOException {
+        long date = new GregorianCalendar(2018, 0, 2).getTimeInMillis();
+        BarSeries series = new BarSeries(new long[]{date}, new long[]{1234500}, new long[]{1300000},
+                new long[]{1200000}, new long[]{1250000}, new long[]{BarSeries.MISSING}, new long[]{5999});
+        StringWriter out = new StringWriter();
+
+        WebUtils.writeHistoryCsv(out, series);
+
+        assertEquals("Date,Open,High,Low,Close,Adj Close,Volume\r\n" +
+                "2018-01-02,123.45,130,120,125,,5999\r\n", out.toString());
+    }
+
+    @Test
+    public void jsonChartDataTest() throws IOException {
+        String expJson = "[[" + historicalQuote.getDate().getTimeInMillis() + ", 200]]";
+
+        assertEquals("jsonChartData() returned the wrong string", expJson, WebUtils.jsonChartData(stock));
+
+        historicalQuote.setClose(new BigDecimal("123.4500"));
+        assertEquals("jsonChartData() should drop trailing zeros",
+                "[[" + historicalQuote.getDate().getTimeInMillis() + ", 123.45]]", WebUtils.jsonChartData(stock));
+    }
+
     @Test
     public void checkOverrides() {
         WebUtils utils = new WebUtils();
@@ -212,4 +319,23 @@ public class WebUtilsTest {
                 actualOS + actualOSVersion);
         assertEquals("Failed to parse correct device type", expDevice, actualDevice);
     }
+
+    @Test
+    public void getClientDataIsCached() throws WebUtilsException {
+
+        String testString = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 " +
+                "(KHTML, like Gecko) Chrome/70.0.3538.102 Safari/537.36";
+
+        Client first = WebUtils.getClientData(testString);
+        Client second = WebUtils.getClientData(new String(testString));
+
+        assertSame("Repeat user agent should come from the cache", first, second);
+        assertEquals("Chrome", first.userAgent.family);
+        assertEquals("Windows", first.os.family);
+    }
+
+    @Test(expected = WebUtilsException.class)
+    public void getClientDataNull() throws WebUtilsException {
+        WebUtils.getClientData(null);
+    }
 }
\ No newline at end of file
@@ -137,4 +137,24 @@ public class DatabaseUtilsTest {
 
     }
 
-}
\ No newline at end of file
+    @Test
+    public void isDataError() {
+
+        SQLException truncated = new SQLException("A truncation error was encountered", "22001");
+        SQLException duplicate = new SQLException("Duplicate key", "23505");
+        SQLException connection = new SQLException("Connection refused", "08001");
+        SQLException batch = new SQLException("Batch entry failed", "XJ208");
+        batch.setNextException(new SQLException("A truncation error was encountered", "22001"));
+
+        assertTrue("Data exception should be a data error", DatabaseUtils.isDataError(truncated));
+        assertTrue("Constraint violation should be a data error", DatabaseUtils.isDataError(duplicate));
+        assertTrue("Wrapped data exception should be a data error",
+                DatabaseUtils.isDataError(new RuntimeException("Could not add a batch", truncated)));
+        assertTrue("Chained data exception should be a data error", DatabaseUtils.isDataError(batch));
+        assertFalse("Connection failure should not be a data error", DatabaseUtils.isDataError(connection));
+        assertFalse("Failure without a SQLException should not be a data error",
+                DatabaseUtils.isDataError(new IllegalStateException("Database down")));
+        assertFalse(DatabaseUtils.isDataError(null));
+    }
+
+}
@@ -1,23 +1,33 @@
+INSERT INTO ua_dimensions (
+  kind,
+  name
+) VALUES
+  (1, 'Mobile Safari'),
+  (2, '5_1'),
+  (3, 'iOS'),
+  (4, '5_1'),
+  (5, 'iPhone');
+
 INSERT INTO searches (
   type_of_search,
   user_id,
   stock_symbol,
-  family,
-  family_version,
-  os,
-  os_version,
-  device,
+  family_id,
+  family_version_id,
+  os_id,
+  os_version_id,
+  device_id,
   time_stamp
 ) VALUES
-  (1, 000001, 'PDS', 'Mobile Safari', '5_1', 'iOS', '5_1', 'iPhone', '2018-11-24 03:36:53.364000'),
-  (1, 000001, 'PDS', 'Mobile Safari', '5_1', 'iOS', '5_1', 'iPhone', '2018-11-24 03:36:53.364000'),
-  (1, 000001, 'PDS', 'Mobile Safari', '5_1', 'iOS', '5_1', 'iPhone', '2018-11-24 03:36:53.364000'),
-  (1, 000001, 'PDS', 'Mobile Safari', '5_1', 'iOS', '5_1', 'iPhone', '2018-11-24 03:36:53.364000'),
-  (1, 000001, 'F', 'Mobile Safari', '5_1', 'iOS', '5_1', 'iPhone', '2018-11-24 03:36:53.364000'),
-  (1, 000001, 'F', 'Mobile Safari', '5_1', 'iOS', '5_1', 'iPhone', '2018-11-24 03:36:53.364000'),
-  (1, 000001, 'F', 'Mobile Safari', '5_1', 'iOS', '5_1', 'iPhone', '2018-11-24 03:36:53.364000'),
-  (1, 000001, 'GOOG', 'Mobile Safari', '5_1', 'iOS', '5_1', 'iPhone', '2018-11-24 03:36:53.364000'),
-  (1, 000001, 'AAPL', 'Mobile Safari', '5_1', 'iOS', '5_1', 'iPhone', '2018-11-24 03:36:53.364000'),
-  (1, 000001, 'AAPL', 'Mobile Safari', '5_1', 'iOS', '5_1', 'iPhone', '2018-11-24 03:36:53.364000'),
-  (1, 000001, 'BAE', 'Mobile Safari', '5_1', 'iOS', '5_1', 'iPhone', '2018-11-24 03:36:53.364000');
+  (1, 000001, 'PDS', 1, 2, 3, 4, 5, '2018-11-24 03:36:53.364000'),
+  (1, 000001, 'PDS', 1, 2, 3, 4, 5, '2018-11-24 03:36:53.364000'),
+  (1, 000001, 'PDS', 1, 2, 3, 4, 5, '2018-11-24 03:36:53.364000'),
+  (1, 000001, 'PDS', 1, 2, 3, 4, 5, '2018-11-24 03:36:53.364000'),
+  (1, 000001, 'F', 1, 2, 3, 4, 5, '2018-11-24 03:36:53.364000'),
+  (1, 000001, 'F', 1, 2, 3, 4, 5, '2018-11-24 03:36:53.364000'),
+  (1, 000001, 'F', 1, 2, 3, 4, 5, '2018-11-24 03:36:53.364000'),
+  (1, 000001, 'GOOG', 1, 2, 3, 4, 5, '2018-11-24 03:36:53.364000'),
+  (1, 000001, 'AAPL', 1, 2, 3, 4, 5, '2018-11-24 03:36:53.364000'),
+  (1, 000001, 'AAPL', 1, 2, 3, 4, 5, '2018-11-24 03:36:53.364000'),
+  (1, 000001, 'BAE', 1, 2, 3, 4, 5, '2018-11-24 03:36:53.364000');
 
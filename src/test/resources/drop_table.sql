@@ -1,2 +1,3 @@
 DROP TABLE searches;
+DROP TABLE ua_dimensions;
 
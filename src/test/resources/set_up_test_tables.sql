@@ -1,12 +1,19 @@
+CREATE TABLE ua_dimensions (
+  id             INT GENERATED ALWAYS AS IDENTITY PRIMARY KEY,
+  kind           SMALLINT NOT NULL,
+  name           VARCHAR(64) NOT NULL,
+  UNIQUE (kind, name)
+);
+
 CREATE TABLE searches (
-  id             INT GENERATED ALWAYS AS IDENTITY,
-  type_of_search int,
-  user_id        int,
-  stock_symbol   CHAR(6) NOT NULL,
-  family         char(35),
-  family_version char(35),
-  os             CHAR(35),
-  os_version     char(35),
-  device         char(35),
-  time_stamp     TIMESTAMP
+  id                INT GENERATED ALWAYS AS IDENTITY,
+  type_of_search    int,
+  user_id           int,
+  stock_symbol      CHAR(6) NOT NULL,
+  family_id         int,
+  family_version_id int,
+  os_id             int,
+  os_version_id     int,
+  device_id         int,
+  time_stamp        TIMESTAMP
 );